@@ -0,0 +1,107 @@
+package com.example.android.ukfootballnews;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures parsing a search response with the reader of the platform the app ships with,
+ * which the benchmark module can't run: its ParseBenchmark measures the streaming parser
+ * with Gson's reader instead. Runs on an Android device; the average time of each parse is
+ * logged, against the DOM parser on the same response.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ParsePerformanceTest {
+
+    private static final String LOG_TAG = ParsePerformanceTest.class.getSimpleName();
+
+    /** Number of parses before the measured ones, for the JIT */
+    private static final int WARMUP_RUNS = 5;
+
+    private static final int MEASURED_RUNS = 20;
+
+    @Test
+    public void pageResponse_isParsedByThePlatformReader() throws Exception {
+        measure(200);
+    }
+
+    @Test
+    public void largeResponse_isParsedByThePlatformReader() throws Exception {
+        measure(5000);
+    }
+
+    /**
+     * Parses a response with the given number of results with the streaming parser and with
+     * the DOM parser, logging how long each takes on average.
+     */
+    private static void measure(int resultCount) throws IOException, JSONException {
+        QueryUtils.setJsonReaderFactory(null);
+        byte[] response = searchResponse(resultCount);
+
+        long streamingNanos = 0;
+        long domNanos = 0;
+        for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+            long startNanos = System.nanoTime();
+            List<NewsArticle> streamed =
+                    QueryUtils.extractArticles(new ByteArrayInputStream(response));
+            long streamedNanos = System.nanoTime();
+            List<NewsArticle> parsed = QueryUtils.extractArticles(
+                    QueryUtils.readFromStream(new ByteArrayInputStream(response)));
+            long parsedNanos = System.nanoTime();
+
+            assertEquals(resultCount, streamed.size());
+            assertEquals(resultCount, parsed.size());
+            if (run >= WARMUP_RUNS) {
+                streamingNanos += streamedNanos - startNanos;
+                domNanos += parsedNanos - streamedNanos;
+            }
+        }
+        Log.i(LOG_TAG, "measure(): " + resultCount + " results, " + response.length / 1024
+                + " KB: platform streaming reader " + streamingNanos / MEASURED_RUNS / 1000
+                + "us, DOM " + domNanos / MEASURED_RUNS / 1000 + "us");
+    }
+
+    /**
+     * Returns a search response with the given number of results, shaped like those of The
+     * Guardian API.
+     */
+    private static byte[] searchResponse(int resultCount) throws IOException, JSONException {
+        JSONArray results = new JSONArray();
+        for (int i = 0; i < resultCount; i++) {
+            String id = "football/2017/dec/27/match-report-" + i;
+            JSONObject result = new JSONObject();
+            result.put("id", id);
+            result.put("type", "article");
+            result.put("sectionId", "football");
+            result.put("sectionName", "Football");
+            result.put("webPublicationDate", "2017-12-27T21:30:38Z");
+            result.put("webTitle", "Late winner settles a tense afternoon \u2013 match report "
+                    + i);
+            result.put("webUrl", "https://www.theguardian.com/" + id);
+            result.put("apiUrl", "https://content.guardianapis.com/" + id);
+            result.put("fields", new JSONObject().put("thumbnail", "https://media.guim.co.uk/"
+                    + Integer.toHexString(i) + "/0_0_3000_1800/500.jpg"));
+            result.put("isHosted", false);
+            result.put("pillarId", "pillar/sport");
+            result.put("pillarName", "Sport");
+            results.put(result);
+        }
+        JSONObject response = new JSONObject();
+        response.put("status", "ok");
+        response.put("total", resultCount);
+        response.put("pageSize", resultCount);
+        response.put("results", results);
+        return new JSONObject().put("response", response).toString().getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.android.ukfootballnews.data;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.ukfootballnews.NewsArticle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link ArticleStore} keeps many more articles to search than to show, and
+ * measures {@link ArticleStore#searchArticles} over a full index. Runs on an Android device,
+ * against a database of its own.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ArticleStoreSearchTest {
+
+    private static final String LOG_TAG = ArticleStoreSearchTest.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "articles-search-test.db";
+
+    /** Number of articles saved, a page of the API at a time */
+    private static final int ARTICLE_COUNT = 20000;
+
+    private static final int PAGE_SIZE = 200;
+
+    private Context mContext;
+
+    private ArticleDbHelper mDbHelper;
+
+    private File mSnapshotFile;
+
+    private ArticleStore mStore;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new ArticleDbHelper(mContext, DATABASE_NAME);
+        mSnapshotFile = new File(mContext.getCacheDir(), "articles-search-test.snapshot");
+        mStore = new ArticleStore(mDbHelper, mSnapshotFile);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mSnapshotFile.delete();
+    }
+
+    @Test
+    public void olderArticlesThanThoseShown_areSearched() {
+        saveArticles(0, ARTICLE_COUNT);
+
+        assertEquals(500, mStore.loadArticles().size());
+        // The oldest article, long gone from the articles shown
+        List<NewsArticle> results = search("n" + (ARTICLE_COUNT - 1));
+        assertEquals(1, results.size());
+        assertEquals(webUrl(ARTICLE_COUNT - 1), results.get(0).getInfoUrl());
+
+        // Every article matches, the newest are returned first
+        results = search("report");
+        assertEquals(200, results.size());
+        assertEquals(webUrl(0), results.get(0).getInfoUrl());
+    }
+
+    @Test
+    public void articlesPastTheLimit_areNoLongerSearched() {
+        saveArticles(0, ARTICLE_COUNT + PAGE_SIZE);
+
+        assertTrue(search("n" + (ARTICLE_COUNT + PAGE_SIZE - 1)).isEmpty());
+        assertEquals(1, search("n" + (ARTICLE_COUNT - 1)).size());
+    }
+
+    @Test
+    public void savedAgain_isSearchedOnce() {
+        saveArticles(0, PAGE_SIZE);
+        saveArticles(0, PAGE_SIZE);
+
+        assertEquals(1, search("n199").size());
+        assertEquals(PAGE_SIZE, search("report").size());
+    }
+
+    /**
+     * Saves the articles between the given indices, newest first, a page at a time.
+     */
+    private void saveArticles(int from, int to) {
+        for (int start = from; start < to; start += PAGE_SIZE) {
+            List<NewsArticle> page = new ArrayList<>(PAGE_SIZE);
+            for (int i = start; i < Math.min(to, start + PAGE_SIZE); i++) {
+                page.add(new NewsArticle("Match report n" + i, "Football", webUrl(i),
+                        "https://media.guim.co.uk/" + i + ".jpg", 1514407838000L - i * 60000L));
+            }
+            mStore.saveArticles(page);
+        }
+    }
+
+    /**
+     * Returns the first results of the given query, logging how long it took.
+     */
+    private List<NewsArticle> search(String query) {
+        long startNanos = System.nanoTime();
+        List<NewsArticle> results = mStore.searchArticles(query, 200, null);
+        Log.i(LOG_TAG, "search(): \"" + query + "\", " + results.size() + " results in "
+                + (System.nanoTime() - startNanos) / 1000 + "us");
+        return results;
+    }
+
+    private static String webUrl(int index) {
+        return "https://www.theguardian.com/football/" + index;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.ukfootballnews;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.os.Build;
+import android.text.Html;
+import android.util.Log;
+
+import com.example.android.ukfootballnews.data.ArticleStore;
+
+/**
+ * Custom AsyncTaskLoader that reads the stored body of an article in the background and
+ * turns its HTML into styled text, ready to be shown by the {@link ReaderActivity}.
+ */
+
+public class ArticleBodyLoader extends AsyncTaskLoader<CharSequence> {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ArticleBodyLoader.class.getSimpleName();
+
+    /** Web URL of the article whose body is loaded */
+    private final String mWebUrl;
+
+    /** Whether the body was read already, so it is delivered again instead of read twice */
+    private boolean mLoaded;
+
+    /** Body read on the last load, or null if the article has no stored body */
+    private CharSequence mBody;
+
+    /**
+     * Constructs a new {@link ArticleBodyLoader}.
+     *
+     * @param context of the activity
+     * @param webUrl of the article whose body is loaded
+     */
+    public ArticleBodyLoader(Context context, String webUrl) {
+        super(context);
+        mWebUrl = webUrl;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mLoaded) {
+            deliverResult(mBody);
+        } else {
+            forceLoad();
+        }
+    }
+
+    /**
+     * Returns the styled body of the article, or null if it is not stored (any more).
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public CharSequence loadInBackground() {
+        String html = ArticleStore.get(getContext()).loadArticleBody(mWebUrl);
+        if (html == null) {
+            Log.i(LOG_TAG, "loadInBackground(): no stored body for " + mWebUrl);
+            return null;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Html.fromHtml(html, Html.FROM_HTML_MODE_COMPACT);
+        }
+        return Html.fromHtml(html);
+    }
+
+    @Override
+    public void deliverResult(CharSequence body) {
+        mLoaded = true;
+        mBody = body;
+        super.deliverResult(body);
+    }
+}
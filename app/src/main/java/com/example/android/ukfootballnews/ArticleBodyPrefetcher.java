@@ -0,0 +1,325 @@
+package com.example.android.ukfootballnews;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.android.ukfootballnews.data.ArticleStore;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads the bodies of the articles the user is looking at ahead of time and keeps them in
+ * the {@link ArticleStore}, so tapping one of them opens it in the {@link ReaderActivity}
+ * straight from the device instead of loading the web page.
+ *
+ * Bodies are requested several articles at a time, with the "ids" parameter of the search
+ * endpoint, on a single thread running at background priority, so they never compete with
+ * the article list for the network or the CPU. Only unmetered networks are used (see
+ * {@link FetchPolicy#shouldPrefetchArticleBodies()}), nothing is requested while the API is
+ * unhealthy, and no more than {@link #BYTE_BUDGET} bytes are downloaded per
+ * {@link #BUDGET_WINDOW_MILLIS}: a response that would go over the budget is cut short,
+ * keeping the bodies received in full.
+ */
+public final class ArticleBodyPrefetcher {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ArticleBodyPrefetcher.class.getSimpleName();
+
+    /** Url requesting the bodies of articles; the "ids" and "page-size" parameters are added */
+    static final String BODIES_URL = "https://content.guardianapis.com/search?format=json&show-fields=body&api-key=test";
+
+    /** Prefix of the web URL of every article; the rest of the URL is its ID in the API */
+    private static final String WEB_URL_PREFIX = "https://www.theguardian.com/";
+
+    /** Number of bodies requested at a time */
+    static final int BATCH_SIZE = 5;
+
+    /** Maximum number of bytes received on the wire per {@link #BUDGET_WINDOW_MILLIS} */
+    static final long BYTE_BUDGET = 2 * 1024 * 1024;
+
+    /** Period the {@link #BYTE_BUDGET} applies to */
+    private static final long BUDGET_WINDOW_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * Images, videos and other embedded media of a body, which the reader doesn't show.
+     * Guardian bodies wrap them in figure elements.
+     */
+    private static final Pattern MEDIA_PATTERN = Pattern.compile(
+            "<figure\\b.*?</figure>|<(iframe|video|audio)\\b.*?</\\1\\s*>|<img\\b[^>]*>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /** Thread the bodies are downloaded on, one batch at a time */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, LOG_TAG);
+                }
+            });
+
+    /** The single prefetcher of the app. */
+    private static ArticleBodyPrefetcher mInstance;
+
+    private final ArticleStore mStore;
+
+    private final FetchPolicy mFetchPolicy;
+
+    /** Web URLs of the articles whose body is stored, loaded in the background at first */
+    private final Set<String> mStoredUrls = Collections.synchronizedSet(new HashSet<String>());
+
+    /** Web URLs of the articles whose body is waiting to be downloaded or being downloaded */
+    private final Set<String> mPendingUrls = Collections.synchronizedSet(new HashSet<String>());
+
+    /** Start of the current budget window, in {@link System#nanoTime()}; download thread only */
+    private long mBudgetWindowStartNanos;
+
+    /** Bytes received in the current budget window; download thread only */
+    private long mBudgetSpent;
+
+    private ArticleBodyPrefetcher(Context context) {
+        mStore = ArticleStore.get(context);
+        mFetchPolicy = FetchPolicy.get(context);
+        mBudgetWindowStartNanos = System.nanoTime();
+
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                mStoredUrls.addAll(mStore.loadArticleBodyUrls());
+            }
+        });
+    }
+
+    /**
+     * Returns the prefetcher of the app. Must be called on the main thread.
+     *
+     * @param context of the app
+     */
+    public static ArticleBodyPrefetcher get(Context context) {
+        if (mInstance == null) {
+            mInstance = new ArticleBodyPrefetcher(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * Returns true if the body of the article with the given web URL is stored, so the
+     * article can be opened in the {@link ReaderActivity}.
+     */
+    public boolean isAvailable(String webUrl) {
+        return mStoredUrls.contains(webUrl);
+    }
+
+    /**
+     * Download the bodies of the given articles that are not stored yet, in the given order,
+     * if the network allows it. Must be called on the main thread.
+     */
+    public void prefetch(List<NewsArticle> articles) {
+        if (!mFetchPolicy.shouldPrefetchArticleBodies()) {
+            return;
+        }
+
+        List<String> webUrls = new ArrayList<>(BATCH_SIZE);
+        for (NewsArticle article : articles) {
+            String webUrl = article.getInfoUrl();
+            if (toArticleId(webUrl) == null || mStoredUrls.contains(webUrl)
+                    || !mPendingUrls.add(webUrl)) {
+                continue;
+            }
+            webUrls.add(webUrl);
+            if (webUrls.size() == BATCH_SIZE) {
+                enqueue(webUrls);
+                webUrls = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!webUrls.isEmpty()) {
+            enqueue(webUrls);
+        }
+    }
+
+    /**
+     * Download the bodies of the given articles on the download thread.
+     */
+    private void enqueue(final List<String> webUrls) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    download(webUrls);
+                } finally {
+                    mPendingUrls.removeAll(webUrls);
+                }
+            }
+        });
+    }
+
+    /**
+     * Download and store the bodies of the given articles, unless the network, the API or the
+     * budget no longer allow it. Runs on the download thread.
+     */
+    private void download(List<String> webUrls) {
+        // The network may have changed since the articles were queued
+        if (!mFetchPolicy.shouldPrefetchArticleBodies()
+                || QueryUtils.getFetchResilience().getState() != FetchResilience.State.CLOSED) {
+            return;
+        }
+
+        List<String> missingUrls = new ArrayList<>(webUrls);
+        missingUrls.removeAll(mStoredUrls);
+        long budget = getRemainingBudget();
+        if (missingUrls.isEmpty() || budget <= 0) {
+            return;
+        }
+
+        URL url;
+        try {
+            url = new URL(buildBodiesUrl(BODIES_URL, missingUrls));
+        } catch (MalformedURLException e) {
+            Log.e(LOG_TAG, "Error creating URL. ", e);
+            return;
+        }
+
+        FetchResilience resilience = QueryUtils.getFetchResilience();
+        GuardianHttpClient.Response response = null;
+        Map<String, String> bodies = null;
+        try {
+            response = GuardianHttpClient.get().get(url, null,
+                    resilience.getConnectTimeoutMillis(1), resilience.getReadTimeoutMillis(1));
+            if (response.getResponseCode() == 200) {
+                bodies = QueryUtils.extractArticleBodies(
+                        new BudgetInputStream(response.getBody(), response, budget));
+            } else {
+                Log.e(LOG_TAG, "Error response code: " + response.getResponseCode());
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem downloading article bodies. ", e);
+        } finally {
+            if (response != null) {
+                response.close();
+                mBudgetSpent += response.getWireByteCount();
+                PipelineMetrics.recordValue(PipelineMetrics.Metric.PREFETCH_BYTES,
+                        response.getWireByteCount());
+            }
+        }
+
+        if (bodies != null && !bodies.isEmpty()) {
+            for (Map.Entry<String, String> body : bodies.entrySet()) {
+                body.setValue(stripMedia(body.getValue()));
+            }
+            mStoredUrls.addAll(mStore.saveArticleBodies(bodies));
+        }
+        Log.i(LOG_TAG, "download(): stored " + (bodies != null ? bodies.size() : 0) + " of "
+                + missingUrls.size() + " bodies, " + mBudgetSpent + " bytes of the budget spent");
+    }
+
+    /**
+     * Returns the number of bytes that can still be downloaded in the current budget window,
+     * starting a new window if the current one is over.
+     */
+    private long getRemainingBudget() {
+        if ((System.nanoTime() - mBudgetWindowStartNanos) / 1000000 >= BUDGET_WINDOW_MILLIS) {
+            mBudgetWindowStartNanos = System.nanoTime();
+            mBudgetSpent = 0;
+        }
+        return BYTE_BUDGET - mBudgetSpent;
+    }
+
+    /**
+     * Returns the ID of the article with the given web URL in The Guardian API, e.g.
+     * "football/2017/dec/27/some-match-report", or null if it is not a Guardian article.
+     */
+    static String toArticleId(String webUrl) {
+        if (webUrl == null || !webUrl.startsWith(WEB_URL_PREFIX)
+                || webUrl.length() == WEB_URL_PREFIX.length()) {
+            return null;
+        }
+        return webUrl.substring(WEB_URL_PREFIX.length());
+    }
+
+    /**
+     * Returns the URL requesting the bodies of the articles with the given web URLs.
+     *
+     * @param baseUrl search URL asking for the body field
+     * @param webUrls of Guardian articles, see {@link #toArticleId(String)}
+     */
+    static String buildBodiesUrl(String baseUrl, List<String> webUrls) {
+        StringBuilder ids = new StringBuilder();
+        for (String webUrl : webUrls) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(toArticleId(webUrl));
+        }
+        try {
+            return baseUrl + "&page-size=" + webUrls.size() + "&ids="
+                    + URLEncoder.encode(ids.toString(), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // Every JVM supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns the given HTML body without its images and other embedded media.
+     */
+    static String stripMedia(String body) {
+        return MEDIA_PATTERN.matcher(body).replaceAll("");
+    }
+
+    /**
+     * {@link InputStream} that fails once the response it reads from has received more bytes
+     * on the wire than the given budget, so a response too large for the budget is cut short.
+     */
+    private static final class BudgetInputStream extends FilterInputStream {
+
+        private final GuardianHttpClient.Response mResponse;
+
+        private final long mBudget;
+
+        BudgetInputStream(InputStream in, GuardianHttpClient.Response response, long budget) {
+            super(in);
+            mResponse = response;
+            mBudget = budget;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkBudget();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            checkBudget();
+            return super.read(buffer, offset, count);
+        }
+
+        private void checkBudget() throws IOException {
+            if (mResponse.getWireByteCount() > mBudget) {
+                throw new IOException("Prefetch byte budget used up");
+            }
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.android.ukfootballnews;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates compact {@link NewsArticle}s whose text is held in blocks of bytes shared by many
+ * articles, instead of four Strings per article, e.g. all the articles of a response.
+ *
+ * Each article is one record of UTF-8 bytes in a block, decoded by its getters when they are
+ * called (see {@link NewsArticle}). The URLs of the articles repeat long prefixes, e.g.
+ * "https://www.theguardian.com/football/" or the host of the images, and the sections are a
+ * handful of names; these are interned once per process in a table of prefixes, and a record
+ * only refers to them by index. The format of a record ("varint" meaning an unsigned LEB128
+ * integer):
+ *
+ * <pre>
+ * string    title
+ * interned  section
+ * interned  thumbnail URL
+ * interned  web URL
+ * string:   varint (length in bytes + 1, or 0 for null), then that many bytes of UTF-8
+ * interned: varint index of the prefix in the table, then the rest of the text as a string
+ * </pre>
+ *
+ * A block is freed once none of its articles is reachable anymore. An {@link ArticleBuffer}
+ * is meant to be filled by one thread, e.g. the one parsing a response; the articles it
+ * creates can be read from any thread once handed over.
+ */
+public final class ArticleBuffer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Size of the first block, enough for a few articles */
+    private static final int MIN_BLOCK_SIZE = 2 * 1024;
+
+    /** Size blocks grow to, doubling from {@link #MIN_BLOCK_SIZE} */
+    private static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of prefixes interned, so a stream of unusual URLs can't grow the table
+     * forever; text without an interned prefix is simply stored whole.
+     */
+    private static final int MAX_PREFIXES = 2048;
+
+    /** Index of each interned prefix */
+    private static final Map<String, Integer> PREFIX_INDEXES = new ConcurrentHashMap<>();
+
+    /** Interned prefixes by index; the one at index 0, the empty prefix, is never interned */
+    private static volatile String[] mPrefixes = {""};
+
+    /** Block the next articles are written to */
+    private byte[] mBlock;
+
+    /** Number of bytes used in {@link #mBlock} */
+    private int mBlockUsed;
+
+    /** Record being encoded, reused for every article */
+    private final Encoder mEncoder = new Encoder();
+
+    /**
+     * Returns a new {@link NewsArticle} whose text is held in this buffer.
+     *
+     * @param title Title of the article
+     * @param section Name of the section the article belongs to
+     * @param webUrl URL leading to complete article
+     * @param thumbnailUrl URL leading to thumbnail
+     * @param publicationDate Publication time in milliseconds since the epoch, or 0
+     */
+    public NewsArticle add(String title, String section, String webUrl, String thumbnailUrl,
+                           long publicationDate) {
+        mEncoder.encode(title, section, webUrl, thumbnailUrl);
+        int length = mEncoder.mLength;
+        if (mBlock == null || mBlock.length - mBlockUsed < length) {
+            int blockSize = mBlock == null
+                    ? MIN_BLOCK_SIZE : Math.min(MAX_BLOCK_SIZE, mBlock.length * 2);
+            mBlock = new byte[Math.max(blockSize, length)];
+            mBlockUsed = 0;
+        }
+        System.arraycopy(mEncoder.mBytes, 0, mBlock, mBlockUsed, length);
+        NewsArticle article = new NewsArticle(mBlock, mBlockUsed, publicationDate);
+        mBlockUsed += length;
+        return article;
+    }
+
+    /**
+     * Returns the record of an article on its own, in an array of its exact size.
+     */
+    static byte[] encode(String title, String section, String webUrl, String thumbnailUrl) {
+        Encoder encoder = new Encoder();
+        encoder.encode(title, section, webUrl, thumbnailUrl);
+        return Arrays.copyOf(encoder.mBytes, encoder.mLength);
+    }
+
+    /**
+     * Returns the string of a record starting at the given offset.
+     */
+    static String readString(byte[] data, int offset) {
+        int length = readVarint(data, offset) - 1;
+        if (length < 0) {
+            return null;
+        }
+        return length == 0 ? "" : new String(data, offset + varintSize(data, offset), length,
+                UTF_8);
+    }
+
+    /**
+     * Returns the interned text of a record starting at the given offset: its prefix followed
+     * by the rest of the text.
+     */
+    static String readInterned(byte[] data, int offset) {
+        String prefix = mPrefixes[readVarint(data, offset)];
+        int suffixOffset = offset + varintSize(data, offset);
+        if (readVarint(data, suffixOffset) == 1) {
+            // Interned whole, e.g. a section name: no copy needed
+            return prefix;
+        }
+        String suffix = readString(data, suffixOffset);
+        if (suffix == null) {
+            return null;
+        }
+        return prefix.isEmpty() ? suffix : prefix.concat(suffix);
+    }
+
+    /**
+     * Returns the offset just past the string of a record starting at the given offset.
+     */
+    static int skipString(byte[] data, int offset) {
+        return offset + varintSize(data, offset) + Math.max(0, readVarint(data, offset) - 1);
+    }
+
+    /**
+     * Returns the offset just past the interned text of a record starting at the given
+     * offset.
+     */
+    static int skipInterned(byte[] data, int offset) {
+        return skipString(data, offset + varintSize(data, offset));
+    }
+
+    private static int readVarint(byte[] data, int offset) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[offset++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int varintSize(byte[] data, int offset) {
+        int size = 1;
+        while ((data[offset + size - 1] & 0x80) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the offset just past the whole record of an article starting at the given
+     * offset, without decoding any of its text.
+     */
+    static int skipRecord(byte[] data, int offset) {
+        int end = skipString(data, offset);
+        for (int i = 0; i < 3; i++) {
+            end = skipInterned(data, end);
+        }
+        return end;
+    }
+
+    /**
+     * Returns the number of prefixes interned so far.
+     */
+    static int getPrefixCount() {
+        return mPrefixes.length;
+    }
+
+    /**
+     * Returns the index of the given prefix, interning it if there is room, or 0 if there is
+     * none.
+     */
+    private static int internPrefix(String prefix) {
+        Integer index = PREFIX_INDEXES.get(prefix);
+        if (index != null) {
+            return index;
+        }
+        synchronized (PREFIX_INDEXES) {
+            index = PREFIX_INDEXES.get(prefix);
+            if (index != null) {
+                return index;
+            }
+            String[] prefixes = mPrefixes;
+            if (prefixes.length >= MAX_PREFIXES) {
+                return 0;
+            }
+            String[] grown = Arrays.copyOf(prefixes, prefixes.length + 1);
+            grown[prefixes.length] = prefix;
+            // Published before its index, so a record referring to it can always be read
+            mPrefixes = grown;
+            PREFIX_INDEXES.put(prefix, prefixes.length);
+            return prefixes.length;
+        }
+    }
+
+    /**
+     * Returns the prefix of the given URL shared with other URLs, or null if it is not an
+     * absolute URL.
+     */
+    static String getUrlPrefix(String url) {
+        int length = getUrlPrefixLength(url);
+        return length > 0 ? url.substring(0, length) : null;
+    }
+
+    /**
+     * Returns the length of the prefix of the given URL shared with other URLs: its scheme and
+     * host followed by its leading path segments without digits, e.g.
+     * "https://www.theguardian.com/football/" but not the dated segments or ids that follow.
+     * Returns 0 if it is not an absolute URL.
+     */
+    private static int getUrlPrefixLength(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return 0;
+        }
+        int end = url.indexOf('/', schemeEnd + 3);
+        if (end < 0) {
+            return 0;
+        }
+        end++;
+        while (true) {
+            int segmentEnd = url.indexOf('/', end);
+            if (segmentEnd <= end) {
+                return end;
+            }
+            for (int i = end; i < segmentEnd; i++) {
+                if (Character.isDigit(url.charAt(i))) {
+                    return end;
+                }
+            }
+            end = segmentEnd + 1;
+        }
+    }
+
+    /**
+     * Encodes the record of an article into a reusable array, straight from the characters of
+     * its fields.
+     */
+    private static final class Encoder {
+
+        byte[] mBytes = new byte[256];
+
+        int mLength;
+
+        /**
+         * Index of the prefix last interned for the section, the thumbnail URL and the web
+         * URL, reused without a lookup while the articles share it, as they mostly do
+         */
+        private final int[] mLastPrefixes = new int[3];
+
+        void encode(String title, String section, String webUrl, String thumbnailUrl) {
+            mLength = 0;
+            writeString(title, 0);
+            writeInterned(section, 0);
+            writeInterned(thumbnailUrl, 1);
+            writeInterned(webUrl, 2);
+        }
+
+        /**
+         * @param field 0 for the section, interned whole, or 1 or 2 for a URL
+         */
+        private void writeInterned(String text, int field) {
+            if (text == null) {
+                writeVarint(0);
+                writeString(null, 0);
+                return;
+            }
+            int prefixLength = field == 0 ? text.length() : getUrlPrefixLength(text);
+            int index = 0;
+            if (prefixLength > 0) {
+                String last = mPrefixes[mLastPrefixes[field]];
+                if (last.length() == prefixLength && text.startsWith(last)) {
+                    index = mLastPrefixes[field];
+                } else {
+                    index = internPrefix(text.substring(0, prefixLength));
+                    mLastPrefixes[field] = index;
+                }
+            }
+            writeVarint(index);
+            writeString(text, mPrefixes[index].length());
+        }
+
+        /**
+         * Write the given string from the given index on, in UTF-8 like
+         * {@link String#getBytes(Charset)} would, with '?' for unpaired surrogates.
+         */
+        private void writeString(String value, int start) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            int end = value.length();
+            int byteCount = 0;
+            for (int i = start; i < end; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    byteCount++;
+                } else if (c < 0x800) {
+                    byteCount += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < end
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    byteCount += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    byteCount++;
+                } else {
+                    byteCount += 3;
+                }
+            }
+            writeVarint(byteCount + 1);
+            ensureCapacity(byteCount);
+
+            byte[] bytes = mBytes;
+            int length = mLength;
+            for (int i = start; i < end; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[length++] = (byte) (0xc0 | (c >> 6));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < end
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    bytes[length++] = (byte) (0xf0 | (codePoint >> 18));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    bytes[length++] = '?';
+                } else {
+                    bytes[length++] = (byte) (0xe0 | (c >> 12));
+                    bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    bytes[length++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            mLength = length;
+        }
+
+        private void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7f) != 0) {
+                mBytes[mLength++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBytes[mLength++] = (byte) value;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (mLength + extra > mBytes.length) {
+                mBytes = Arrays.copyOf(mBytes, Math.max(mBytes.length * 2, mLength + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.android.ukfootballnews;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import com.example.android.ukfootballnews.data.ArticleStore;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Searches the titles of the stored articles as the user types. Queries run on a background
+ * thread; starting a new query cancels the one still running, and the results of a query
+ * that was replaced are never delivered. Must be used on the main thread.
+ */
+public class ArticleSearcher {
+
+    /**
+     * Interface definition for a callback to be invoked with the results of a query.
+     */
+    public interface OnResultsListener {
+        void onSearchResults(String query, List<NewsArticle> articles);
+    }
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ArticleSearcher.class.getSimpleName();
+
+    /** Maximum number of articles returned by a query */
+    private static final int MAX_RESULTS = 200;
+
+    /** Thread the queries run on, shared by every searcher */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final ArticleStore mStore;
+
+    private final OnResultsListener mListener;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Incremented for every query, so the results of a replaced query are dropped */
+    private int mGeneration;
+
+    /** Cancels the query that is running or waiting to run, or null */
+    private CancellationSignal mCancellationSignal;
+
+    /**
+     * Constructs a new {@link ArticleSearcher}.
+     *
+     * @param context of the app
+     * @param listener notified on the main thread with the results of the latest query
+     */
+    public ArticleSearcher(Context context, OnResultsListener listener) {
+        mStore = ArticleStore.get(context);
+        mListener = listener;
+    }
+
+    /**
+     * Search for the articles whose title contains words starting with each word of the
+     * given query, replacing the previous query.
+     */
+    public void search(final String query) {
+        cancel();
+
+        final int generation = mGeneration;
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        mCancellationSignal = cancellationSignal;
+
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Replaced before it even started
+                if (cancellationSignal.isCanceled()) {
+                    return;
+                }
+
+                long startNanos = PipelineMetrics.start();
+                final List<NewsArticle> articles;
+                try {
+                    articles = mStore.searchArticles(query, MAX_RESULTS, cancellationSignal);
+                } catch (OperationCanceledException e) {
+                    return;
+                }
+                PipelineMetrics.record(PipelineMetrics.Metric.SEARCH, startNanos);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mCancellationSignal = null;
+                        Log.i(LOG_TAG, "search(): " + articles.size() + " results for " + query);
+                        mListener.onSearchResults(query, articles);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Cancel the running query, if any; its results won't be delivered.
+     */
+    public void cancel() {
+        mGeneration++;
+        if (mCancellationSignal != null) {
+            mCancellationSignal.cancel();
+            mCancellationSignal = null;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.android.ukfootballnews;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Shows the title of an article from a text layout computed ahead of time by the
+ * {@link TitleLayoutCache}, instead of measuring the text and breaking it into lines on the
+ * main thread like a TextView would on every bind.
+ *
+ * A title bound without a ready layout, or measured at another width than the layout was
+ * computed for, is laid out when it is measured, as a TextView would. Either way the view is
+ * sized like a TextView with wrap_content, maxLines 3 and ellipsize="end". The width it is
+ * measured at is reported to the {@link TitleLayoutCache}, which computes the layouts of the
+ * next titles for it.
+ */
+public class ArticleTitleView extends View {
+
+    private final TitleLayoutCache mCache;
+
+    /** Title shown, never null */
+    private CharSequence mTitle = "";
+
+    /** Layout of {@link #mTitle}, or null until it is computed */
+    private Layout mLayout;
+
+    public ArticleTitleView(Context context) {
+        this(context, null);
+    }
+
+    public ArticleTitleView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mCache = TitleLayoutCache.get(context);
+    }
+
+    /**
+     * Show the given title.
+     *
+     * @param title to show, or null for none
+     * @param layout of the title computed by the {@link TitleLayoutCache}, or null to lay it
+     *               out when the view is measured
+     */
+    public void setTitle(CharSequence title, Layout layout) {
+        mTitle = title != null ? title : "";
+        mLayout = layout;
+        setContentDescription(title);
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Returns the title shown.
+     */
+    public CharSequence getTitle() {
+        return mTitle;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+        int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int availableWidth = widthMode == MeasureSpec.UNSPECIFIED
+                ? getResources().getDisplayMetrics().widthPixels
+                : MeasureSpec.getSize(widthMeasureSpec) - horizontalPadding;
+        availableWidth = Math.max(1, availableWidth);
+        if (widthMode != MeasureSpec.UNSPECIFIED) {
+            mCache.setWidth(availableWidth);
+        }
+
+        if (mLayout == null || mLayout.getWidth() != availableWidth) {
+            mLayout = mCache.buildNow(mTitle, availableWidth);
+        }
+
+        int width;
+        if (widthMode == MeasureSpec.EXACTLY) {
+            width = MeasureSpec.getSize(widthMeasureSpec);
+        } else {
+            // As wide as the longest line, like a TextView with wrap_content
+            float lineWidth = 0;
+            for (int line = 0; line < mLayout.getLineCount(); line++) {
+                lineWidth = Math.max(lineWidth, mLayout.getLineWidth(line));
+            }
+            width = Math.min((int) Math.ceil(lineWidth), availableWidth) + horizontalPadding;
+        }
+        int height = mLayout.getHeight() + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mLayout == null) {
+            return;
+        }
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        mLayout.draw(canvas);
+        canvas.restore();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.android.ukfootballnews;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Estimates the throughput of the current network from the downloads the app makes anyway:
+ * API responses and thumbnails. Only the time spent waiting in reads counts, so the time the
+ * app takes to parse or decode what it read doesn't lower the estimate, and downloads too
+ * small to say anything about the throughput are ignored.
+ *
+ * The estimate is an exponentially weighted moving average, so it follows the network as it
+ * gets better or worse without jumping on a single slow download. It should be reset when the
+ * device switches to another network.
+ */
+public final class BandwidthMeter {
+
+    /** Downloads smaller than this mostly measure latency, not throughput */
+    static final long MIN_SAMPLE_BYTES = 8 * 1024;
+
+    /** Weight of a new download in the moving average */
+    private static final double SAMPLE_WEIGHT = 0.3;
+
+    /** Estimated throughput in kilobits per second, or -1 while unknown */
+    private static double mEstimateKbps = -1;
+
+    /** Number of downloads the estimate is based on */
+    private static int mSampleCount;
+
+    /**
+     * Create a private constructor because no one should ever create a {@link BandwidthMeter}
+     * object. This class only holds static methods.
+     */
+    private BandwidthMeter() {
+    }
+
+    /**
+     * Record a download, ignored if it is too small.
+     *
+     * @param byteCount number of bytes received
+     * @param nanos time spent waiting for them
+     */
+    public static synchronized void recordTransfer(long byteCount, long nanos) {
+        if (byteCount < MIN_SAMPLE_BYTES || nanos <= 0) {
+            return;
+        }
+        double kbps = byteCount * 8 * 1000000.0 / nanos;
+        mEstimateKbps = mEstimateKbps < 0
+                ? kbps : SAMPLE_WEIGHT * kbps + (1 - SAMPLE_WEIGHT) * mEstimateKbps;
+        mSampleCount++;
+    }
+
+    /**
+     * Returns the estimated throughput in kilobits per second, or -1 if nothing was measured
+     * on the current network yet.
+     */
+    public static synchronized long getEstimateKbps() {
+        return Math.round(mEstimateKbps);
+    }
+
+    /**
+     * Returns the number of downloads the estimate is based on.
+     */
+    public static synchronized int getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * Forget the estimate, e.g. because the device switched to another network.
+     */
+    public static synchronized void reset() {
+        mEstimateKbps = -1;
+        mSampleCount = 0;
+    }
+
+    /**
+     * {@link InputStream} measuring the bytes read from it and the time spent waiting in its
+     * reads, recorded with {@link #recordTransfer} once it is read to its end and closed.
+     */
+    static final class MeteredInputStream extends FilterInputStream {
+
+        /** Length of the whole stream, or -1 if unknown */
+        private final long mLength;
+
+        private long mByteCount;
+
+        private long mNanos;
+
+        private boolean mEndReached;
+
+        /**
+         * @param in stream to measure
+         * @param length of the whole stream, e.g. from the Content-Length header, or -1 if
+         *               unknown. Readers such as image decoders may stop at the end of the
+         *               data without asking for the end of the stream.
+         */
+        MeteredInputStream(InputStream in, long length) {
+            super(in);
+            mLength = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long startNanos = System.nanoTime();
+            int b = super.read();
+            mNanos += System.nanoTime() - startNanos;
+            if (b == -1) {
+                mEndReached = true;
+            } else {
+                mByteCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            long startNanos = System.nanoTime();
+            int read = super.read(buffer, offset, count);
+            mNanos += System.nanoTime() - startNanos;
+            if (read == -1) {
+                mEndReached = true;
+            } else {
+                mByteCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // A download abandoned halfway may have stopped for reasons other than the network
+            if (mEndReached || (mLength > 0 && mByteCount >= mLength)) {
+                recordTransfer(mByteCount, mNanos);
+                mEndReached = false;
+                mByteCount = 0;
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.android.ukfootballnews;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pages through several feeds at once and merges their articles into a single list, newest
+ * first, without duplicates.
+ *
+ * The feeds don't publish at the same pace: the second page of a busy feed can be newer than
+ * the first page of a quiet one. So every feed has its own page cursor, and the articles
+ * received are merged by date (a k-way merge) rather than page by page. An article is only
+ * handed out once no feed can still deliver a newer one, i.e. once it is at least as new as
+ * the oldest article received from every feed that has more pages. The articles older than
+ * that wait for the next pages, and only the feeds that don't have a page of articles
+ * waiting are fetched again.
+ *
+ * A feed whose page could not be fetched keeps its cursor, and the page is requested again by
+ * the next load; meanwhile the feed doesn't hold the others back, so the articles of that page
+ * newer than those handed out in between come after them. A first page fetched again, e.g.
+ * once stale, only hands out the articles published since, to show above the others: the
+ * cursors are kept, and the articles the next pages then hold twice are dropped.
+ *
+ * Not thread-safe; used on the main thread.
+ */
+public final class FeedPager {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = FeedPager.class.getSimpleName();
+
+    /** Number of URLs of the last articles handed out remembered to drop duplicates. */
+    private static final int MAX_REMEMBERED_ARTICLE_URLS = 500;
+
+    /** Number of articles requested per page of each feed */
+    private final int mPageSize;
+
+    /** Number of the last page received of each feed, 0 before the first one */
+    private final int[] mLastPages;
+
+    /** Whether each feed has no more pages */
+    private final boolean[] mExhausted;
+
+    /** Whether the last page requested of each feed could not be fetched */
+    private final boolean[] mFailed;
+
+    /**
+     * Publication time of the oldest article received from each feed: none of its next pages
+     * can hold a newer one. {@link Long#MAX_VALUE} before its first page.
+     */
+    private final long[] mOldestReceived;
+
+    /** Articles received from each feed and not handed out yet, newest first */
+    private final List<ArrayDeque<NewsArticle>> mPending;
+
+    /** URLs of the articles in {@link #mPending} */
+    private final Set<String> mPendingUrls = new HashSet<>();
+
+    /**
+     * URLs of the last articles handed out, used to drop duplicates: the same article can be
+     * in several feeds, or move to the next page while new ones are published. Older URLs are
+     * forgotten so the set doesn't grow with the list.
+     */
+    private final Set<String> mHandedOutUrls = Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_REMEMBERED_ARTICLE_URLS;
+                }
+            });
+
+    /** Publication time of the newest article handed out, {@link Long#MIN_VALUE} before */
+    private long mNewestHandedOut = Long.MIN_VALUE;
+
+    /** Page of each feed requested by the last load, 0 for the feeds it doesn't fetch */
+    private int[] mRequestedPages;
+
+    /**
+     * Constructor for a new FeedPager object, whose first load fetches the first page of every
+     * feed.
+     *
+     * @param feedCount number of feeds
+     * @param pageSize number of articles requested per page of each feed
+     */
+    public FeedPager(int feedCount, int pageSize) {
+        mPageSize = pageSize;
+        mLastPages = new int[feedCount];
+        mExhausted = new boolean[feedCount];
+        mFailed = new boolean[feedCount];
+        mOldestReceived = new long[feedCount];
+        Arrays.fill(mOldestReceived, Long.MAX_VALUE);
+        mPending = new ArrayList<>(feedCount);
+        for (int feed = 0; feed < feedCount; feed++) {
+            mPending.add(new ArrayDeque<NewsArticle>());
+        }
+        mRequestedPages = new int[feedCount];
+        Arrays.fill(mRequestedPages, 1);
+    }
+
+    /**
+     * Returns true if some feed may have more pages.
+     */
+    public boolean hasMorePages() {
+        for (boolean exhausted : mExhausted) {
+            if (!exhausted) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if a page of the last load could not be fetched, and is requested again by
+     * the next one.
+     */
+    public boolean hasFailedPages() {
+        for (boolean failed : mFailed) {
+            if (failed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if pages after the first one were received from some feed.
+     */
+    public boolean hasNextPages() {
+        for (int lastPage : mLastPages) {
+            if (lastPage > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start the next load, returning the page to request of each feed, or 0 for the feeds that
+     * already have a page of articles waiting, or no more pages. The load must then be handed
+     * to {@link #acceptPages(List)}.
+     */
+    public int[] startLoad() {
+        int[] pages = new int[mLastPages.length];
+        for (int feed = 0; feed < pages.length; feed++) {
+            if (!mExhausted[feed] && mPending.get(feed).size() < mPageSize) {
+                pages[feed] = mLastPages[feed] + 1;
+            }
+        }
+        mRequestedPages = pages;
+        return pages.clone();
+    }
+
+    /**
+     * Record the pages received by the last load and return the articles that can be shown
+     * after the ones returned before, newest first. A feed whose page could not be fetched
+     * requests it again with the next load, without holding back the others meanwhile.
+     *
+     * @param results of the pages requested by the last load, in the order of the feeds and
+     *                only for the feeds it fetched
+     */
+    public List<NewsArticle> acceptPages(List<FetchResult> results) {
+        int index = 0;
+        for (int feed = 0; feed < mRequestedPages.length; feed++) {
+            if (mRequestedPages[feed] == 0) {
+                continue;
+            }
+            FetchResult result = index < results.size() ? results.get(index) : null;
+            index++;
+            mFailed[feed] = result == null || !result.isSuccessful();
+            if (mFailed[feed]) {
+                Log.e(LOG_TAG, "acceptPages(): page " + mRequestedPages[feed] + " of feed "
+                        + feed + " failed, requesting it again with the next load");
+                continue;
+            }
+            acceptPage(feed, mRequestedPages[feed], result.getArticles());
+        }
+        mRequestedPages = new int[mRequestedPages.length];
+        return takeMergedArticles();
+    }
+
+    /**
+     * Record the first page of every feed fetched again, e.g. once stale, and return its
+     * articles published since the newest one handed out, newest first, to show above the
+     * articles returned before. The cursor of every feed is kept.
+     *
+     * @param results of the first page of every feed, in the order of the feeds
+     */
+    public List<NewsArticle> acceptRefreshedFirstPages(List<FetchResult> results) {
+        List<NewsArticle> published = new ArrayList<>();
+        Set<String> publishedUrls = new HashSet<>();
+        for (FetchResult result : results) {
+            if (result == null || !result.isSuccessful()) {
+                continue;
+            }
+            for (NewsArticle article : result.getArticles()) {
+                String url = article.getInfoUrl();
+                if (article.getPublicationDate() > mNewestHandedOut
+                        && !mHandedOutUrls.contains(url) && !mPendingUrls.contains(url)
+                        && publishedUrls.add(url)) {
+                    published.add(article);
+                }
+            }
+        }
+        Collections.sort(published, MultiSectionFetcher.NEWEST_FIRST);
+        for (NewsArticle article : published) {
+            handOut(article);
+        }
+        Log.i(LOG_TAG, "acceptRefreshedFirstPages(): " + published.size()
+                + " articles published since.");
+        return published;
+    }
+
+    /**
+     * Record a page received from the given feed.
+     */
+    private void acceptPage(int feed, int page, List<NewsArticle> articles) {
+        mLastPages[feed] = page;
+        mExhausted[feed] = articles.size() < mPageSize;
+
+        List<NewsArticle> sorted = new ArrayList<>(articles);
+        Collections.sort(sorted, MultiSectionFetcher.NEWEST_FIRST);
+        ArrayDeque<NewsArticle> pending = mPending.get(feed);
+        for (NewsArticle article : sorted) {
+            mOldestReceived[feed] = Math.min(mOldestReceived[feed],
+                    article.getPublicationDate());
+            String url = article.getInfoUrl();
+            if (!mHandedOutUrls.contains(url) && mPendingUrls.add(url)) {
+                pending.addLast(article);
+            }
+        }
+    }
+
+    /**
+     * Remove and return, newest first, the waiting articles that no feed can still deliver a
+     * newer article than.
+     */
+    private List<NewsArticle> takeMergedArticles() {
+        // Nothing newer than the oldest article received can come from the next pages of a
+        // feed, so the feed that stopped the newest is the one holding the others back,
+        // unless its last page failed
+        long cutoff = Long.MIN_VALUE;
+        for (int feed = 0; feed < mExhausted.length; feed++) {
+            if (!mExhausted[feed] && !mFailed[feed]) {
+                cutoff = Math.max(cutoff, mOldestReceived[feed]);
+            }
+        }
+
+        List<NewsArticle> merged = new ArrayList<>();
+        while (true) {
+            ArrayDeque<NewsArticle> newest = null;
+            for (ArrayDeque<NewsArticle> pending : mPending) {
+                if (!pending.isEmpty() && (newest == null || pending.peekFirst()
+                        .getPublicationDate() > newest.peekFirst().getPublicationDate())) {
+                    newest = pending;
+                }
+            }
+            if (newest == null || newest.peekFirst().getPublicationDate() < cutoff) {
+                break;
+            }
+            NewsArticle article = newest.removeFirst();
+            mPendingUrls.remove(article.getInfoUrl());
+            handOut(article);
+            merged.add(article);
+        }
+        Log.i(LOG_TAG, "takeMergedArticles(): " + merged.size() + " articles, "
+                + mPendingUrls.size() + " waiting for the next pages.");
+        return merged;
+    }
+
+    private void handOut(NewsArticle article) {
+        mHandedOutUrls.add(article.getInfoUrl());
+        mNewestHandedOut = Math.max(mNewestHandedOut, article.getPublicationDate());
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.android.ukfootballnews;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decides how much the app downloads, and ahead of time, depending on the network: the
+ * number of articles per page, how early the next page and the thumbnails of the next rows
+ * are fetched, whether article bodies are prefetched and which thumbnail rendition is used.
+ *
+ * The network falls into a {@link Tier} from its type, whether it is metered or roaming,
+ * whether Data Saver is on, and the throughput measured by the {@link BandwidthMeter}. Poor
+ * links get small pages and no prefetching, so what the user asked for arrives sooner;
+ * unmetered ones get larger pages and prefetch further ahead, so scrolling never waits. The
+ * tier is evaluated again whenever the connectivity changes.
+ */
+public final class FetchPolicy {
+
+    /**
+     * How generous the app can be with the current network, from least to most.
+     */
+    public enum Tier {
+        /** No network */
+        OFFLINE,
+        /** Slow, roaming or Data Saver: only download what is shown */
+        CONSTRAINED,
+        /** Mobile data or a metered Wi-Fi: prefetch a little */
+        METERED,
+        /** Wi-Fi or Ethernet: prefetch freely */
+        UNMETERED
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when the tier changes.
+     */
+    public interface OnTierChangedListener {
+        void onTierChanged(Tier tier);
+    }
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = FetchPolicy.class.getSimpleName();
+
+    /** Below this measured throughput, in kilobits per second, a network is constrained */
+    static final long CONSTRAINED_KBPS = 250;
+
+    /** The single fetch policy of the app. */
+    private static FetchPolicy mInstance;
+
+    private final ConnectivityManager mConnectivityManager;
+
+    /** Notified on the main thread when the tier changes */
+    private final List<OnTierChangedListener> mListeners = new ArrayList<>();
+
+    /** Tier of the active network, before the measured throughput is taken into account */
+    private volatile Tier mNetworkTier;
+
+    /** Type and subtype of the active network, to tell when the device switches networks */
+    private int mNetworkType = -1;
+    private int mNetworkSubtype = -1;
+
+    /** Tier reported to the listeners last */
+    private Tier mNotifiedTier;
+
+    private FetchPolicy(Context context) {
+        mConnectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        evaluateNetwork();
+        mNotifiedTier = getTier();
+
+        // Kept for the life of the app, like the policy itself
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onConnectivityChanged();
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * Returns the fetch policy of the app. Must be called on the main thread.
+     *
+     * @param context of the app
+     */
+    public static FetchPolicy get(Context context) {
+        if (mInstance == null) {
+            mInstance = new FetchPolicy(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * Register a listener notified on the main thread when the tier changes. Must be called
+     * on the main thread.
+     */
+    public void addOnTierChangedListener(OnTierChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener added with {@link #addOnTierChangedListener}. Must be called on
+     * the main thread.
+     */
+    public void removeOnTierChangedListener(OnTierChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Returns the tier of the current network. Can be called from any thread.
+     */
+    public Tier getTier() {
+        return applyThroughput(mNetworkTier, BandwidthMeter.getEstimateKbps());
+    }
+
+    /**
+     * Returns true if there is a network connection.
+     */
+    public boolean isConnected() {
+        return mNetworkTier != Tier.OFFLINE;
+    }
+
+    /**
+     * Returns the number of articles to request per page of each feed.
+     */
+    public int getPageSize() {
+        switch (getTier()) {
+            case CONSTRAINED:
+                return 5;
+            case UNMETERED:
+                return 20;
+            default:
+                return 10;
+        }
+    }
+
+    /**
+     * Returns how many rows before the end of the list the next page starts loading; 0 only
+     * loads it once the end is reached.
+     */
+    public int getNextPageThreshold() {
+        switch (getTier()) {
+            case CONSTRAINED:
+                return 0;
+            case UNMETERED:
+                return 15;
+            default:
+                return 5;
+        }
+    }
+
+    /**
+     * Returns the number of rows past the last visible one whose thumbnails are prefetched.
+     */
+    public int getThumbnailPrefetchRows() {
+        switch (getTier()) {
+            case CONSTRAINED:
+                return 0;
+            case UNMETERED:
+                return 12;
+            default:
+                return 4;
+        }
+    }
+
+    /**
+     * Returns true if the bodies of the articles shown may be downloaded ahead of time, so
+     * they open instantly.
+     */
+    public boolean shouldPrefetchArticleBodies() {
+        return getTier() == Tier.UNMETERED;
+    }
+
+    /**
+     * Returns true if thumbnails should use the smallest rendition available, even if it is
+     * a little smaller than the thumbnail.
+     */
+    public boolean shouldUseLowResolutionThumbnails() {
+        return getTier() == Tier.CONSTRAINED;
+    }
+
+    @Override
+    public String toString() {
+        return "FetchPolicy{tier=" + getTier() + ", networkTier=" + mNetworkTier
+                + ", throughputKbps=" + BandwidthMeter.getEstimateKbps() + "}";
+    }
+
+    /**
+     * Evaluate the network again and notify the listeners if the tier changed.
+     */
+    private void onConnectivityChanged() {
+        evaluateNetwork();
+        Tier tier = getTier();
+        Log.i(LOG_TAG, "onConnectivityChanged(): " + this);
+        if (tier != mNotifiedTier) {
+            mNotifiedTier = tier;
+            for (OnTierChangedListener listener : new ArrayList<>(mListeners)) {
+                listener.onTierChanged(tier);
+            }
+        }
+    }
+
+    /**
+     * Read the state of the active network, forgetting the measured throughput if the device
+     * switched to another network.
+     */
+    private void evaluateNetwork() {
+        NetworkInfo network = mConnectivityManager.getActiveNetworkInfo();
+        boolean connected = network != null && network.isConnectedOrConnecting();
+        int type = connected ? network.getType() : -1;
+        int subtype = connected ? network.getSubtype() : -1;
+        if (type != mNetworkType || subtype != mNetworkSubtype) {
+            BandwidthMeter.reset();
+            mNetworkType = type;
+            mNetworkSubtype = subtype;
+        }
+
+        boolean dataSaver = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && mConnectivityManager.getRestrictBackgroundStatus()
+                == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+        mNetworkTier = classifyNetwork(connected, type, subtype,
+                connected && mConnectivityManager.isActiveNetworkMetered(),
+                connected && network.isRoaming(), dataSaver);
+    }
+
+    /**
+     * Returns the tier of a network from what the system reports about it.
+     *
+     * @param connected whether there is an active network
+     * @param type of the network, e.g. {@link ConnectivityManager#TYPE_WIFI}
+     * @param subtype of a mobile network, e.g. {@link TelephonyManager#NETWORK_TYPE_EDGE}
+     * @param metered whether the user may pay for the data
+     * @param roaming whether the mobile network is roaming
+     * @param dataSaver whether the user asked apps to use less data
+     */
+    static Tier classifyNetwork(boolean connected, int type, int subtype, boolean metered,
+                                boolean roaming, boolean dataSaver) {
+        if (!connected) {
+            return Tier.OFFLINE;
+        }
+        if (roaming || dataSaver) {
+            return Tier.CONSTRAINED;
+        }
+        if (type == ConnectivityManager.TYPE_MOBILE) {
+            switch (subtype) {
+                // 2G networks
+                case TelephonyManager.NETWORK_TYPE_GPRS:
+                case TelephonyManager.NETWORK_TYPE_EDGE:
+                case TelephonyManager.NETWORK_TYPE_CDMA:
+                case TelephonyManager.NETWORK_TYPE_1xRTT:
+                case TelephonyManager.NETWORK_TYPE_IDEN:
+                    return Tier.CONSTRAINED;
+                default:
+                    return Tier.METERED;
+            }
+        }
+        return metered ? Tier.METERED : Tier.UNMETERED;
+    }
+
+    /**
+     * Returns the tier of a network once its measured throughput is known: any network
+     * slower than {@link #CONSTRAINED_KBPS} is constrained, whatever its type.
+     *
+     * @param throughputKbps measured throughput, or -1 if unknown
+     */
+    static Tier applyThroughput(Tier networkTier, long throughputKbps) {
+        if (networkTier != Tier.OFFLINE && throughputKbps >= 0
+                && throughputKbps < CONSTRAINED_KBPS) {
+            return Tier.CONSTRAINED;
+        }
+        return networkTier;
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.android.ukfootballnews;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Decides how {@link QueryUtils} talks to The Guardian API when the network or the API
+ * misbehaves:
+ *
+ * <ul>
+ * <li>Timeouts follow the latency actually observed: a multiple of the 99th percentile of the
+ * recent connect and time-to-first-byte times, within fixed bounds. Until enough requests
+ * were made, the upper bounds are used. Every retry doubles the timeouts, up to the upper
+ * bounds, in case the network just got slower than what was observed.</li>
+ * <li>Requests that failed in a way that may be temporary (no response, 408, 429 or 5xx) are
+ * retried a few times, waiting a random time up to an exponentially growing limit ("full
+ * jitter"), so clients that failed together don't all retry together. Only GET requests are
+ * made, so retrying is safe.</li>
+ * <li>A circuit breaker stops requests after several fetches failed in a row. While it is
+ * open, requests fail straight away so the caller can show cached data, and after a pause a
+ * single trial request is let through to find out whether the API recovered.</li>
+ * </ul>
+ *
+ * All methods are thread-safe.
+ */
+public final class FetchResilience {
+
+    /**
+     * State of the circuit breaker.
+     */
+    public enum State {
+        /** Requests are made */
+        CLOSED,
+        /** Requests fail straight away, the API is considered unhealthy */
+        OPEN,
+        /** A single trial request is made to find out whether the API recovered */
+        HALF_OPEN
+    }
+
+    /**
+     * Reported when no request was made because the circuit breaker is open.
+     */
+    public static final class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException() {
+            super("The Guardian API is unhealthy, request not made");
+        }
+    }
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = FetchResilience.class.getSimpleName();
+
+    /** Bounds of the connect timeout, in milliseconds */
+    private static final int MIN_CONNECT_TIMEOUT_MILLIS = 3000;
+    private static final int MAX_CONNECT_TIMEOUT_MILLIS = 15000;
+
+    /** Bounds of the read timeout, in milliseconds */
+    private static final int MIN_READ_TIMEOUT_MILLIS = 3000;
+    private static final int MAX_READ_TIMEOUT_MILLIS = 10000;
+
+    /** Timeouts are this multiple of the 99th percentile of the observed times */
+    private static final int TIMEOUT_PERCENTILE_MULTIPLIER = 3;
+
+    /** Number of recent requests the timeouts are derived from */
+    private static final int LATENCY_WINDOW = 64;
+
+    /** Number of requests needed before the timeouts are derived from them */
+    private static final int MIN_LATENCY_SAMPLES = 10;
+
+    /** Maximum number of attempts of a request, the first one included */
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /** Limit of the wait before the first retry, doubled for every further retry */
+    private static final long DEFAULT_BASE_BACKOFF_MILLIS = 500;
+
+    /** Maximum wait before a retry */
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 4000;
+
+    /** No retry starts once a request has taken this long, so the user isn't kept waiting */
+    private static final long DEFAULT_RETRY_BUDGET_MILLIS = 12000;
+
+    /** Number of fetches failing in a row that opens the circuit */
+    private static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /** Time the circuit stays open before a trial request */
+    private static final long DEFAULT_OPEN_MILLIS = 30000;
+
+    private final int mMaxAttempts;
+    private final long mBaseBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final long mRetryBudgetMillis;
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private final Random mRandom;
+
+    /** Recent connect times and times to first byte, in milliseconds */
+    private final LatencyWindow mConnectMillis = new LatencyWindow();
+    private final LatencyWindow mFirstByteMillis = new LatencyWindow();
+
+    private State mState = State.CLOSED;
+
+    /** Number of fetches that failed since the last successful one */
+    private int mConsecutiveFailures;
+
+    /** When the circuit was last opened, in {@link System#nanoTime()} */
+    private long mOpenedAtNanos;
+
+    /** Whether the trial request of the half-open state was handed out */
+    private boolean mTrialInFlight;
+
+    /** Number of retries made and of requests rejected by the open circuit */
+    private long mRetryCount;
+    private long mRejectedCount;
+
+    /**
+     * Constructs a new {@link FetchResilience} with the settings used by the app.
+     */
+    public FetchResilience() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS,
+                DEFAULT_RETRY_BUDGET_MILLIS, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS,
+                new Random());
+    }
+
+    /**
+     * Constructs a new {@link FetchResilience}.
+     *
+     * @param maxAttempts maximum number of attempts of a request, the first one included
+     * @param baseBackoffMillis limit of the wait before the first retry
+     * @param maxBackoffMillis maximum wait before a retry
+     * @param retryBudgetMillis no retry starts once a request has taken this long
+     * @param failureThreshold number of fetches failing in a row that opens the circuit
+     * @param openMillis time the circuit stays open before a trial request
+     * @param random source of the backoff jitter
+     */
+    FetchResilience(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis,
+                    long retryBudgetMillis, int failureThreshold, long openMillis,
+                    Random random) {
+        mMaxAttempts = maxAttempts;
+        mBaseBackoffMillis = baseBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+        mRetryBudgetMillis = retryBudgetMillis;
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+        mRandom = random;
+    }
+
+    /**
+     * Returns the connect timeout to use, in milliseconds.
+     *
+     * @param attempt number of the attempt, 1 for the first one
+     */
+    public synchronized int getConnectTimeoutMillis(int attempt) {
+        return escalate(mConnectMillis.timeout(MIN_CONNECT_TIMEOUT_MILLIS,
+                MAX_CONNECT_TIMEOUT_MILLIS), attempt, MAX_CONNECT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Returns the read timeout to use, in milliseconds.
+     *
+     * @param attempt number of the attempt, 1 for the first one
+     */
+    public synchronized int getReadTimeoutMillis(int attempt) {
+        return escalate(mFirstByteMillis.timeout(MIN_READ_TIMEOUT_MILLIS,
+                MAX_READ_TIMEOUT_MILLIS), attempt, MAX_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Record the times of a request that got a response.
+     *
+     * @param connectMillis time spent connecting, close to 0 if a connection was reused
+     * @param firstByteMillis time from sending the request to the first byte of the response
+     */
+    public synchronized void recordLatency(long connectMillis, long firstByteMillis) {
+        mConnectMillis.add(connectMillis);
+        mFirstByteMillis.add(firstByteMillis);
+    }
+
+    /**
+     * Returns true if a request that got the given result should be attempted again.
+     *
+     * @param result of the last attempt
+     * @param attempt number of attempts made so far
+     * @param elapsedMillis time the request has taken so far, attempts and waits included
+     */
+    public synchronized boolean shouldRetry(FetchResult result, int attempt,
+                                            long elapsedMillis) {
+        // The trial request of the half-open state only finds out whether the API recovered
+        return mState == State.CLOSED && attempt < mMaxAttempts
+                && elapsedMillis < mRetryBudgetMillis && isTransientFailure(result);
+    }
+
+    /**
+     * Returns the time to wait before the given retry: a random time up to a limit that
+     * doubles with every retry.
+     *
+     * @param retry number of the retry, 1 for the first one
+     */
+    public long getBackoffMillis(int retry) {
+        long limit = Math.min(mMaxBackoffMillis, mBaseBackoffMillis << Math.min(retry - 1, 20));
+        synchronized (this) {
+            mRetryCount++;
+            return (long) (mRandom.nextDouble() * limit);
+        }
+    }
+
+    /**
+     * Returns true if a request may be made now. In the half-open state only one caller gets
+     * true, until {@link #recordResult(FetchResult)} reports how its request went.
+     */
+    public synchronized boolean allowRequest() {
+        if (mState == State.OPEN
+                && (System.nanoTime() - mOpenedAtNanos) / 1000000 >= mOpenMillis) {
+            mState = State.HALF_OPEN;
+            mTrialInFlight = false;
+        }
+        if (mState == State.CLOSED) {
+            return true;
+        }
+        if (mState == State.HALF_OPEN && !mTrialInFlight) {
+            mTrialInFlight = true;
+            return true;
+        }
+        mRejectedCount++;
+        return false;
+    }
+
+    /**
+     * Record how a fetch went, after its retries, to open or close the circuit.
+     */
+    public synchronized void recordResult(FetchResult result) {
+        if (!isTransientFailure(result)) {
+            if (mState != State.CLOSED) {
+                Log.i(LOG_TAG, "recordResult(): API recovered, closing the circuit");
+            }
+            mState = State.CLOSED;
+            mConsecutiveFailures = 0;
+            return;
+        }
+
+        mConsecutiveFailures++;
+        if (mState == State.HALF_OPEN || mConsecutiveFailures >= mFailureThreshold) {
+            if (mState != State.OPEN) {
+                Log.e(LOG_TAG, "recordResult(): opening the circuit, failed fetches in a row: "
+                        + mConsecutiveFailures);
+            }
+            mState = State.OPEN;
+            mOpenedAtNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns the state of the circuit breaker.
+     */
+    public synchronized State getState() {
+        return mState;
+    }
+
+    /**
+     * Returns the number of retries made.
+     */
+    public synchronized long getRetryCount() {
+        return mRetryCount;
+    }
+
+    /**
+     * Returns the number of requests not made because the circuit was open.
+     */
+    public synchronized long getRejectedCount() {
+        return mRejectedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FetchResilience{state=" + mState
+                + ", connectTimeoutMillis=" + getConnectTimeoutMillis(1)
+                + ", readTimeoutMillis=" + getReadTimeoutMillis(1)
+                + ", retries=" + mRetryCount
+                + ", rejected=" + mRejectedCount + "}";
+    }
+
+    /**
+     * Returns true if the result is a failure that may go away by itself: no response at all,
+     * a request timeout, throttling or a server error. Other responses, e.g. 400 for a page
+     * past the last one, would fail again.
+     */
+    static boolean isTransientFailure(FetchResult result) {
+        int responseCode = result.getResponseCode();
+        if (responseCode == FetchResult.NO_RESPONSE) {
+            return !(result.getError() instanceof CircuitOpenException);
+        }
+        return responseCode == 408 || responseCode == 429 || responseCode >= 500;
+    }
+
+    /**
+     * Returns the timeout doubled for every attempt after the first one, up to the maximum.
+     */
+    private static int escalate(int timeoutMillis, int attempt, int maxMillis) {
+        return (int) Math.min(maxMillis, (long) timeoutMillis << Math.min(attempt - 1, 20));
+    }
+
+    /**
+     * The last {@link #LATENCY_WINDOW} times recorded, in milliseconds.
+     */
+    private static final class LatencyWindow {
+
+        private final long[] mSamples = new long[LATENCY_WINDOW];
+
+        private int mCount;
+
+        private int mNext;
+
+        void add(long millis) {
+            mSamples[mNext] = millis;
+            mNext = (mNext + 1) % mSamples.length;
+            mCount = Math.min(mCount + 1, mSamples.length);
+        }
+
+        /**
+         * Returns the multiple of the 99th percentile within the bounds, or the maximum if
+         * there are too few samples.
+         */
+        int timeout(int min, int max) {
+            if (mCount < MIN_LATENCY_SAMPLES) {
+                return max;
+            }
+            long[] sorted = Arrays.copyOf(mSamples, mCount);
+            Arrays.sort(sorted);
+            // Nearest-rank percentile
+            long p99 = sorted[(int) Math.ceil(0.99 * mCount) - 1];
+            long timeout = p99 * TIMEOUT_PERCENTILE_MULTIPLIER;
+            return (int) Math.max(min, Math.min(max, timeout));
+        }
+    }
+}
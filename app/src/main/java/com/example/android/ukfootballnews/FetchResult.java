@@ -0,0 +1,143 @@
+package com.example.android.ukfootballnews;
+
+import java.util.List;
+
+/**
+ * Class that represents the outcome of a single request made by
+ * {@link QueryUtils#fetchNewsData(String)}: the articles received together with the HTTP
+ * status, timing, size and cache information of that request.
+ */
+
+public class FetchResult {
+
+    /**
+     * Where the articles of a result came from.
+     */
+    public enum Source {
+        /** The response was downloaded from the server. */
+        NETWORK,
+        /** A fresh cached response was used without contacting the server. */
+        CACHE,
+        /** The server confirmed a stale cached response with a 304, and it was reused. */
+        REVALIDATED_CACHE,
+        /** The request failed or was not made, so an expired cached response was used. */
+        STALE_CACHE
+    }
+
+    /** Response code reported when no HTTP response was received at all */
+    public static final int NO_RESPONSE = -1;
+
+    /** Articles received, or null if none could be read */
+    private final List<NewsArticle> mArticles;
+
+    /** HTTP response code of the request, or {@link #NO_RESPONSE} */
+    private final int mResponseCode;
+
+    /** Where the articles came from */
+    private final Source mSource;
+
+    /** Time the whole request took, in milliseconds */
+    private final long mDurationMillis;
+
+    /** Number of response body bytes read from the network, after decompression */
+    private final long mByteCount;
+
+    /** Number of response body bytes received on the wire, before decompression */
+    private final long mWireByteCount;
+
+    /** Time spent setting up connections, in milliseconds; close to 0 if one was reused */
+    private final long mConnectMillis;
+
+    /** What went wrong, or null if nothing did */
+    private final Exception mError;
+
+    /**
+     * Constructor for a new FetchResult object
+     * @param articles received, or null if none could be read
+     * @param responseCode HTTP response code, or {@link #NO_RESPONSE}
+     * @param source where the articles came from
+     * @param durationMillis time the whole request took
+     * @param byteCount number of response body bytes read from the network
+     * @param error what went wrong, or null if nothing did
+     */
+    public FetchResult(List<NewsArticle> articles, int responseCode, Source source,
+                       long durationMillis, long byteCount, Exception error) {
+        this(articles, responseCode, source, durationMillis, byteCount, byteCount, 0, error);
+    }
+
+    /**
+     * Constructor for a new FetchResult object
+     * @param articles received, or null if none could be read
+     * @param responseCode HTTP response code, or {@link #NO_RESPONSE}
+     * @param source where the articles came from
+     * @param durationMillis time the whole request took
+     * @param byteCount number of response body bytes read, after decompression
+     * @param wireByteCount number of response body bytes received on the wire
+     * @param connectMillis time spent setting up the connection
+     * @param error what went wrong, or null if nothing did
+     */
+    public FetchResult(List<NewsArticle> articles, int responseCode, Source source,
+                       long durationMillis, long byteCount, long wireByteCount,
+                       long connectMillis, Exception error) {
+        mArticles = articles;
+        mResponseCode = responseCode;
+        mSource = source;
+        mDurationMillis = durationMillis;
+        mByteCount = byteCount;
+        mWireByteCount = wireByteCount;
+        mConnectMillis = connectMillis;
+        mError = error;
+    }
+
+    public List<NewsArticle> getArticles() {
+        return mArticles;
+    }
+
+    public int getResponseCode() {
+        return mResponseCode;
+    }
+
+    public Source getSource() {
+        return mSource;
+    }
+
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    public long getByteCount() {
+        return mByteCount;
+    }
+
+    public long getWireByteCount() {
+        return mWireByteCount;
+    }
+
+    public long getConnectMillis() {
+        return mConnectMillis;
+    }
+
+    public Exception getError() {
+        return mError;
+    }
+
+    /**
+     * Returns true if the request was answered with articles, from the network or the cache.
+     */
+    public boolean isSuccessful() {
+        return mResponseCode == 200 && mArticles != null;
+    }
+
+    @Override
+    public String toString() {
+        return "FetchResult{responseCode=" + mResponseCode
+                + ", articles=" + (mArticles == null ? "null" : mArticles.size())
+                + ", source=" + mSource
+                + ", durationMillis=" + mDurationMillis
+                + ", byteCount=" + mByteCount
+                + ", wireByteCount=" + mWireByteCount
+                + ", connectMillis=" + mConnectMillis
+                + (mError != null ? ", error=" + mError : "")
+                + "}";
+    }
+}
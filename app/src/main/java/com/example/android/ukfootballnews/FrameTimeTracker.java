@@ -0,0 +1,96 @@
+package com.example.android.ukfootballnews;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time between frames while it is running, e.g. while the list is scrolling or
+ * being refreshed, and logs a summary when it is stopped. Must be used on the main thread.
+ */
+
+public class FrameTimeTracker implements Choreographer.FrameCallback {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = FrameTimeTracker.class.getSimpleName();
+
+    /** Frames taking longer than this (one and a half 60 fps frames) are counted as janky. */
+    private static final long JANK_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(25000);
+
+    /** What is being measured, used in the log summary */
+    private final String mLabel;
+
+    private boolean mIsRunning;
+
+    /** Time of the previous frame, or 0 before the first frame */
+    private long mLastFrameTimeNanos;
+
+    private int mFrameCount;
+    private int mJankyFrameCount;
+    private long mTotalFrameTimeNanos;
+    private long mMaxFrameTimeNanos;
+
+    /**
+     * Constructs a new {@link FrameTimeTracker}.
+     *
+     * @param label describing what is being measured, e.g. "scroll"
+     */
+    public FrameTimeTracker(String label) {
+        mLabel = label;
+    }
+
+    /**
+     * Starts measuring frame times, unless already started.
+     */
+    public void start() {
+        if (mIsRunning) {
+            return;
+        }
+        mIsRunning = true;
+        mLastFrameTimeNanos = 0;
+        mFrameCount = 0;
+        mJankyFrameCount = 0;
+        mTotalFrameTimeNanos = 0;
+        mMaxFrameTimeNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Stops measuring and logs the frame times measured since {@link #start()}.
+     */
+    public void stop() {
+        if (!mIsRunning) {
+            return;
+        }
+        mIsRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+
+        if (mFrameCount > 0) {
+            Log.i(LOG_TAG, mLabel + ": " + mFrameCount + " frames, average "
+                    + TimeUnit.NANOSECONDS.toMicros(mTotalFrameTimeNanos / mFrameCount) / 1000f
+                    + " ms, max " + TimeUnit.NANOSECONDS.toMicros(mMaxFrameTimeNanos) / 1000f
+                    + " ms, " + mJankyFrameCount + " janky");
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mIsRunning) {
+            return;
+        }
+
+        if (mLastFrameTimeNanos != 0) {
+            long frameTime = frameTimeNanos - mLastFrameTimeNanos;
+            mFrameCount++;
+            mTotalFrameTimeNanos += frameTime;
+            mMaxFrameTimeNanos = Math.max(mMaxFrameTimeNanos, frameTime);
+            if (frameTime > JANK_THRESHOLD_NANOS) {
+                mJankyFrameCount++;
+            }
+        }
+        mLastFrameTimeNanos = frameTimeNanos;
+
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.android.ukfootballnews;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client shared by every request to The Guardian API.
+ *
+ * Connections are kept alive and returned to the platform's connection pool once a response
+ * was read to the end, so later requests to the same host skip the TCP and TLS handshakes.
+ * That pool is shared by every HttpURLConnection of the process, e.g. Picasso's too; it keeps
+ * up to 5 idle connections per host unless the "http.maxConnections" system property is set
+ * before the first connection, which is enough for the concurrent section requests. This
+ * client leaves those global settings alone.
+ * Responses are requested gzip-compressed and decompressed while they are read. The time
+ * spent setting up the connection and the number of bytes received on the wire are counted
+ * for every response.
+ */
+public final class GuardianHttpClient {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = GuardianHttpClient.class.getSimpleName();
+
+    /**
+     * Maximum number of unread body bytes read and thrown away when a response is closed, so
+     * its connection can still be reused. A parser usually stops right before the end of the
+     * body; anything longer is cheaper to drop along with the connection.
+     */
+    private static final int MAX_DRAIN_BYTES = 8 * 1024;
+
+    /** The client shared by every request */
+    private static final GuardianHttpClient INSTANCE = new GuardianHttpClient();
+
+    private GuardianHttpClient() {
+    }
+
+    /**
+     * Returns the client shared by every request.
+     */
+    public static GuardianHttpClient get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Send a GET request and return its response, whose body can then be read. The response
+     * must be closed.
+     *
+     * @param url to request
+     * @param headers extra request headers, or null
+     * @param connectTimeoutMillis timeout for establishing the connection
+     * @param readTimeoutMillis timeout for every read from the connection
+     * @throws IOException if no response could be received
+     */
+    public Response get(URL url, Map<String, String> headers, int connectTimeoutMillis,
+                        int readTimeoutMillis) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setRequestMethod("GET");
+            // Responses are cached by NewsResponseCache, not by any platform-wide cache.
+            connection.setUseCaches(false);
+            // Asking for gzip explicitly turns off transparent decompression, so the bytes
+            // counted below are the bytes on the wire.
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+
+            long startNanos = System.nanoTime();
+            connection.connect();
+            long connectNanos = System.nanoTime() - startNanos;
+
+            int responseCode = connection.getResponseCode();
+            long firstByteNanos = System.nanoTime() - startNanos;
+
+            PipelineMetrics.recordValue(PipelineMetrics.Metric.CONNECT, connectNanos);
+            PipelineMetrics.recordValue(PipelineMetrics.Metric.FIRST_BYTE, firstByteNanos);
+
+            return new Response(connection, responseCode, connectNanos, firstByteNanos);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * A response received by the {@link GuardianHttpClient}.
+     */
+    public static final class Response implements Closeable {
+
+        private final HttpURLConnection mConnection;
+        private final int mResponseCode;
+        private final long mConnectNanos;
+        private final long mFirstByteNanos;
+
+        /** When the response headers arrived, for {@link PipelineMetrics} */
+        private final long mHeadersReceivedNanos = PipelineMetrics.start();
+
+        /** Counts the bytes read from the connection, before decompression */
+        private CountingInputStream mWireStream;
+
+        /** The body as handed out, decompressed if needed */
+        private InputStream mBody;
+
+        /** Whether the body was read to its end, so the connection can be reused */
+        private boolean mFullyRead;
+
+        /**
+         * Whether reading the body failed, e.g. it timed out or was cut off, so the connection
+         * is dropped without reading any more of it
+         */
+        private volatile boolean mReadFailed;
+
+        private Response(HttpURLConnection connection, int responseCode, long connectNanos,
+                         long firstByteNanos) {
+            mConnection = connection;
+            mResponseCode = responseCode;
+            mConnectNanos = connectNanos;
+            mFirstByteNanos = firstByteNanos;
+        }
+
+        public int getResponseCode() {
+            return mResponseCode;
+        }
+
+        public String getHeaderField(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /**
+         * Returns the value of the Expires header in milliseconds, or 0 if there is none.
+         */
+        public long getExpiration() {
+            return mConnection.getExpiration();
+        }
+
+        /**
+         * Returns the time it took to set up the connection, close to 0 if a pooled
+         * connection was reused.
+         */
+        public long getConnectMillis() {
+            return mConnectNanos / 1000000;
+        }
+
+        /**
+         * Returns the time from the start of the request until the response headers arrived.
+         */
+        public long getTimeToFirstByteMillis() {
+            return mFirstByteNanos / 1000000;
+        }
+
+        /**
+         * Returns the number of body bytes received on the wire so far, before decompression.
+         */
+        public long getWireByteCount() {
+            return mWireStream != null ? mWireStream.getCount() : 0;
+        }
+
+        /**
+         * Returns the response body, decompressed while it is read if the server sent it
+         * gzip-compressed.
+         */
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                // The bytes received also feed the estimate of the network's throughput
+                mWireStream = new CountingInputStream(new BandwidthMeter.MeteredInputStream(
+                        mConnection.getInputStream(), mConnection.getContentLength()));
+                InputStream body = mWireStream;
+                if ("gzip".equalsIgnoreCase(mConnection.getHeaderField("Content-Encoding"))) {
+                    body = new GZIPInputStream(body);
+                }
+                mBody = new FilterInputStream(body) {
+                    @Override
+                    public int read() throws IOException {
+                        int b;
+                        try {
+                            b = super.read();
+                        } catch (IOException e) {
+                            mReadFailed = true;
+                            throw e;
+                        }
+                        if (b == -1) {
+                            mFullyRead = true;
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int count) throws IOException {
+                        int read;
+                        try {
+                            read = super.read(buffer, offset, count);
+                        } catch (IOException e) {
+                            mReadFailed = true;
+                            throw e;
+                        }
+                        if (read == -1) {
+                            mFullyRead = true;
+                        }
+                        return read;
+                    }
+                };
+            }
+            return mBody;
+        }
+
+        /**
+         * Close the response. If its body was read to the end (or close to it, or there was
+         * none), the connection goes back to the pool; otherwise it is dropped, since whatever
+         * is left of the body would have to be read first. If reading the body failed, the
+         * connection is dropped right away: reading more of it would only wait for another
+         * read timeout before the request can be retried.
+         */
+        @Override
+        public void close() {
+            if (mBody != null && mReadFailed) {
+                mFullyRead = false;
+                mConnection.disconnect();
+                closeQuietly(mBody);
+                PipelineMetrics.record(PipelineMetrics.Metric.BODY_DOWNLOAD,
+                        mHeadersReceivedNanos);
+                return;
+            }
+
+            try {
+                if (mBody != null) {
+                    drain();
+                    mBody.close();
+                } else if (mResponseCode >= 400) {
+                    closeQuietly(mConnection.getErrorStream());
+                } else {
+                    // Nothing was read (e.g. a 304); closing the empty body releases the
+                    // connection.
+                    closeQuietly(mConnection.getInputStream());
+                    mFullyRead = true;
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing response body. ", e);
+                mFullyRead = false;
+            }
+            if (mBody != null) {
+                PipelineMetrics.record(PipelineMetrics.Metric.BODY_DOWNLOAD,
+                        mHeadersReceivedNanos);
+                if (!mFullyRead) {
+                    mConnection.disconnect();
+                }
+            }
+        }
+
+        /**
+         * Read and throw away what is left of the body, up to {@link #MAX_DRAIN_BYTES}.
+         */
+        private void drain() {
+            byte[] buffer = new byte[1024];
+            int drained = 0;
+            try {
+                while (!mFullyRead && drained < MAX_DRAIN_BYTES) {
+                    int read = mBody.read(buffer, 0, buffer.length);
+                    if (read > 0) {
+                        drained += read;
+                    }
+                }
+            } catch (IOException e) {
+                // The connection is dropped below.
+                mFullyRead = false;
+            }
+        }
+
+        private static void closeQuietly(Closeable closeable) {
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    // Nothing left to do with this stream.
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link InputStream} that counts the bytes read from it.
+     */
+    static final class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.android.ukfootballnews;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The calls of a streaming JSON reader used by {@link QueryUtils} to parse the responses of
+ * The Guardian API token by token.
+ *
+ * The app reads with {@link android.util.JsonReader}, through {@link PlatformJsonStreamReader};
+ * the tests and benchmarks, which run on a plain JVM where the platform reader can't, read
+ * with a reader of their own.
+ *
+ * A malformed or cut off document makes the reader throw an {@link IOException}, and an
+ * unexpected token an {@link IllegalStateException}.
+ */
+interface JsonStreamReader extends Closeable {
+
+    /**
+     * Creates the readers of the responses.
+     */
+    interface Factory {
+
+        /**
+         * Returns a reader of the JSON document read from the given reader.
+         */
+        JsonStreamReader create(Reader reader);
+    }
+
+    void beginObject() throws IOException;
+
+    void endObject() throws IOException;
+
+    void beginArray() throws IOException;
+
+    void endArray() throws IOException;
+
+    /**
+     * Returns true if the current object or array has another element.
+     */
+    boolean hasNext() throws IOException;
+
+    /**
+     * Returns true if the next value is a string.
+     */
+    boolean isNextString() throws IOException;
+
+    /**
+     * Returns true if the next value is an object.
+     */
+    boolean isNextObject() throws IOException;
+
+    String nextName() throws IOException;
+
+    String nextString() throws IOException;
+
+    /**
+     * Skips the next value, with everything it holds.
+     */
+    void skipValue() throws IOException;
+}
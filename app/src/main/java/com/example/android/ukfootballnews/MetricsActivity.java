@@ -0,0 +1,81 @@
+package com.example.android.ukfootballnews;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.TextView;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+/**
+ * Debug screen showing the percentiles collected by {@link PipelineMetrics}, with a switch to
+ * turn collection on or off.
+ *
+ * The same numbers are available as JSON with
+ * {@code adb shell dumpsys activity com.example.android.ukfootballnews}, while this screen or
+ * the article list is open.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    /** Shows the metrics table */
+    private TextView mMetricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        mMetricsTextView = (TextView) findViewById(R.id.metrics_text_view);
+
+        CheckBox enabledCheckBox = (CheckBox) findViewById(R.id.metrics_enabled_check_box);
+        enabledCheckBox.setChecked(PipelineMetrics.isEnabled());
+        enabledCheckBox.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override
+            public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                PipelineMetrics.setEnabled(isChecked);
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_metrics, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_refresh_metrics:
+                showMetrics();
+                return true;
+            case R.id.action_reset_metrics:
+                PipelineMetrics.reset();
+                showMetrics();
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println(PipelineMetrics.dumpJson());
+    }
+
+    private void showMetrics() {
+        mMetricsTextView.setText(PipelineMetrics.dumpText());
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.android.ukfootballnews;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches several Guardian queries at the same time, each on a thread of its own, and merges
+ * their articles into a single list, newest first, without duplicates.
+ */
+public final class MultiSectionFetcher {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = MultiSectionFetcher.class.getSimpleName();
+
+    /**
+     * Threads the requests run on. A thread is started for every request that finds none
+     * idle, so no query of a fetch waits for another one, and a first page never waits behind
+     * the requests of the next page; idle threads are reused, then stop after a minute. The
+     * app loads a first page and a next page at most at once, so this stays at about one or
+     * two threads per feed.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "fetch-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /** Orders articles newest first, like the merged list */
+    static final Comparator<NewsArticle> NEWEST_FIRST = new Comparator<NewsArticle>() {
+        @Override
+        public int compare(NewsArticle a, NewsArticle b) {
+            long aDate = a.getPublicationDate();
+            long bDate = b.getPublicationDate();
+            return aDate > bDate ? -1 : (aDate == bDate ? 0 : 1);
+        }
+    };
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link MultiSectionFetcher} object. This class only holds static methods.
+     */
+    private MultiSectionFetcher() {
+    }
+
+    /**
+     * Fetch every URL concurrently and merge the results. Must not be called on the main
+     * thread; it returns once every request finished, so it takes about as long as the
+     * slowest one.
+     *
+     * @param urls of the queries to fetch
+     * @return a {@link MergedResult} holding the merged articles. It is successful if at least
+     *         one query was; otherwise it holds the response code and error of the first query.
+     */
+    public static MergedResult fetch(List<String> urls) {
+        return fetch(urls, null);
+    }
+
+    /**
+     * Same as {@link #fetch(List)}, also handing the articles of every query to the given
+     * listener as they are parsed, see
+     * {@link QueryUtils#fetchNewsData(String, QueryUtils.OnArticlesParsedListener)}.
+     *
+     * @param listener to receive the batches, called concurrently by the queries; or null
+     */
+    public static MergedResult fetch(List<String> urls,
+                                     final QueryUtils.OnArticlesParsedListener listener) {
+        long startNanos = System.nanoTime();
+
+        List<Callable<FetchResult>> requests = new ArrayList<>(urls.size());
+        for (final String url : urls) {
+            requests.add(new Callable<FetchResult>() {
+                @Override
+                public FetchResult call() {
+                    return QueryUtils.fetchNewsData(url, listener);
+                }
+            });
+        }
+
+        List<FetchResult> results = new ArrayList<>(urls.size());
+        try {
+            for (Future<FetchResult> future : EXECUTOR.invokeAll(requests)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // Kept as a failed result, so the results stay in the order of the URLs
+                    Log.e(LOG_TAG, "Problem fetching a section", e.getCause());
+                    results.add(new FetchResult(null, FetchResult.NO_RESPONSE,
+                            FetchResult.Source.NETWORK, elapsedMillis(startNanos), 0, e));
+                }
+            }
+        } catch (InterruptedException e) {
+            // The loader was cancelled; invokeAll already cancelled the remaining requests.
+            Thread.currentThread().interrupt();
+            return new MergedResult(null, FetchResult.NO_RESPONSE, FetchResult.Source.NETWORK,
+                    elapsedMillis(startNanos), 0, 0, 0, e,
+                    Collections.<FetchResult>emptyList());
+        }
+
+        return merge(results, elapsedMillis(startNanos));
+    }
+
+    /**
+     * Merge the articles of the successful results, newest first, keeping only the first
+     * article with each web URL.
+     */
+    static MergedResult merge(List<FetchResult> results, long durationMillis) {
+        List<NewsArticle> articles = new ArrayList<>();
+        Set<String> urls = new HashSet<>();
+        FetchResult firstFailure = null;
+        FetchResult.Source source = FetchResult.Source.CACHE;
+        boolean anySuccessful = false;
+        long byteCount = 0;
+        long wireByteCount = 0;
+        long connectMillis = 0;
+
+        for (FetchResult result : results) {
+            byteCount += result.getByteCount();
+            wireByteCount += result.getWireByteCount();
+            connectMillis += result.getConnectMillis();
+            if (!result.isSuccessful()) {
+                if (firstFailure == null) {
+                    firstFailure = result;
+                }
+                continue;
+            }
+
+            anySuccessful = true;
+            // One feed out of date makes the whole list out of date
+            if (result.getSource() == FetchResult.Source.STALE_CACHE
+                    || source == FetchResult.Source.STALE_CACHE) {
+                source = FetchResult.Source.STALE_CACHE;
+            } else if (result.getSource() == FetchResult.Source.NETWORK) {
+                source = FetchResult.Source.NETWORK;
+            } else if (result.getSource() == FetchResult.Source.REVALIDATED_CACHE
+                    && source == FetchResult.Source.CACHE) {
+                source = FetchResult.Source.REVALIDATED_CACHE;
+            }
+            for (NewsArticle article : result.getArticles()) {
+                if (urls.add(article.getInfoUrl())) {
+                    articles.add(article);
+                }
+            }
+        }
+
+        if (!anySuccessful) {
+            if (firstFailure == null) {
+                return new MergedResult(null, FetchResult.NO_RESPONSE,
+                        FetchResult.Source.NETWORK, durationMillis, byteCount, wireByteCount,
+                        connectMillis, null, results);
+            }
+            return new MergedResult(null, firstFailure.getResponseCode(),
+                    firstFailure.getSource(), durationMillis, byteCount, wireByteCount,
+                    connectMillis, firstFailure.getError(), results);
+        }
+
+        // Stable sort, so articles published at the same time keep their response order
+        Collections.sort(articles, NEWEST_FIRST);
+        return new MergedResult(articles, 200, source, durationMillis, byteCount, wireByteCount,
+                connectMillis, null, results);
+    }
+
+    /**
+     * The merged articles of several queries, which also keeps the result of every query, e.g.
+     * for a {@link FeedPager} to page through each feed on its own.
+     */
+    public static final class MergedResult extends FetchResult {
+
+        /** Result of every query, in the order of the URLs fetched */
+        private final List<FetchResult> mQueryResults;
+
+        MergedResult(List<NewsArticle> articles, int responseCode, Source source,
+                     long durationMillis, long byteCount, long wireByteCount, long connectMillis,
+                     Exception error, List<FetchResult> queryResults) {
+            super(articles, responseCode, source, durationMillis, byteCount, wireByteCount,
+                    connectMillis, error);
+            mQueryResults = Collections.unmodifiableList(new ArrayList<>(queryResults));
+        }
+
+        /**
+         * Returns the result of every query, in the order of the URLs fetched.
+         */
+        public List<FetchResult> getQueryResults() {
+            return mQueryResults;
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds elapsed since the given {@link System#nanoTime()}.
+     */
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+}
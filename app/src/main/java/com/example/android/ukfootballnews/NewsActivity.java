@@ -1,38 +1,87 @@
 package com.example.android.ukfootballnews;
 
 import android.app.LoaderManager;
-import android.content.Context;
 import android.content.Intent;
 import android.content.Loader;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.net.Uri;
 import android.os.Bundle;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import com.example.android.ukfootballnews.sync.NewsSync;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class NewsActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<List<NewsArticle>> {
+        LoaderManager.LoaderCallbacks<FetchResult> {
 
     public static final String LOG_TAG = NewsActivity.class.getName();
 
-    /** Url for news data from The Guardian data set. This url will make a query for the keyword
-     * "football", limited to the section "football", and present the data from newest to oldest.
+    /**
+     * Constant value for the news article loader ID. This loader fetches the first page.
      */
-    private static final String THE_GUARDIAN_REQUEST_URL = "https://content.guardianapis.com/search?q=football&format=json&section=football&show-fields=thumbnail&order-by=newest&api-key=test";
+    private static final int ARTICLE_LOADER_ID = 1;
 
     /**
-     * Constant value for the news article loader ID.
+     * Constant value for the loader ID used to fetch the pages after the first one.
      */
-    private static final int ARTICLE_LOADER_ID = 1;
+    private static final int NEXT_PAGE_LOADER_ID = 2;
+
+    /**
+     * Constant value for the loader ID used to read the articles kept on the device.
+     */
+    private static final int STORED_ARTICLES_LOADER_ID = 3;
+
+    /**
+     * Extra of the launch intent replacing the search URL of the feeds in debug builds, e.g.
+     * to run the app against a local stand-in of The Guardian API:
+     * {@code adb shell am start -n com.example.android.ukfootballnews/.NewsActivity
+     * --es search_url "http://10.0.2.2:8080/search?format=json&show-fields=thumbnail"}
+     */
+    private static final String EXTRA_SEARCH_URL = "search_url";
+
+    /** Key of the loader argument holding the page to fetch of each feed, 0 for none. */
+    private static final String ARG_PAGES = "pages";
+
+    /**
+     * How long the first page is shown again, e.g. after a rotation or when returning to the
+     * activity, before it is refreshed in the background.
+     */
+    private static final long FIRST_PAGE_FRESHNESS_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Number of articles at the top of a new first page whose bodies are downloaded ahead of
+     * time, about a screenful.
+     */
+    private static final int BODY_PREFETCH_ROWS = 8;
+
+    /** Key of the saved state holding the number of articles per page of each feed. */
+    private static final String STATE_PAGE_SIZE = "page_size";
+
+    /** How long frame times are measured after the list is refreshed. */
+    private static final long REFRESH_FRAME_TRACKING_MILLIS = 1000;
+
+    /** Name of the directory, inside the app's cache dir, that holds cached API responses. */
+    private static final String RESPONSE_CACHE_DIR = "news-responses";
+
+    /** Maximum number of bytes of API responses kept in the response cache. */
+    private static final long RESPONSE_CACHE_SIZE = 2 * 1024 * 1024;
 
     /** Loading progress indicator */
     private ProgressBar mProgressIndicator;
@@ -43,121 +92,782 @@ public class NewsActivity extends AppCompatActivity implements
     /** TextView that is displayed when the list is empty */
     private TextView mEmptyTextView;
 
+    /** Measures frame times while the list is scrolling */
+    private final FrameTimeTracker mScrollFrameTracker = new FrameTimeTracker("scroll");
+
+    /** Measures frame times while the list is being refreshed */
+    private final FrameTimeTracker mRefreshFrameTracker = new FrameTimeTracker("refresh");
+
+    /**
+     * Picks the page size and how far ahead pages and thumbnails are fetched, depending on
+     * the network.
+     */
+    private FetchPolicy mFetchPolicy;
+
+    /** Whether there is a network connection. */
+    private boolean mIsConnected;
+
+    /**
+     * Number of articles requested per page of each feed. Picked when the first page is
+     * requested and kept for the following pages, so pages don't overlap or leave gaps.
+     */
+    private int mPageSize;
+
+    /** Whether the adapter holds articles received from the network (not just stored ones). */
+    private boolean mHasNetworkData;
+
+    /**
+     * Whether the feeds show the articles of a first page still downloading, which its
+     * complete result replaces.
+     */
+    private boolean mIsShowingPartialPage;
+
+    /**
+     * Pages through every feed on its own and merges their articles in date order. Null until
+     * a first page was loaded from the network.
+     */
+    private FeedPager mPager;
+
+    /** Whether a page after the first one is currently being loaded. */
+    private boolean mIsLoadingNextPage;
+
+    /**
+     * Result of the first page {@link #mPager} started from, so it isn't accepted again when
+     * its loader delivers it to the activity recreated after a configuration change.
+     */
+    private FetchResult mFirstPageResult;
+
+    /** Whether the feeds are kept for the activity recreated after a configuration change */
+    private boolean mIsFeedRetained;
+
+    /** When the activity was created, for {@link PipelineMetrics} */
+    private long mCreatedNanos;
+
+    /** Downloads the bodies of the articles shown, so they open in the reader */
+    private ArticleBodyPrefetcher mBodyPrefetcher;
+
+    /** Searches the stored articles as the user types */
+    private ArticleSearcher mSearcher;
+
+    /**
+     * Articles of the feeds, shown whenever no search is active. Only those around the rows
+     * on screen are kept in memory, however many pages were loaded.
+     */
+    private WindowedArticleList mFeedArticles;
+
+    /** Whether search results are shown instead of the articles of the feeds */
+    private boolean mIsSearching;
+
+    /** Text of the empty view before the search started, restored when it ends */
+    private CharSequence mEmptyTextBeforeSearch;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreatedNanos = PipelineMetrics.start();
 
         Log.i(LOG_TAG, "Activity's onCreate(): Activity is being created");
 
         setContentView(R.layout.activity_news);
 
-        // Find a reference to the {@link ListView} in the layout
-        ListView articleListView = (ListView) findViewById(R.id.list);
+        if (BuildConfig.DEBUG && getIntent().hasExtra(EXTRA_SEARCH_URL)) {
+            NewsFeed.setSearchUrl(getIntent().getStringExtra(EXTRA_SEARCH_URL));
+        }
+
+        // Make the requests made by QueryUtils go through the response cache
+        NewsResponseCache.install(new File(getCacheDir(), RESPONSE_CACHE_DIR), RESPONSE_CACHE_SIZE);
+
+        // Find a reference to the {@link RecyclerView} in the layout
+        RecyclerView articleRecyclerView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        articleRecyclerView.setLayoutManager(layoutManager);
+        articleRecyclerView.addItemDecoration(
+                new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
 
-        //Find and set empty view for the list view
+        // Find the empty view, shown while the list is empty
         mEmptyTextView = (TextView) findViewById(R.id.empty_list_text_view);
-        articleListView.setEmptyView(mEmptyTextView);
 
-        // Create a new {@link ArrayAdapter} of earthquakes
-        mAdapter = new NewsArticleAdapter(this, new ArrayList<NewsArticle>());
+        // After a configuration change, carry on with the feeds as they were: the pages
+        // loaded, the articles shown and where each feed is at
+        RetainedFeeds retained = (RetainedFeeds) getLastCustomNonConfigurationInstance();
+        if (retained != null) {
+            mFeedArticles = retained.mFeedArticles;
+            mPager = retained.mPager;
+            mFirstPageResult = retained.mFirstPageResult;
+            mHasNetworkData = retained.mHasNetworkData;
+            mIsLoadingNextPage = retained.mIsLoadingNextPage;
+        } else {
+            mFeedArticles = new WindowedArticleList(
+                    new File(getCacheDir(), WindowedArticleList.DIRECTORY_NAME));
+        }
 
-        // Set the adapter on the {@link ListView}
-        // so the list can be populated in the user interface
-        articleListView.setAdapter(mAdapter);
+        mBodyPrefetcher = ArticleBodyPrefetcher.get(this);
+
+        // Create a new {@link NewsArticleAdapter}. Clicking an article opens it in the reader
+        // if its body was downloaded ahead of time, or sends an intent to a web browser to
+        // open a website with the complete news article otherwise.
+        mAdapter = new NewsArticleAdapter(this, mFeedArticles,
+                new NewsArticleAdapter.OnArticleClickListener() {
+                    @Override
+                    public void onArticleClick(NewsArticle currentArticle) {
+                        if (mBodyPrefetcher.isAvailable(currentArticle.getInfoUrl())) {
+                            startActivity(ReaderActivity.newIntent(NewsActivity.this,
+                                    currentArticle));
+                        } else {
+                            ReaderActivity.openInBrowser(NewsActivity.this,
+                                    currentArticle.getInfoUrl());
+                        }
+                    }
+                });
+
+        // Show the empty view whenever the adapter has no articles
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
 
-        // Set an item click listener on the ListView, which sends an intent to a web browser
-        // to open a website with the complete news article.
-        articleListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                // Find the current earthquake that was clicked on
-                NewsArticle currentArticle = mAdapter.getItem(position);
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
 
-                // Convert the String URL into a URI object (to pass into the Intent constructor)
-                Uri articleUri = Uri.parse(currentArticle.getInfoUrl());
+        // Set the adapter on the {@link RecyclerView}
+        // so the list can be populated in the user interface
+        articleRecyclerView.setAdapter(mAdapter);
 
-                // Create a new intent to view the article URI
-                Intent websiteIntent = new Intent(Intent.ACTION_VIEW, articleUri);
+        if (mCreatedNanos != 0) {
+            recordFirstFrame(articleRecyclerView);
+        }
 
-                //Check if activity can be started, if so start it
-                if (websiteIntent.resolveActivity(getPackageManager()) != null) {
-                    startActivity(websiteIntent);
+        mSearcher = new ArticleSearcher(this, new ArticleSearcher.OnResultsListener() {
+            @Override
+            public void onSearchResults(String query, List<NewsArticle> articles) {
+                if (mIsSearching) {
+                    mEmptyTextView.setText(R.string.no_search_results);
+                    mAdapter.showList(articles);
+                }
+            }
+        });
+
+        // Load the next page when the user scrolls near the end of the list, and measure
+        // frame times while the list is scrolling
+        articleRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    mScrollFrameTracker.stop();
+                    ThumbnailLoader.get(NewsActivity.this).logStats();
+                    TitleLayoutCache.get(NewsActivity.this).logStats();
+                    prefetchArticleBodies(layoutManager.findFirstVisibleItemPosition(),
+                            layoutManager.findLastVisibleItemPosition());
+                } else {
+                    mScrollFrameTracker.start();
+                }
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = layoutManager.getItemCount();
+                int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+                if (!mIsSearching && totalItemCount > 0 && lastVisiblePosition
+                        >= totalItemCount - 1 - mFetchPolicy.getNextPageThreshold()) {
+                    loadNextPage();
                 }
+                prefetchThumbnails(lastVisiblePosition);
             }
         });
 
         mProgressIndicator = (ProgressBar) findViewById(R.id.progress_indicator);
 
-        // Get a reference to the ConnectivityManager to check state of network connectivity
-        ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        // Get connection status, and how much to download on this network
+        mFetchPolicy = FetchPolicy.get(this);
+        mIsConnected = mFetchPolicy.isConnected();
+        mPageSize = savedInstanceState != null
+                ? savedInstanceState.getInt(STATE_PAGE_SIZE, mFetchPolicy.getPageSize())
+                : mFetchPolicy.getPageSize();
+        if (retained != null) {
+            mPageSize = retained.mPageSize;
+        }
 
-        // Get details on the currently active default data network
-        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+        // Keep the stored articles up to date in the background from now on
+        NewsSync.schedule(this);
 
-        //Get connection status
-        boolean isConnected = activeNetwork != null &&
-                activeNetwork.isConnectedOrConnecting();
+        // Show the articles kept on the device right away, whether or not there is a connection.
+        getLoaderManager().initLoader(STORED_ARTICLES_LOADER_ID, null, mStoredArticlesCallbacks);
 
-        //If there is a network connection, fetch the data
-        if (isConnected) {
+        //If there is a network connection, fetch the data. The first page is fetched even
+        // right after a sync: the stored articles don't know which page of which feed they
+        // came from, so the pages after them are only known from it. While its cached response
+        // is fresh it is read without a request, and only the rows that changed are updated.
+        if (mIsConnected) {
 
             // Get a proper loader manager and initialize the loader. Pass in the int ID constant defined above and pass in null for
             // the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
             // because this activity implements the LoaderCallbacks interface).
-            getLoaderManager().initLoader(ARTICLE_LOADER_ID, null, this);
+            initFirstPageLoader(false);
             Log.i(LOG_TAG, "initLoader(): Loader 0 was initialized");
+        }
+
+        // Receive the next pages still loading when the activity was recreated
+        if (mIsLoadingNextPage) {
+            if (getLoaderManager().getLoader(NEXT_PAGE_LOADER_ID) != null) {
+                getLoaderManager().initLoader(NEXT_PAGE_LOADER_ID, null, this);
+            } else {
+                mIsLoadingNextPage = false;
+            }
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_news, menu);
+
+        // The metrics screen is a debugging aid
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
+
+        // Search the stored articles while the user types, and go back to the articles of
+        // the feeds when the search is closed
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                onSearchQueryChanged(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                onSearchQueryChanged(query);
+                return true;
+            }
+        });
+        MenuItemCompat.setOnActionExpandListener(searchItem,
+                new MenuItemCompat.OnActionExpandListener() {
+                    @Override
+                    public boolean onMenuItemActionExpand(MenuItem item) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onMenuItemActionCollapse(MenuItem item) {
+                        endSearch();
+                        return true;
+                    }
+                });
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_metrics) {
+            startActivity(new Intent(this, MetricsActivity.class));
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mFetchPolicy.addOnTierChangedListener(mOnTierChangedListener);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mFetchPolicy.removeOnTierChangedListener(mOnTierChangedListener);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_PAGE_SIZE, mPageSize);
+    }
+
+    /**
+     * Keep the feeds for the activity recreated after a configuration change, unless the
+     * adapter is still writing to them: its changes would be lost with it, so the new
+     * activity starts over from the first page then.
+     */
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        mIsFeedRetained = mAdapter.isIdle();
+        if (!mIsFeedRetained) {
+            return null;
+        }
+        return new RetainedFeeds(mFeedArticles, mPager, mFirstPageResult, mPageSize,
+                mHasNetworkData, mIsLoadingNextPage);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSearcher.cancel();
+        mAdapter.close();
+        if (!mIsFeedRetained) {
+            mFeedArticles.close();
+        }
+
+        // The loader is kept across a rotation, but this activity is not
+        Loader<FetchResult> loader = getLoaderManager().getLoader(ARTICLE_LOADER_ID);
+        if (loader != null) {
+            ((NewsArticleLoader) loader).setOnPartialResultListener(null);
+        }
+    }
+
+    /**
+     * Start the loader fetching the first page, or reconnect to it after a rotation, and
+     * receive its articles while they are still downloading.
+     *
+     * @param restart true to fetch the first page again even if it was already loaded
+     */
+    private void initFirstPageLoader(boolean restart) {
+        Loader<FetchResult> loader = restart
+                ? getLoaderManager().restartLoader(ARTICLE_LOADER_ID, null, this)
+                : getLoaderManager().initLoader(ARTICLE_LOADER_ID, null, this);
+        ((NewsArticleLoader) loader).setOnPartialResultListener(mPartialResultListener);
+    }
+
+    /**
+     * Show the articles of the first page as they arrive, while there is nothing else to
+     * show: the stored articles, or a previous network page, are kept until the complete
+     * page replaces them.
+     */
+    private final NewsArticleLoader.OnPartialResultListener mPartialResultListener =
+            new NewsArticleLoader.OnPartialResultListener() {
+                @Override
+                public void onPartialResult(List<NewsArticle> articles) {
+                    if (mHasNetworkData || (!mFeedArticles.isEmpty() && !mIsShowingPartialPage)) {
+                        return;
+                    }
+                    Log.i(LOG_TAG, "onPartialResult(): showing " + articles.size()
+                            + " articles before the first page is complete.");
+                    mIsShowingPartialPage = true;
+                    mProgressIndicator.setVisibility(View.GONE);
+                    showArticles(articles);
+                }
+            };
+
+    /**
+     * Fetch the first page as soon as the connection comes back, if it was not received yet.
+     * The page size and prefetching follow the new network on their own.
+     */
+    private final FetchPolicy.OnTierChangedListener mOnTierChangedListener =
+            new FetchPolicy.OnTierChangedListener() {
+                @Override
+                public void onTierChanged(FetchPolicy.Tier tier) {
+                    Log.i(LOG_TAG, "onTierChanged(): " + tier);
+                    boolean wasConnected = mIsConnected;
+                    mIsConnected = tier != FetchPolicy.Tier.OFFLINE;
+                    if (!wasConnected && mIsConnected && !mHasNetworkData) {
+                        // Replace the "no internet connection" text with the progress
+                        if (mAdapter.isEmpty() && !mIsSearching) {
+                            mProgressIndicator.setVisibility(View.VISIBLE);
+                            mEmptyTextView.setText(null);
+                        }
+                        initFirstPageLoader(true);
+                    }
+                }
+            };
+
+    /**
+     * Show the stored articles matching the given query instead of the articles of the
+     * feeds, or the articles of the feeds again if the query is empty.
+     */
+    private void onSearchQueryChanged(String query) {
+        if (query.trim().isEmpty()) {
+            endSearch();
+            return;
+        }
+        if (!mIsSearching) {
+            mIsSearching = true;
+            mEmptyTextBeforeSearch = mEmptyTextView.getText();
+        }
+        mSearcher.search(query);
+    }
+
+    /**
+     * Show the articles of the feeds again, unless no search is active.
+     */
+    private void endSearch() {
+        if (!mIsSearching) {
+            return;
+        }
+        mSearcher.cancel();
+        mIsSearching = false;
+        mEmptyTextView.setText(mEmptyTextBeforeSearch);
+        mAdapter.showFeed();
+    }
+
+    /**
+     * Set the text of the empty view, or the text it gets back once the search ends.
+     */
+    private void setEmptyText(int resId) {
+        if (mIsSearching) {
+            mEmptyTextBeforeSearch = getText(resId);
         } else {
-            // Otherwise, display error
-            // First, hide loading indicator so error message will be visible
-            mProgressIndicator.setVisibility(View.GONE);
+            mEmptyTextView.setText(resId);
+        }
+    }
 
-            // Update empty state with no connection error message
-            mEmptyTextView.setText(R.string.no_internet);
+    /**
+     * Print the {@link PipelineMetrics} as JSON after the usual state, for
+     * {@code adb shell dumpsys activity com.example.android.ukfootballnews}.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println(PipelineMetrics.dumpJson());
+    }
+
+    /**
+     * Record the time from the creation of the activity until the list first draws articles.
+     */
+    private void recordFirstFrame(final RecyclerView recyclerView) {
+        recyclerView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        if (recyclerView.getChildCount() > 0) {
+                            PipelineMetrics.record(PipelineMetrics.Metric.FIRST_FRAME,
+                                    mCreatedNanos);
+                            recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        }
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Start loading the page after the last one loaded, unless a page is already being loaded
+     * or there are no more pages.
+     */
+    private void loadNextPage() {
+        if (mIsLoadingNextPage || mPager == null || !mPager.hasMorePages()) {
+            return;
         }
+        mIsLoadingNextPage = true;
+
+        int[] pages = mPager.startLoad();
+        Bundle args = new Bundle();
+        args.putIntArray(ARG_PAGES, pages);
+        getLoaderManager().restartLoader(NEXT_PAGE_LOADER_ID, args, this);
+        Log.i(LOG_TAG, "loadNextPage(): loading pages " + Arrays.toString(pages));
     }
 
+    /**
+     * Returns the request URLs of the given page of every followed feed, skipping the feeds
+     * whose page is 0.
+     */
+    private List<String> buildPageUrls(int[] pages) {
+        List<String> urls = new ArrayList<>(NewsFeed.DEFAULT_FEEDS.size());
+        for (int feed = 0; feed < NewsFeed.DEFAULT_FEEDS.size(); feed++) {
+            if (pages[feed] > 0) {
+                urls.add(NewsFeed.DEFAULT_FEEDS.get(feed).buildUrl(NewsFeed.getSearchUrl(),
+                        pages[feed], mPageSize));
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Returns the result of every feed fetched by a load, in the order of the feeds.
+     */
+    private static List<FetchResult> getFeedResults(FetchResult result) {
+        if (result instanceof MultiSectionFetcher.MergedResult) {
+            return ((MultiSectionFetcher.MergedResult) result).getQueryResults();
+        }
+        return Collections.singletonList(result);
+    }
+
+    /**
+     * Prefetch the thumbnails of the rows just past the last visible one, as many as the
+     * network allows.
+     */
+    private void prefetchThumbnails(int lastVisiblePosition) {
+        if (lastVisiblePosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int prefetchRows = mFetchPolicy.getThumbnailPrefetchRows();
+        int end = Math.min(mAdapter.getItemCount(), lastVisiblePosition + 1 + prefetchRows);
+        List<String> thumbnailUrls = new ArrayList<>(prefetchRows);
+        for (int position = lastVisiblePosition + 1; position < end; position++) {
+            // Rows whose article is not in memory get their thumbnail once they are bound
+            NewsArticle article = mAdapter.getItem(position);
+            if (article != null) {
+                thumbnailUrls.add(article.getThumbnailUrl());
+            }
+        }
+        ThumbnailLoader.get(this).prefetch(thumbnailUrls);
+    }
+
+    /**
+     * Download ahead of time the bodies of the articles in the given rows of the feeds, if
+     * the network allows it.
+     */
+    private void prefetchArticleBodies(int firstPosition, int lastPosition) {
+        if (mIsSearching || firstPosition == RecyclerView.NO_POSITION) {
+            return;
+        }
+        // The rows, rather than the list of the feeds, which is written in the background
+        int end = Math.min(mAdapter.getItemCount(), lastPosition + 1);
+        List<NewsArticle> articles = new ArrayList<>(Math.max(0, end - firstPosition));
+        for (int position = firstPosition; position < end; position++) {
+            // Articles not in memory are skipped rather than read on the main thread
+            NewsArticle article = mAdapter.getItem(position);
+            if (article != null) {
+                articles.add(article);
+            }
+        }
+        mBodyPrefetcher.prefetch(articles);
+    }
+
+    /**
+     * Show or hide the empty view depending on whether the adapter has articles.
+     */
+    private void updateEmptyView() {
+        mEmptyTextView.setVisibility(mAdapter.isEmpty() ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Replace the articles of the feeds, measuring frame times until the changed rows are laid
+     * out if they are shown.
+     */
+    private void showArticles(List<NewsArticle> articles) {
+        mAdapter.submitFeed(articles);
+        if (mIsSearching) {
+            return;
+        }
+
+        mRefreshFrameTracker.start();
+        mEmptyTextView.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                mRefreshFrameTracker.stop();
+            }
+        }, REFRESH_FRAME_TRACKING_MILLIS);
+    }
+
+    /**
+     * Callbacks of the loader reading the articles kept on the device.
+     */
+    private final LoaderManager.LoaderCallbacks<List<NewsArticle>> mStoredArticlesCallbacks =
+            new LoaderManager.LoaderCallbacks<List<NewsArticle>>() {
+                @Override
+                public Loader<List<NewsArticle>> onCreateLoader(int id, Bundle args) {
+                    return new StoredArticleLoader(NewsActivity.this);
+                }
+
+                @Override
+                public void onLoadFinished(Loader<List<NewsArticle>> loader,
+                                           List<NewsArticle> articles) {
+                    onStoredArticlesLoadFinished(articles);
+                }
+
+                @Override
+                public void onLoaderReset(Loader<List<NewsArticle>> loader) {
+                }
+            };
+
     @Override
-    public Loader<List<NewsArticle>> onCreateLoader(int id, Bundle args) {
+    public Loader<FetchResult> onCreateLoader(int id, Bundle args) {
         Log.i(LOG_TAG, "onCreateLoader(): New Loader object is about to be created.");
 
-        // Create a new loader for the given URL
-        return new NewsArticleLoader(this, THE_GUARDIAN_REQUEST_URL);
+        int[] pages = args != null ? args.getIntArray(ARG_PAGES) : null;
+
+        // A new first page starts a new series of pages, sized for the current network
+        if (pages == null) {
+            mPageSize = mFetchPolicy.getPageSize();
+            pages = new int[NewsFeed.DEFAULT_FEEDS.size()];
+            Arrays.fill(pages, 1);
+        }
+
+        // Create a new loader for the given URL. Only the first page is refreshed once stale;
+        // a later page is appended once and would be appended again by a refresh.
+        return new NewsArticleLoader(this, buildPageUrls(pages), id == ARTICLE_LOADER_ID
+                ? FIRST_PAGE_FRESHNESS_MILLIS : NewsArticleLoader.NEVER_STALE);
     }
 
     @Override
-    public void onLoadFinished(Loader<List<NewsArticle>> loader, List<NewsArticle> articles) {
+    public void onLoadFinished(Loader<FetchResult> loader, FetchResult result) {
+        if (loader.getId() == NEXT_PAGE_LOADER_ID) {
+            onNextPageLoadFinished(result);
+            return;
+        }
+
+        List<NewsArticle> articles = result.getArticles();
+
+        // The complete page replaces the articles shown while it was downloading
+        mIsShowingPartialPage = false;
+
         // Hide loading indicator because the data has been loaded
         mProgressIndicator.setVisibility(View.GONE);
 
-        // Clear the adapter of previous news data
-        mAdapter.clear();
+        // The first page the feeds started from, delivered again to the activity recreated
+        // after a configuration change along with them
+        if (result == mFirstPageResult) {
+            Log.i(LOG_TAG, "onLoadFinished(): First page already shown.");
+            return;
+        }
 
-        // Check if there was an error response code. If so, change text on empty text view to show this
-        // and exit early.
-        if (QueryUtils.getHttpRequestResponseCode() != 200) {
-            mEmptyTextView.setText(R.string.bad_response_code);
-            Log.i(LOG_TAG, "Response code: " + QueryUtils.getHttpRequestResponseCode());
+        // Check if there was an error response code. If so, keep showing the stored articles,
+        // if any, or change text on empty text view to show this, and exit early.
+        if (result.getResponseCode() != 200) {
+            Log.i(LOG_TAG, "Response code: " + result.getResponseCode());
             Log.e(LOG_TAG, "onLoadFinished(): Bad response code, exiting early.");
+            if (mFeedArticles.isEmpty()) {
+                setEmptyText(R.string.bad_response_code);
+            }
+            return;
+        }
+        mFirstPageResult = result;
+
+        // The first page fetched again once stale, while the user is paging through the
+        // feeds: keep the pages loaded after it
+        if (mPager != null && mPager.hasNextPages()) {
+            onFirstPageRefreshed(result);
             return;
         }
 
-        // If there is a valid list of {@link NewsArticle}s, then add them to the adapter's
-        // data set. This will trigger the ListView to update.
+        // Forget the pages of previous news data and start paging from this first page
+        mPager = new FeedPager(NewsFeed.DEFAULT_FEEDS.size(), mPageSize);
+        List<NewsArticle> merged = mPager.acceptPages(getFeedResults(result));
+        getLoaderManager().destroyLoader(NEXT_PAGE_LOADER_ID);
+        mIsLoadingNextPage = false;
+        mHasNetworkData = true;
+
+        // If there is a valid list of {@link NewsArticle}s, then replace the adapter's
+        // data set with it. Only the rows that changed are updated.
         if (articles != null && !articles.isEmpty()) {
-            mAdapter.addAll(articles);
+            // These articles are stored now, so the background sync can start from them
+            NewsSync.onNewestArticlesStored(this, articles);
+            showArticles(merged);
+            // The feeds are only replaced once the changed rows are known, so the first rows
+            // are taken from the new articles
+            if (!mIsSearching) {
+                mBodyPrefetcher.prefetch(new ArrayList<>(
+                        merged.subList(0, Math.min(BODY_PREFETCH_ROWS, merged.size()))));
+            }
             Log.i(LOG_TAG, "onLoadFinished(): Data was received and assigned to Adapter.");
         } else {
-            // Otherwise, change the text on the empty text view to "no news articles found".
-            mEmptyTextView.setText(R.string.no_news_found);
+            // Otherwise, clear the adapter and change the text on the empty text view to
+            // "no news articles found".
+            mAdapter.clearFeed();
+            setEmptyText(R.string.no_news_found);
             Log.i(LOG_TAG, "onLoadFinished(): No Data was received (Empty or null results).");
         }
     }
 
+    /**
+     * Show above the articles of the feeds those published since the first page was last
+     * fetched, keeping the pages loaded after it and the page each feed is at.
+     */
+    private void onFirstPageRefreshed(FetchResult result) {
+        List<NewsArticle> published = mPager.acceptRefreshedFirstPages(getFeedResults(result));
+        // These articles are stored now, so the background sync can start from them
+        if (result.getArticles() != null && !result.getArticles().isEmpty()) {
+            NewsSync.onNewestArticlesStored(this, result.getArticles());
+        }
+        mAdapter.prependToFeed(published);
+        if (!mIsSearching) {
+            mBodyPrefetcher.prefetch(new ArrayList<>(
+                    published.subList(0, Math.min(BODY_PREFETCH_ROWS, published.size()))));
+        }
+        Log.i(LOG_TAG, "onFirstPageRefreshed(): " + published.size()
+                + " articles published since were added at the top.");
+    }
+
+    /**
+     * Show the articles kept on the device until the first page arrives from the network.
+     */
+    private void onStoredArticlesLoadFinished(List<NewsArticle> articles) {
+        // The network data, even partial, is at least as new as the stored snapshot
+        if (mHasNetworkData || mIsShowingPartialPage) {
+            return;
+        }
+
+        if (articles != null && !articles.isEmpty()) {
+            mProgressIndicator.setVisibility(View.GONE);
+            showArticles(articles);
+            Log.i(LOG_TAG, "onStoredArticlesLoadFinished(): Showing " + articles.size()
+                    + " stored articles.");
+        } else if (!mIsConnected) {
+            // Nothing stored and nothing to fetch, so display error
+            // First, hide loading indicator so error message will be visible
+            mProgressIndicator.setVisibility(View.GONE);
+
+            // Update empty state with no connection error message
+            setEmptyText(R.string.no_internet);
+        }
+    }
+
+    /**
+     * Append the articles of the next pages that are older than every article shown. A feed
+     * whose page failed requests it again with the load started by the next scroll; the list
+     * already shown is left untouched.
+     */
+    private void onNextPageLoadFinished(FetchResult result) {
+        // A result delivered again, e.g. to the activity recreated after a rotation, was
+        // already accepted
+        if (!mIsLoadingNextPage || mPager == null) {
+            return;
+        }
+        mIsLoadingNextPage = false;
+
+        List<NewsArticle> newArticles = mPager.acceptPages(getFeedResults(result));
+        mAdapter.appendToFeed(newArticles);
+
+        // Every article received may still wait for a feed that is further behind, so nothing
+        // was appended to scroll to: ask for the next pages right away, unless some failed
+        if (newArticles.isEmpty() && mPager.hasMorePages() && !mPager.hasFailedPages()) {
+            mProgressIndicator.post(new Runnable() {
+                @Override
+                public void run() {
+                    loadNextPage();
+                }
+            });
+        }
+    }
+
     @Override
-    public void onLoaderReset(Loader<List<NewsArticle>> loader) {
+    public void onLoaderReset(Loader<FetchResult> loader) {
         // Remove references to Loader data because it won't be available anymore.
-        mAdapter.addAll(new ArrayList<NewsArticle>());
+        mAdapter.appendToFeed(new ArrayList<NewsArticle>());
 
         Log.i(LOG_TAG, "onLoaderReset(): Activity is being popped from back stack. Data won't be available anymore. Removing references from Loader data.");
     }
+
+    /**
+     * The feeds kept across a configuration change.
+     */
+    private static final class RetainedFeeds {
+
+        final WindowedArticleList mFeedArticles;
+        final FeedPager mPager;
+        final FetchResult mFirstPageResult;
+        final int mPageSize;
+        final boolean mHasNetworkData;
+        final boolean mIsLoadingNextPage;
+
+        RetainedFeeds(WindowedArticleList feedArticles, FeedPager pager,
+                      FetchResult firstPageResult, int pageSize, boolean hasNetworkData,
+                      boolean isLoadingNextPage) {
+            mFeedArticles = feedArticles;
+            mPager = pager;
+            mFirstPageResult = firstPageResult;
+            mPageSize = pageSize;
+            mHasNetworkData = hasNetworkData;
+            mIsLoadingNextPage = isLoadingNextPage;
+        }
+    }
 }
@@ -1,50 +1,111 @@
 package com.example.android.ukfootballnews;
 
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Class that represents a NewsArticle object.
+ *
+ * The text of an article is not held in Strings but in a compact record of bytes (see
+ * {@link ArticleBuffer}), shared with other articles when they were created by the same
+ * {@link ArticleBuffer}. Each field is decoded from the record on first access. The title and
+ * URLs, read every time the row of the article is bound and whenever articles are compared or
+ * deduplicated, are kept once decoded, so only the articles actually used pay for Strings.
+ * The URLs and section of articles share their interned prefixes instead of repeating them.
  */
 
 public class NewsArticle {
-    /** Title of this article */
-    private String mTitle;
+    /** Bytes holding the record of this article, possibly with the records of others */
+    private final byte[] mData;
 
-    /** Name of section of this article (All articles will belong to the Football section
-     * based on the selected query url).
-     */
-    private static final String section = "Section: Football" ;
+    /** Offset of the record of this article in {@link #mData} */
+    private final int mOffset;
+
+    /** Publication time of this article, in milliseconds since the epoch (0 if unknown) */
+    private final long mPublicationDate;
+
+    /** Title of this article once decoded, or null before */
+    private String mTitle;
 
-    /** URL that leads to complete article */
+    /** Web URL of this article once decoded, or null before */
     private String mInfoUrl;
 
-    /** URL that leads to a thumbnail for this article */
+    /** Thumbnail URL of this article once decoded, or null before */
     private String mThumbnailUrl;
 
     /**
      * Constructor for a new NewsArticle object
      * @param title Title of this article
+     * @param section Name of the section this article belongs to
      * @param url URL leading to complete article
      * @param smallThumbnailUrl URL leading to thumbnail
+     * @param publicationDate Publication time in milliseconds since the epoch, or 0
+     */
+    public NewsArticle(String title, String section,
+                       String url, String smallThumbnailUrl, long publicationDate) {
+        this(ArticleBuffer.encode(title, section, url, smallThumbnailUrl), 0, publicationDate);
+    }
+
+    /**
+     * Constructor for an article whose record was written by an {@link ArticleBuffer}.
      */
-    public NewsArticle(String title,
-                       String url, String smallThumbnailUrl) {
-        mTitle = title;
-        mInfoUrl = url;
-        mThumbnailUrl = smallThumbnailUrl;
+    NewsArticle(byte[] data, int offset, long publicationDate) {
+        mData = data;
+        mOffset = offset;
+        mPublicationDate = publicationDate;
     }
 
     public String getTitle() {
-        return mTitle;
+        // Decoding twice from two threads is harmless, the result is the same
+        String title = mTitle;
+        if (title == null) {
+            title = ArticleBuffer.readString(mData, mOffset);
+            mTitle = title;
+        }
+        return title;
+    }
+
+    public String getSection() {
+        return ArticleBuffer.readInterned(mData, getSectionOffset());
     }
 
     public String getInfoUrl() {
-        return mInfoUrl;
+        String infoUrl = mInfoUrl;
+        if (infoUrl == null) {
+            infoUrl = ArticleBuffer.readInterned(mData,
+                    ArticleBuffer.skipInterned(mData, getThumbnailUrlOffset()));
+            mInfoUrl = infoUrl;
+        }
+        return infoUrl;
     }
 
     public String getThumbnailUrl() {
-        return mThumbnailUrl;
+        String thumbnailUrl = mThumbnailUrl;
+        if (thumbnailUrl == null) {
+            thumbnailUrl = ArticleBuffer.readInterned(mData, getThumbnailUrlOffset());
+            mThumbnailUrl = thumbnailUrl;
+        }
+        return thumbnailUrl;
+    }
+
+    public long getPublicationDate() {
+        return mPublicationDate;
+    }
+
+    /**
+     * Writes the record of this article as it is held, without decoding its text. The record
+     * refers to prefixes interned in this process, so it can only be read back by this process,
+     * with {@link #NewsArticle(byte[], int, long)}.
+     */
+    void writeRecord(DataOutput out) throws IOException {
+        out.write(mData, mOffset, ArticleBuffer.skipRecord(mData, mOffset) - mOffset);
+    }
+
+    private int getSectionOffset() {
+        return ArticleBuffer.skipString(mData, mOffset);
     }
 
-    public static String getSection() {
-        return section;
+    private int getThumbnailUrlOffset() {
+        return ArticleBuffer.skipInterned(mData, getSectionOffset());
     }
 }
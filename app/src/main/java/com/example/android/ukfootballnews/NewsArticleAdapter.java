@@ -1,68 +1,662 @@
 package com.example.android.ukfootballnews;
 
 import android.content.Context;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.squareup.picasso.Picasso;
-
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 /**
- * Custom ArrayAdapter to provide NewsArticle list item views.
+ * Custom RecyclerView adapter to provide NewsArticle list item views.
+ *
+ * The adapter shows the articles of the feeds, held in the {@link WindowedArticleList} it is
+ * created with, so only those around the rows on screen are kept in memory however long the
+ * list grows. The adapter is the only one writing to that list; others may read it. A row
+ * whose article was evicted is bound empty while its chunk is read back on a background
+ * thread, and bound again once it is in memory. Another list, e.g. the results of a search,
+ * can be shown in place of the feeds for a while.
+ *
+ * The articles of the feeds are written to that list, and so to its spill file, on a
+ * background thread; the rows are only updated once the write is done, and are bound from a
+ * copy of the articles shown while the feeds are being replaced.
+ *
+ * Replacing the articles of the feeds, or the list shown, computes the difference with the
+ * rows shown on a background thread (articles are identified by their web URL) and only
+ * notifies the rows that were inserted, removed, moved or changed. The articles of the feeds
+ * are only shown once that difference is dispatched, and changes requested meanwhile wait
+ * for it, so the rows always match the list they are bound from.
+ *
+ * The titles of the rows around the one bound are laid out ahead of time on a background
+ * thread by the {@link TitleLayoutCache}, so binding a row only attaches a ready layout.
  */
 
-public class NewsArticleAdapter extends ArrayAdapter<NewsArticle> {
+public class NewsArticleAdapter extends RecyclerView.Adapter<NewsArticleAdapter.ArticleViewHolder> {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsArticleAdapter.class.getSimpleName();
+
+    /**
+     * Interface definition for a callback to be invoked when an article row is clicked.
+     */
+    public interface OnArticleClickListener {
+        void onArticleClick(NewsArticle article);
+    }
+
+    /**
+     * Background thread the list differences are computed, and the articles of the feeds
+     * written, on, shared by every adapter.
+     */
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** Background thread evicted articles are read back on, shared by every adapter. */
+    private static final Executor CHUNK_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /**
+     * Lists longer than this are replaced without computing their difference, which would
+     * read every article of both lists. Lists up to this size fit in the window of a
+     * {@link WindowedArticleList}, so they are compared from copies of their references.
+     */
+    private static final int MAX_DIFF_SIZE =
+            WindowedArticleList.CHUNK_SIZE * WindowedArticleList.DEFAULT_WINDOW_CHUNKS;
+
+    /**
+     * Number of rows on each side of the row bound whose titles are laid out ahead of time,
+     * about a fling's worth.
+     */
+    private static final int TITLE_PRECOMPUTE_ROWS = 12;
+
+    private final Context mContext;
+
+    private final OnArticleClickListener mClickListener;
+
+    private final ThumbnailLoader mThumbnailLoader;
+
+    private final TitleLayoutCache mTitleLayouts;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Articles of the feeds, the data source of the adapter */
+    private final WindowedArticleList mFeedArticles;
+
+    /** Articles currently shown: {@link #mFeedArticles}, or the list shown in their place */
+    private List<NewsArticle> mArticles;
+
+    /** Number of rows shown, the first articles of {@link #mArticles} */
+    private int mItemCount;
+
+    /**
+     * Whether the difference for a change of the rows is being computed, or the articles of
+     * the feeds written, in the background
+     */
+    private boolean mIsSubmitting;
+
+    /** Changes requested while another is computed or written, in order */
+    private final ArrayDeque<Runnable> mPendingChanges = new ArrayDeque<>();
+
+    /** First positions of the chunks of {@link #mFeedArticles} being read back */
+    private final Set<Integer> mLoadingChunks = new HashSet<>();
+
+    /** Whether the adapter was closed, guarded by {@link #mFeedArticles} */
+    private boolean mIsClosed;
+
+    /**
+     * Incremented whenever the rows are reset, so a difference computed before is dropped and
+     * chunks read back before don't update the rows.
+     */
+    private int mGeneration;
 
     /**
      * Constructs a new {@link NewsArticleAdapter}.
      *
      * @param context of the app
-     * @param articles is the list of articles, which is the data source of the adapter
+     * @param feedArticles is the list of articles of the feeds, which is the data source of
+     *                     the adapter; it is only changed through the adapter
+     * @param clickListener notified when an article row is clicked
      */
-    public NewsArticleAdapter (Context context, List articles){
-        super(context, 0, articles);
+    public NewsArticleAdapter(Context context, WindowedArticleList feedArticles,
+                              OnArticleClickListener clickListener) {
+        mContext = context;
+        mFeedArticles = feedArticles;
+        mArticles = feedArticles;
+        mItemCount = feedArticles.size();
+        mClickListener = clickListener;
+        mThumbnailLoader = ThumbnailLoader.get(context);
+        mTitleLayouts = TitleLayoutCache.get(context);
     }
 
     /**
-     * Returns a list item view that displays information about the article at the given position
-     * in the list of articles.
+     * Caches the views of a list item, so they are only looked up once per row.
      */
-    @NonNull
-    @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
+    class ArticleViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final ImageView thumbnailImageView;
+        final ArticleTitleView titleTextView;
+        final TextView sectionTextView;
 
-        // Check if there is an existing list item view (called convertView) that we can reuse,
-        // otherwise, if convertView is null, then inflate a new list item layout.
-        View listItemView = convertView;
-        if (listItemView == null) {
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.list_item, parent, false);
+        ArticleViewHolder(View itemView) {
+            super(itemView);
+            thumbnailImageView = (ImageView) itemView.findViewById(R.id.article_image);
+            titleTextView = (ArticleTitleView) itemView.findViewById(R.id.title_text_view);
+            sectionTextView = (TextView) itemView.findViewById(R.id.section_text_view);
+            itemView.setOnClickListener(this);
         }
 
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            NewsArticle article =
+                    position != RecyclerView.NO_POSITION ? getItem(position) : null;
+            if (article != null && mClickListener != null) {
+                mClickListener.onArticleClick(article);
+            }
+        }
+    }
+
+    @Override
+    public ArticleViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(mContext).inflate(
+                R.layout.list_item, parent, false);
+        return new ArticleViewHolder(listItemView);
+    }
+
+    /**
+     * Displays information about the article at the given position in the list of articles.
+     */
+    @Override
+    public void onBindViewHolder(ArticleViewHolder holder, int position) {
+        long startNanos = PipelineMetrics.start();
+
         NewsArticle currentArticle = getItem(position);
 
-        // Find image view for thumbnail
-        ImageView articleThumbnailImageView = (ImageView) listItemView.findViewById(R.id.article_image);
+        // The article was evicted from memory: show an empty row until it is read back
+        if (currentArticle == null) {
+            mThumbnailLoader.load(null, holder.thumbnailImageView);
+            holder.titleTextView.setTitle(null, null);
+            holder.sectionTextView.setText(null);
+            loadChunk(position);
+            return;
+        }
 
         // Get URL that leads to thumbnail
         String thumbnailUrl = currentArticle.getThumbnailUrl();
 
-        // Load image from internet and set it into image view
-        Picasso.with(getContext()).load(thumbnailUrl).into(articleThumbnailImageView);
+        // Load image, at the size it is shown at, and set it into image view
+        mThumbnailLoader.load(thumbnailUrl, holder.thumbnailImageView);
+
+        holder.titleTextView.setTitle(currentArticle.getTitle(),
+                mTitleLayouts.get(currentArticle));
+
+        holder.sectionTextView.setText(
+                mContext.getString(R.string.section_label, currentArticle.getSection()));
+
+        PipelineMetrics.record(PipelineMetrics.Metric.ADAPTER_BIND, startNanos);
+
+        precomputeTitles(position);
+    }
+
+    /**
+     * Lay out ahead of time the titles of the rows around the given one that are in memory,
+     * once the width of the titles is known.
+     */
+    private void precomputeTitles(int position) {
+        if (mTitleLayouts.getWidth() <= 0) {
+            return;
+        }
+        int start = Math.max(0, position - TITLE_PRECOMPUTE_ROWS);
+        int end = Math.min(mItemCount, position + 1 + TITLE_PRECOMPUTE_ROWS);
+        List<NewsArticle> articles = new ArrayList<>(end - start);
+        // The rows in the direction of a fling are not known here, so both sides are
+        // laid out; the rows already laid out are skipped
+        for (int i = position + 1; i < end; i++) {
+            NewsArticle article = getItem(i);
+            if (article != null) {
+                articles.add(article);
+            }
+        }
+        for (int i = position - 1; i >= start; i--) {
+            NewsArticle article = getItem(i);
+            if (article != null) {
+                articles.add(article);
+            }
+        }
+        mTitleLayouts.precompute(articles);
+    }
+
+    /**
+     * Stops loading the thumbnail of a row that scrolled out of view.
+     */
+    @Override
+    public void onViewRecycled(ArticleViewHolder holder) {
+        mThumbnailLoader.cancel(holder.thumbnailImageView);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mItemCount;
+    }
+
+    /**
+     * Returns the article at the given position, or null if it is not in memory at the moment.
+     */
+    public NewsArticle getItem(int position) {
+        return mArticles == mFeedArticles ? mFeedArticles.peek(position) : mArticles.get(position);
+    }
+
+    /**
+     * Read back on a background thread the chunk of articles holding the given position, and
+     * bind its rows again once it is in memory.
+     */
+    private void loadChunk(final int position) {
+        // The rows are bound from a copy while the articles of the feeds are replaced
+        if (mArticles != mFeedArticles) {
+            return;
+        }
+        final int chunkStart = WindowedArticleList.getChunkStart(position);
+        if (!mLoadingChunks.add(chunkStart)) {
+            return;
+        }
+
+        final int generation = mGeneration;
+        CHUNK_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mFeedArticles.load(position);
+                } catch (RuntimeException e) {
+                    // The list was cleared or closed in the meantime
+                    Log.e(LOG_TAG, "Problem reading back articles at " + chunkStart, e);
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mLoadingChunks.remove(chunkStart);
+                        if (mArticles == mFeedArticles && chunkStart < mItemCount) {
+                            notifyItemRangeChanged(chunkStart, Math.min(
+                                    WindowedArticleList.CHUNK_SIZE, mItemCount - chunkStart));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the changes still waiting to be shown. Must be called once the adapter is no
+     * longer used, before the list of the feeds is closed.
+     */
+    public void close() {
+        mGeneration++;
+        mIsSubmitting = false;
+        mPendingChanges.clear();
+        // Waits for a write in progress, so the list is not written to once it is closed
+        synchronized (mFeedArticles) {
+            mIsClosed = true;
+        }
+    }
+
+    /**
+     * Returns true if no change of the rows is in progress or waiting, so the list of the
+     * feeds holds every article the rows were asked to show.
+     */
+    public boolean isIdle() {
+        return !mIsSubmitting;
+    }
+
+    /**
+     * Returns true if no article is shown.
+     */
+    public boolean isEmpty() {
+        return mItemCount == 0;
+    }
+
+    /**
+     * Removes every article of the feeds.
+     */
+    public void clearFeed() {
+        change(new Runnable() {
+            @Override
+            public void run() {
+                if (mArticles == mFeedArticles) {
+                    mGeneration++;
+                    mLoadingChunks.clear();
+                    mItemCount = 0;
+                    notifyDataSetChanged();
+                }
+                changeFeed(replaceFeed(Collections.<NewsArticle>emptyList()), null);
+            }
+        });
+    }
+
+    /**
+     * Adds the given articles to the end of the feeds.
+     */
+    public void appendToFeed(List<NewsArticle> articles) {
+        if (articles.isEmpty()) {
+            return;
+        }
+
+        final List<NewsArticle> appended = new ArrayList<>(articles);
+        change(new Runnable() {
+            @Override
+            public void run() {
+                changeFeed(new Runnable() {
+                    @Override
+                    public void run() {
+                        mFeedArticles.addAll(appended);
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mArticles == mFeedArticles) {
+                            int start = mItemCount;
+                            mItemCount = mFeedArticles.size();
+                            notifyItemRangeInserted(start, mItemCount - start);
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-        TextView titleTextView = (TextView) listItemView.findViewById(R.id.title_text_view);
-        titleTextView.setText(currentArticle.getTitle());
+    /**
+     * Adds the given articles at the start of the feeds, e.g. those published since the
+     * first page was fetched. This rewrites the whole list in the background, meanwhile the
+     * rows are bound from a copy of those shown.
+     */
+    public void prependToFeed(List<NewsArticle> articles) {
+        if (articles.isEmpty()) {
+            return;
+        }
 
-        TextView sectionTextView = (TextView) listItemView.findViewById(R.id.section_text_view);
-        sectionTextView.setText(NewsArticle.getSection());
+        final List<NewsArticle> prepended = new ArrayList<>(articles);
+        change(new Runnable() {
+            @Override
+            public void run() {
+                final boolean isShown = mArticles == mFeedArticles;
+                final boolean isCopied = isShown && bindFromCopy();
+                changeFeed(new Runnable() {
+                    @Override
+                    public void run() {
+                        mFeedArticles.prependAll(prepended);
+                    }
+                }, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isShown) {
+                            return;
+                        }
+                        // The chunks being read back are at other positions now
+                        mGeneration++;
+                        mLoadingChunks.clear();
+                        int previousCount = mItemCount;
+                        mArticles = mFeedArticles;
+                        mItemCount = mFeedArticles.size();
+                        notifyItemRangeInserted(0, mItemCount - previousCount);
+                        if (!isCopied) {
+                            // The rows bound meanwhile are empty
+                            notifyItemRangeChanged(mItemCount - previousCount, previousCount);
+                        }
+                    }
+                });
+            }
+        });
+    }
 
-        return listItemView;
+    /**
+     * Replaces the articles of the feeds. If they are shown, only the rows that changed are
+     * updated; otherwise the feeds are replaced right away.
+     */
+    public void submitFeed(List<NewsArticle> articles) {
+        final List<NewsArticle> replacement = new ArrayList<>(articles);
+        change(new Runnable() {
+            @Override
+            public void run() {
+                if (mArticles == mFeedArticles) {
+                    submit(replacement, true);
+                } else {
+                    changeFeed(replaceFeed(replacement), null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Shows the given articles, e.g. the results of a search, in place of the feeds until
+     * {@link #showFeed()} is called. The list is not copied and must not change.
+     */
+    public void showList(final List<NewsArticle> articles) {
+        change(new Runnable() {
+            @Override
+            public void run() {
+                submit(articles, false);
+            }
+        });
+    }
+
+    /**
+     * Shows the articles of the feeds again, after {@link #showList(List)}.
+     */
+    public void showFeed() {
+        change(new Runnable() {
+            @Override
+            public void run() {
+                if (mArticles != mFeedArticles) {
+                    submit(mFeedArticles, false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Makes the given change now, or once the difference being computed is dispatched.
+     */
+    private void change(Runnable change) {
+        if (mIsSubmitting) {
+            mPendingChanges.add(change);
+        } else {
+            change.run();
+        }
+    }
+
+    /**
+     * Makes the given write to the list of the feeds on a background thread, then updates the
+     * rows on the main thread once it is done.
+     *
+     * @param write to the list of the feeds, see {@link #writeFeed(Runnable)}
+     * @param update of the rows once the write is done, or null
+     */
+    private void changeFeed(final Runnable write, final Runnable update) {
+        final int generation = mGeneration;
+        mIsSubmitting = true;
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeFeed(write);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The adapter was closed in the meantime
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        if (update != null) {
+                            update.run();
+                        }
+                        finishChange();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Makes the given write to the list of the feeds, on the background thread, unless the
+     * adapter was closed. The list is locked meanwhile, so it is never read half replaced.
+     */
+    private void writeFeed(Runnable write) {
+        synchronized (mFeedArticles) {
+            if (mIsClosed) {
+                return;
+            }
+            try {
+                write.run();
+            } catch (IllegalStateException e) {
+                // The rows show the articles that could be written
+                Log.e(LOG_TAG, "Problem writing the articles of the feeds", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the write replacing the articles of the feeds with the given ones.
+     */
+    private Runnable replaceFeed(final List<NewsArticle> articles) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mFeedArticles.clear();
+                mFeedArticles.addAll(articles);
+            }
+        };
+    }
+
+    /**
+     * Binds the rows shown from a copy of their articles until the list of the feeds is
+     * written, or empty if there are too many to copy.
+     *
+     * @return true if the rows are bound from a copy
+     */
+    private boolean bindFromCopy() {
+        List<NewsArticle> copy = snapshot(mArticles, mItemCount);
+        mArticles = copy != null ? copy : Collections.<NewsArticle>nCopies(mItemCount, null);
+        return copy != null;
+    }
+
+    /**
+     * Makes the changes requested while another was in progress, once it is done.
+     */
+    private void finishChange() {
+        mIsSubmitting = false;
+        while (!mIsSubmitting && !mPendingChanges.isEmpty()) {
+            mPendingChanges.poll().run();
+        }
+    }
+
+    /**
+     * Computes on a background thread the difference between the rows shown and the given
+     * articles, then shows these and updates the rows that changed. If either list is long,
+     * every row is updated instead.
+     *
+     * @param articles to show: the replacement of the articles of the feeds, or the list to
+     *                 show from now on
+     * @param isFeedReplacement whether the articles replace those of the feeds
+     */
+    private void submit(final List<NewsArticle> articles, final boolean isFeedReplacement) {
+        final List<NewsArticle> oldSnapshot = snapshot(mArticles, mItemCount);
+        final List<NewsArticle> newSnapshot = snapshot(articles, articles.size());
+        final int generation = mGeneration;
+        mIsSubmitting = true;
+        if (isFeedReplacement) {
+            // The articles of the feeds are rewritten in the background
+            mArticles = oldSnapshot != null
+                    ? oldSnapshot : Collections.<NewsArticle>nCopies(mItemCount, null);
+        }
+
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult diff = oldSnapshot != null && newSnapshot != null
+                        ? DiffUtil.calculateDiff(new ArticleDiffCallback(oldSnapshot, newSnapshot))
+                        : null;
+                if (isFeedReplacement) {
+                    writeFeed(replaceFeed(articles));
+                }
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The adapter was closed in the meantime
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mArticles = isFeedReplacement ? mFeedArticles : articles;
+                        mItemCount = mArticles.size();
+                        mLoadingChunks.clear();
+                        if (diff != null) {
+                            diff.dispatchUpdatesTo(NewsArticleAdapter.this);
+                        } else {
+                            notifyDataSetChanged();
+                        }
+                        finishChange();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns a copy of the first articles of the list to compare on a background thread, or
+     * null if it is too long to compare.
+     */
+    private static List<NewsArticle> snapshot(List<NewsArticle> articles, int count) {
+        return count <= MAX_DIFF_SIZE ? new ArrayList<>(articles.subList(0, count)) : null;
+    }
+
+    /**
+     * Compares two lists of articles. Articles are the same item if they have the same web
+     * URL, and their row needs to be updated if their title, section or thumbnail changed.
+     */
+    private static class ArticleDiffCallback extends DiffUtil.Callback {
+
+        private final List<NewsArticle> mOldArticles;
+        private final List<NewsArticle> mNewArticles;
+
+        ArticleDiffCallback(List<NewsArticle> oldArticles, List<NewsArticle> newArticles) {
+            mOldArticles = oldArticles;
+            mNewArticles = newArticles;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldArticles.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewArticles.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldArticles.get(oldItemPosition).getInfoUrl()
+                    .equals(mNewArticles.get(newItemPosition).getInfoUrl());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            NewsArticle oldArticle = mOldArticles.get(oldItemPosition);
+            NewsArticle newArticle = mNewArticles.get(newItemPosition);
+            return oldArticle.getTitle().equals(newArticle.getTitle())
+                    && oldArticle.getSection().equals(newArticle.getSection())
+                    && oldArticle.getThumbnailUrl().equals(newArticle.getThumbnailUrl());
+        }
     }
 }
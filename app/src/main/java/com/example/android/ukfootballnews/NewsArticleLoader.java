@@ -2,52 +2,198 @@ package com.example.android.ukfootballnews;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
-import android.text.TextUtils;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.example.android.ukfootballnews.data.ArticleStore;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
- * Custom AsyncTaskLoader that fetches news data in the background.
+ * Custom AsyncTaskLoader that fetches news data in the background. The queries are fetched
+ * concurrently by the {@link MultiSectionFetcher} and merged into a single list.
+ *
+ * The last result is kept, so returning to the activity or rotating it delivers that result
+ * right away instead of fetching again (stale-while-revalidate). Only once the result is older
+ * than the freshness window is a refresh started in the background; the retained result is
+ * still delivered first, and the refreshed one follows when it arrives.
+ *
+ * With an {@link OnPartialResultListener} set, the articles are also handed to it while the
+ * responses are still downloading (progressive loading), throttled so the main thread isn't
+ * flooded. The result delivered at the end of the load is the complete one and replaces them.
  */
 
-public class NewsArticleLoader extends AsyncTaskLoader <List<NewsArticle>>{
+public class NewsArticleLoader extends AsyncTaskLoader<FetchResult> {
 
     /** Tag for the log messages */
     private static final String LOG_TAG = NewsArticleLoader.class.getSimpleName();
 
-    /** Query url */
-    private String mUrl;
+    /** Value of the freshness window that never lets a result go stale */
+    public static final long NEVER_STALE = Long.MAX_VALUE;
+
+    /** Minimum time between two partial results, a few frames apart */
+    private static final long PARTIAL_RESULT_INTERVAL_MILLIS = 150;
+
+    /**
+     * Interface to receive the articles of a load before it finishes.
+     */
+    public interface OnPartialResultListener {
+        /**
+         * Called on the main thread with every article received so far by the load in
+         * progress, newest first. The complete result follows in onLoadFinished().
+         */
+        void onPartialResult(List<NewsArticle> articles);
+    }
+
+    /** Query urls */
+    private List<String> mUrls;
+
+    /** How long a result is delivered as is before a refresh is started, in milliseconds */
+    private final long mFreshnessMillis;
+
+    /** Last result delivered, or null before the first load finished */
+    private FetchResult mResult;
+
+    /** When {@link #mResult} was loaded, in {@link SystemClock#elapsedRealtime()} time */
+    private long mResultLoadedAt;
+
+    /** Receives the partial results, or null; main thread only */
+    private OnPartialResultListener mPartialResultListener;
+
+    /** Posts the partial results to the main thread */
+    private final Executor mMainThreadExecutor = new Executor() {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable runnable) {
+            mHandler.post(runnable);
+        }
+    };
 
     /**
      * Constructs a new {@link NewsArticleLoader}.
      *
      * @param context of the activity
-     * @param url to load data from
+     * @param urls to load data from
+     * @param freshnessMillis how long a result is delivered again without refreshing it, or
+     *                        {@link #NEVER_STALE}
      */
-    public NewsArticleLoader(Context context, String url) {
+    public NewsArticleLoader(Context context, List<String> urls, long freshnessMillis) {
         super(context);
-        mUrl = url;
+        mUrls = urls;
+        mFreshnessMillis = freshnessMillis;
         Log.i(LOG_TAG, "NewsArticleLoader constructor called: new Loader created.");
     }
 
+    /**
+     * Sets the listener receiving the articles of the next loads before they finish, or null
+     * to only get the complete results. Must be called on the main thread, again by an
+     * activity recreated while the loader was kept, since the loader outlives it.
+     */
+    public void setOnPartialResultListener(OnPartialResultListener listener) {
+        mPartialResultListener = listener;
+    }
+
     @Override
     protected void onStartLoading() {
-        forceLoad();
-        Log.i(LOG_TAG, "onStartLoading() --> forceLoad()");
+        // Deliver the retained result first, so the list doesn't wait on the network
+        if (mResult != null) {
+            deliverResult(mResult);
+        }
+
+        boolean contentChanged = takeContentChanged();
+        if (mResult == null || contentChanged || isStale()) {
+            forceLoad();
+            Log.i(LOG_TAG, "onStartLoading() --> forceLoad()");
+        }
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelLoad();
+        mResult = null;
+    }
+
+    @Override
+    public void deliverResult(FetchResult result) {
+        if (result != mResult) {
+            mResult = result;
+            mResultLoadedAt = SystemClock.elapsedRealtime();
+        }
+        super.deliverResult(result);
+    }
+
+    /**
+     * Returns true if the retained result is older than the freshness window. A failed result,
+     * or one that fell back to an expired cached response, is always stale.
+     */
+    private boolean isStale() {
+        if (!mResult.isSuccessful() || mResult.getSource() == FetchResult.Source.STALE_CACHE) {
+            return true;
+        }
+        if (mFreshnessMillis == NEVER_STALE) {
+            return false;
+        }
+        return SystemClock.elapsedRealtime() - mResultLoadedAt >= mFreshnessMillis;
     }
 
     @Override
-    public List<NewsArticle> loadInBackground() {
+    public FetchResult loadInBackground() {
         Log.i(LOG_TAG, "loadInBackground(): loading data in background");
 
-        // If the query url is empty, return an empty array list. Otherwise, fetch data
-        // using this url
-        if (TextUtils.isEmpty(mUrl)) {
-            return new ArrayList<NewsArticle>();
-        } else {
-            return QueryUtils.fetchNewsData(mUrl);
+        // If there are no query urls, return an empty array list. Otherwise, fetch data
+        // using these urls
+        if (mUrls == null || mUrls.isEmpty()) {
+            return new FetchResult(new ArrayList<NewsArticle>(), FetchResult.NO_RESPONSE,
+                    FetchResult.Source.NETWORK, 0, 0, null);
+        }
+
+        final long startNanos = PipelineMetrics.start();
+        ProgressiveArticlePublisher publisher = new ProgressiveArticlePublisher(
+                mMainThreadExecutor, PARTIAL_RESULT_INTERVAL_MILLIS,
+                new ProgressiveArticlePublisher.OnPublishListener() {
+                    private boolean mIsFirst = true;
+
+                    @Override
+                    public void onPublish(List<NewsArticle> articles) {
+                        // The listener may have gone with its activity, or the load with a
+                        // reset; the complete result is delivered anyway
+                        if (mPartialResultListener == null || !isStarted() || isAbandoned()) {
+                            return;
+                        }
+                        if (mIsFirst) {
+                            mIsFirst = false;
+                            PipelineMetrics.record(PipelineMetrics.Metric.FIRST_ROWS,
+                                    startNanos);
+                        }
+                        mPartialResultListener.onPartialResult(articles);
+                    }
+                });
+        FetchResult result;
+        try {
+            result = MultiSectionFetcher.fetch(mUrls, publisher);
+        } finally {
+            // No partial result after the complete one
+            publisher.finish();
+        }
+        PipelineMetrics.record(PipelineMetrics.Metric.LOAD, startNanos);
+        PipelineMetrics.recordValue(PipelineMetrics.Metric.WIRE_BYTES, result.getWireByteCount());
+        PipelineMetrics.recordValue(PipelineMetrics.Metric.BODY_BYTES, result.getByteCount());
+        if (result.getArticles() != null) {
+            PipelineMetrics.recordValue(PipelineMetrics.Metric.ARTICLES,
+                    result.getArticles().size());
+        }
+
+        // Keep a local copy of what was received, so it can be shown on the next start
+        // even without a network connection. Expired cached articles were stored already.
+        if (result.isSuccessful() && result.getSource() != FetchResult.Source.STALE_CACHE) {
+            ArticleStore.get(getContext()).saveArticles(result.getArticles());
         }
+        return result;
     }
 }
@@ -0,0 +1,108 @@
+package com.example.android.ukfootballnews;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class that represents one query of The Guardian API the app follows, such as a section or
+ * a team, e.g. the Premier League tag within the football section.
+ */
+
+public final class NewsFeed {
+
+    /** Url for news data from The Guardian data set. This url presents the data from newest to
+     * oldest; each {@link NewsFeed} adds the section, tag or keywords it follows.
+     */
+    public static final String SEARCH_URL = "https://content.guardianapis.com/search?format=json&show-fields=thumbnail&order-by=newest&api-key=test";
+
+    /**
+     * Search URL every feed is requested from, {@link #SEARCH_URL} unless replaced, e.g. by a
+     * local stand-in of the API in tests.
+     */
+    private static volatile String mSearchUrl = SEARCH_URL;
+
+    /** The feeds shown in the article list. */
+    public static final List<NewsFeed> DEFAULT_FEEDS = Collections.unmodifiableList(Arrays.asList(
+            new NewsFeed("Football", "football", null, "football"),
+            new NewsFeed("Premier League", "football", "football/premierleague", null),
+            new NewsFeed("Championship", "football", "football/championship", null),
+            new NewsFeed("Women's football", "football", "football/womensfootball", null),
+            new NewsFeed("Transfers", "football", "football/transfer-window", null)));
+
+    /** Name of this feed, for logging */
+    private final String mName;
+
+    /** Value of the "section" query parameter, or null */
+    private final String mSection;
+
+    /** Value of the "tag" query parameter, or null */
+    private final String mTag;
+
+    /** Value of the "q" query parameter, or null */
+    private final String mQuery;
+
+    /**
+     * Constructor for a new NewsFeed object
+     * @param name of this feed
+     * @param section to limit the results to, or null
+     * @param tag to limit the results to, or null
+     * @param query keywords to search for, or null
+     */
+    public NewsFeed(String name, String section, String tag, String query) {
+        mName = name;
+        mSection = section;
+        mTag = tag;
+        mQuery = query;
+    }
+
+    /**
+     * Returns the search URL the feeds are requested from, holding the parameters shared by
+     * every feed.
+     */
+    public static String getSearchUrl() {
+        return mSearchUrl;
+    }
+
+    /**
+     * Replaces the search URL the feeds are requested from, e.g. to point the app at a local
+     * stand-in of The Guardian API. It must take the same parameters as {@link #SEARCH_URL}.
+     *
+     * @param searchUrl to request, or null to go back to {@link #SEARCH_URL}
+     */
+    public static void setSearchUrl(String searchUrl) {
+        mSearchUrl = searchUrl != null ? searchUrl : SEARCH_URL;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the request URL for the given page of this feed.
+     *
+     * @param baseUrl search URL holding the parameters shared by every feed (format, fields,
+     *                order, API key)
+     * @param page number of the page, starting at 1
+     * @param pageSize number of articles per page
+     */
+    public String buildUrl(String baseUrl, int page, int pageSize) {
+        Uri.Builder builder = Uri.parse(baseUrl).buildUpon();
+        if (!TextUtils.isEmpty(mQuery)) {
+            builder.appendQueryParameter("q", mQuery);
+        }
+        if (!TextUtils.isEmpty(mSection)) {
+            builder.appendQueryParameter("section", mSection);
+        }
+        if (!TextUtils.isEmpty(mTag)) {
+            builder.appendQueryParameter("tag", mTag);
+        }
+        return builder.appendQueryParameter("page", String.valueOf(page))
+                .appendQueryParameter("page-size", String.valueOf(pageSize))
+                .build()
+                .toString();
+    }
+}
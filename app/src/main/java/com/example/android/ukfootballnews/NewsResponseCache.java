@@ -0,0 +1,455 @@
+package com.example.android.ukfootballnews;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Disk-backed cache of Guardian API responses, used by {@link QueryUtils#fetchNewsData(String)}.
+ *
+ * Every entry keeps the response body in the cache directory, together with a small metadata
+ * file holding the validators (ETag / Last-Modified) and the time until which the entry is
+ * fresh. Entries are evicted least recently used first once the bodies exceed the size limit.
+ * The articles parsed from an entry are kept in memory, so a fresh hit or a 304 response
+ * skips both the download and the re-parse.
+ */
+public final class NewsResponseCache {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsResponseCache.class.getSimpleName();
+
+    /** Version of the metadata file format. */
+    private static final int META_VERSION = 1;
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Pattern MAX_AGE_PATTERN = Pattern.compile("max-age=(\\d+)");
+
+    /** The cache used by {@link QueryUtils}, or null if none was installed. */
+    private static volatile NewsResponseCache mInstalled;
+
+    /** Directory holding the body and metadata files. */
+    private final File mDirectory;
+
+    /** Maximum number of body bytes kept on disk. */
+    private final long mMaxSize;
+
+    /** Entries keyed by URL, in least recently used order. */
+    private final LinkedHashMap<String, Entry> mEntries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Number of body bytes currently on disk. */
+    private long mSize;
+
+    /** Number of requests answered from a fresh entry, without touching the network. */
+    private int mHitCount;
+
+    /** Number of requests that found no entry. */
+    private int mMissCount;
+
+    /** Number of stale entries the server confirmed with a 304 response. */
+    private int mRevalidationCount;
+
+    /** Counter used to give each in-progress write its own temporary file. */
+    private int mTempCounter;
+
+    private NewsResponseCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Creates a cache in the given directory and makes {@link QueryUtils} use it.
+     *
+     * @param directory to keep the cached responses in, usually under the app's cache dir
+     * @param maxSize maximum number of bytes of response bodies to keep
+     * @return the installed cache
+     */
+    public static synchronized NewsResponseCache install(File directory, long maxSize) {
+        NewsResponseCache installed = mInstalled;
+        if (installed != null && installed.mDirectory.equals(directory)) {
+            return installed;
+        }
+        NewsResponseCache cache = new NewsResponseCache(directory, maxSize);
+        cache.open();
+        mInstalled = cache;
+        return cache;
+    }
+
+    /**
+     * Stops {@link QueryUtils} from using the installed cache, e.g. between tests.
+     */
+    static synchronized void uninstall() {
+        mInstalled = null;
+    }
+
+    /**
+     * Returns the cache installed with {@link #install(File, long)}, or null.
+     */
+    public static NewsResponseCache getInstalled() {
+        return mInstalled;
+    }
+
+    /**
+     * Loads the metadata of the entries already on disk, most recently used last.
+     */
+    private synchronized void open() {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Could not create cache directory " + mDirectory);
+            return;
+        }
+
+        File[] metaFiles = mDirectory.listFiles();
+        if (metaFiles == null) {
+            return;
+        }
+
+        // The body file's modification time is bumped on every use, so it orders the entries.
+        Arrays.sort(metaFiles, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long aTime = bodyFileOf(a).lastModified();
+                long bTime = bodyFileOf(b).lastModified();
+                return aTime < bTime ? -1 : (aTime == bTime ? 0 : 1);
+            }
+        });
+
+        for (File file : metaFiles) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // Left over from a write that never completed
+                deleteFile(file);
+            } else if (name.endsWith(META_SUFFIX)) {
+                String key = name.substring(0, name.length() - META_SUFFIX.length());
+                Entry entry = readEntry(key);
+                if (entry != null) {
+                    mEntries.put(entry.mUrl, entry);
+                    mSize += entry.mBodyLength;
+                } else {
+                    deleteFile(file);
+                    deleteFile(new File(mDirectory, key + BODY_SUFFIX));
+                }
+            }
+        }
+        trimToSize();
+    }
+
+    /**
+     * Returns the body file belonging to the given metadata file.
+     */
+    private File bodyFileOf(File metaFile) {
+        String name = metaFile.getName();
+        if (!name.endsWith(META_SUFFIX)) {
+            return metaFile;
+        }
+        return new File(mDirectory,
+                name.substring(0, name.length() - META_SUFFIX.length()) + BODY_SUFFIX);
+    }
+
+    /**
+     * Returns the entry for the given URL, or null (counting a miss) if there is none.
+     */
+    synchronized Entry get(String url) {
+        Entry entry = mEntries.get(url);
+        if (entry == null) {
+            mMissCount++;
+            return null;
+        }
+        entry.getBodyFile().setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    /**
+     * Records that a fresh entry was used without contacting the server.
+     */
+    synchronized void recordHit() {
+        mHitCount++;
+    }
+
+    /**
+     * Records that the server answered a conditional request for the entry with a 304,
+     * and extends the entry's freshness accordingly.
+     */
+    synchronized void recordRevalidation(Entry entry, long expiresAt) {
+        mRevalidationCount++;
+        entry.mExpiresAt = expiresAt;
+        writeMeta(entry);
+    }
+
+    /**
+     * Returns a new temporary file that a response body can be written to before it is
+     * handed to {@link #put(String, File, String, String, long, List)}.
+     */
+    synchronized File newTempFile() {
+        return new File(mDirectory, "write-" + (mTempCounter++) + TEMP_SUFFIX);
+    }
+
+    /**
+     * Stores a complete response body, replacing any previous entry for the URL.
+     *
+     * @param url of the request
+     * @param tempBody file holding the body, obtained from {@link #newTempFile()}
+     * @param etag the ETag header of the response, or null
+     * @param lastModified the Last-Modified header of the response, or null
+     * @param expiresAt time in milliseconds until which the entry is fresh
+     * @param articles parsed from the body, kept in memory to skip parsing it again
+     */
+    synchronized void put(String url, File tempBody, String etag, String lastModified,
+                          long expiresAt, List<NewsArticle> articles) {
+        if (!mDirectory.isDirectory()) {
+            deleteFile(tempBody);
+            return;
+        }
+
+        Entry previous = mEntries.remove(url);
+        if (previous != null) {
+            mSize -= previous.mBodyLength;
+        }
+
+        Entry entry = new Entry(keyFor(url), url);
+        entry.mEtag = etag;
+        entry.mLastModified = lastModified;
+        entry.mExpiresAt = expiresAt;
+        entry.mBodyLength = tempBody.length();
+        entry.mArticles = articles;
+
+        File bodyFile = entry.getBodyFile();
+        deleteFile(bodyFile);
+        if (!tempBody.renameTo(bodyFile) || !writeMeta(entry)) {
+            Log.e(LOG_TAG, "Could not store cached response for " + url);
+            deleteFile(tempBody);
+            deleteFile(bodyFile);
+            deleteFile(entry.getMetaFile());
+            return;
+        }
+
+        mEntries.put(url, entry);
+        mSize += entry.mBodyLength;
+        trimToSize();
+    }
+
+    /**
+     * Removes entries, least recently used first, until the bodies fit in the size limit.
+     */
+    private void trimToSize() {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            mSize -= eldest.mBodyLength;
+            deleteFile(eldest.getBodyFile());
+            deleteFile(eldest.getMetaFile());
+        }
+    }
+
+    /**
+     * Returns the number of requests answered from a fresh entry without touching the network.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of requests that found no cached entry.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Returns the number of stale entries that were reused after a 304 response.
+     */
+    public synchronized int getRevalidationCount() {
+        return mRevalidationCount;
+    }
+
+    /**
+     * Returns the number of response body bytes currently on disk.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the time in milliseconds until which a response is fresh, based on its
+     * Cache-Control and Expires headers, or -1 if the response must not be stored.
+     */
+    static long computeExpiresAt(GuardianHttpClient.Response response, long now) {
+        String cacheControl = response.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            String directives = cacheControl.toLowerCase(Locale.US);
+            if (directives.contains("no-store")) {
+                return -1;
+            }
+            if (directives.contains("no-cache")) {
+                return now;
+            }
+            Matcher matcher = MAX_AGE_PATTERN.matcher(directives);
+            if (matcher.find()) {
+                try {
+                    return now + Long.parseLong(matcher.group(1)) * 1000;
+                } catch (NumberFormatException e) {
+                    return now;
+                }
+            }
+        }
+        long expiration = response.getExpiration();
+        return expiration > now ? expiration : now;
+    }
+
+    private Entry readEntry(String key) {
+        Entry entry = new Entry(key, null);
+        File bodyFile = entry.getBodyFile();
+        if (!bodyFile.isFile()) {
+            return null;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(entry.getMetaFile()));
+            if (in.readInt() != META_VERSION) {
+                return null;
+            }
+            Entry loaded = new Entry(key, in.readUTF());
+            loaded.mEtag = emptyToNull(in.readUTF());
+            loaded.mLastModified = emptyToNull(in.readUTF());
+            loaded.mExpiresAt = in.readLong();
+            loaded.mBodyLength = bodyFile.length();
+            return loaded;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading cache entry " + key, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private boolean writeMeta(Entry entry) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(entry.getMetaFile()));
+            out.writeInt(META_VERSION);
+            out.writeUTF(entry.mUrl);
+            out.writeUTF(entry.mEtag == null ? "" : entry.mEtag);
+            out.writeUTF(entry.mLastModified == null ? "" : entry.mLastModified);
+            out.writeLong(entry.mExpiresAt);
+            return true;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem writing cache entry for " + entry.mUrl, e);
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Returns the file name used for the given URL.
+     */
+    private static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(String.format(Locale.US, "%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.e(LOG_TAG, "Could not delete " + file);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing left to do with this stream.
+            }
+        }
+    }
+
+    /**
+     * A cached response.
+     */
+    final class Entry {
+        private final String mKey;
+        private final String mUrl;
+        private String mEtag;
+        private String mLastModified;
+        private long mExpiresAt;
+        private long mBodyLength;
+
+        /** Articles parsed from the body, or null until the body is parsed. */
+        private List<NewsArticle> mArticles;
+
+        private Entry(String key, String url) {
+            mKey = key;
+            mUrl = url;
+        }
+
+        File getBodyFile() {
+            return new File(mDirectory, mKey + BODY_SUFFIX);
+        }
+
+        private File getMetaFile() {
+            return new File(mDirectory, mKey + META_SUFFIX);
+        }
+
+        String getEtag() {
+            return mEtag;
+        }
+
+        String getLastModified() {
+            return mLastModified;
+        }
+
+        boolean isFresh(long now) {
+            return now < mExpiresAt;
+        }
+
+        /**
+         * Returns a copy of the articles parsed from this entry, or null if it was not parsed.
+         */
+        List<NewsArticle> getArticles() {
+            synchronized (NewsResponseCache.this) {
+                return mArticles == null ? null : new ArrayList<>(mArticles);
+            }
+        }
+
+        void setArticles(List<NewsArticle> articles) {
+            synchronized (NewsResponseCache.this) {
+                mArticles = articles;
+            }
+        }
+    }
+}
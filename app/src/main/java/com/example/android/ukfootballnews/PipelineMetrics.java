@@ -0,0 +1,318 @@
+package com.example.android.ukfootballnews;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures each stage of loading the article list, from setting up the connection to the
+ * first frame showing articles, and keeps a rolling histogram of the last samples of each, so
+ * their percentiles can be shown on the debug screen or dumped as JSON.
+ *
+ * Collection is on in debug builds and off in release builds, and can be switched with
+ * {@link #setEnabled(boolean)}. While it is off, {@link #start()} returns 0 and every record
+ * method returns right away, so the call sites cost a volatile read.
+ */
+public final class PipelineMetrics {
+
+    /**
+     * What is measured. Stages are timed in nanoseconds; the other metrics count bytes or
+     * objects per load.
+     */
+    public enum Metric {
+        /** DNS lookup and connection set-up, close to 0 when a pooled connection is reused */
+        CONNECT("connect", Unit.NANOS),
+        /** From the start of a request until its response headers arrived */
+        FIRST_BYTE("first_byte", Unit.NANOS),
+        /** From the response headers until the body was read; overlaps the streaming parse */
+        BODY_DOWNLOAD("body_download", Unit.NANOS),
+        /** Reading a whole response into a String, on the DOM parsing path */
+        READ_FROM_STREAM("read_from_stream", Unit.NANOS),
+        /** Turning a response into articles */
+        EXTRACT_ARTICLES("extract_articles", Unit.NANOS),
+        /** A whole load of every followed feed, as seen by the loader */
+        LOAD("load", Unit.NANOS),
+        /** From the start of a load until its first articles were shown, before it finished */
+        FIRST_ROWS("first_rows", Unit.NANOS),
+        /** Binding one row of the list */
+        ADAPTER_BIND("adapter_bind", Unit.NANOS),
+        /** From the creation of the activity until the first frame showing articles */
+        FIRST_FRAME("first_frame", Unit.NANOS),
+        /** Searching the titles of the stored articles */
+        SEARCH("search", Unit.NANOS),
+        /** From tapping an article with a stored body until the reader shows it */
+        READER_OPEN("reader_open", Unit.NANOS),
+        /** Response body bytes received on the wire per load */
+        WIRE_BYTES("wire_bytes", Unit.BYTES),
+        /** Response body bytes per load, after decompression */
+        BODY_BYTES("body_bytes", Unit.BYTES),
+        /** Articles received per load */
+        ARTICLES("articles", Unit.OBJECTS),
+        /** Bytes received on the wire per request of article bodies downloaded ahead of time */
+        PREFETCH_BYTES("prefetch_bytes", Unit.BYTES);
+
+        private final String mKey;
+        private final Unit mUnit;
+
+        Metric(String key, Unit unit) {
+            mKey = key;
+            mUnit = unit;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        public Unit getUnit() {
+            return mUnit;
+        }
+    }
+
+    /**
+     * Unit of the samples of a {@link Metric}.
+     */
+    public enum Unit {
+        NANOS, BYTES, OBJECTS
+    }
+
+    /** Number of samples kept per metric; older ones are overwritten */
+    private static final int WINDOW_SIZE = 512;
+
+    /** Whether samples are being collected; on by default in debug builds */
+    private static volatile boolean mEnabled = BuildConfig.DEBUG;
+
+    /** One histogram per {@link Metric}, indexed by ordinal */
+    private static final RollingHistogram[] HISTOGRAMS;
+
+    static {
+        Metric[] metrics = Metric.values();
+        HISTOGRAMS = new RollingHistogram[metrics.length];
+        for (int i = 0; i < metrics.length; i++) {
+            HISTOGRAMS[i] = new RollingHistogram(WINDOW_SIZE);
+        }
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link PipelineMetrics} object. This class only holds static methods.
+     */
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Turns collection on or off. Samples collected so far are kept.
+     */
+    public static void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Returns the start time of a stage to pass to {@link #record(Metric, long)}, or 0 if
+     * collection is off.
+     */
+    public static long start() {
+        return mEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time elapsed since the given {@link #start()} time.
+     */
+    public static void record(Metric metric, long startNanos) {
+        if (startNanos != 0 && mEnabled) {
+            HISTOGRAMS[metric.ordinal()].add(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Record a sample that was measured elsewhere: a duration in nanoseconds, or a count.
+     */
+    public static void recordValue(Metric metric, long value) {
+        if (mEnabled) {
+            HISTOGRAMS[metric.ordinal()].add(value);
+        }
+    }
+
+    /**
+     * Forget every sample collected so far.
+     */
+    public static void reset() {
+        for (RollingHistogram histogram : HISTOGRAMS) {
+            histogram.clear();
+        }
+    }
+
+    /**
+     * Returns a summary of the samples of the given metric.
+     */
+    public static Summary getSummary(Metric metric) {
+        return new Summary(metric, HISTOGRAMS[metric.ordinal()].snapshot());
+    }
+
+    /**
+     * Returns a human-readable table of every metric, one line each.
+     */
+    public static String dumpText() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "%-17s %6s %9s %9s %9s %9s%n",
+                "metric", "n", "p50", "p95", "p99", "max"));
+        for (Metric metric : Metric.values()) {
+            Summary summary = getSummary(metric);
+            builder.append(String.format(Locale.US, "%-17s %6d %9s %9s %9s %9s%n",
+                    metric.getKey(), summary.getCount(),
+                    format(metric, summary.getPercentile(50)),
+                    format(metric, summary.getPercentile(95)),
+                    format(metric, summary.getPercentile(99)),
+                    format(metric, summary.getMax())));
+        }
+        RequestCoalescer coalescer = QueryUtils.getRequestCoalescer();
+        FetchResilience resilience = QueryUtils.getFetchResilience();
+        builder.append(String.format(Locale.US, "%nrequests %d, coalesced %d%n",
+                coalescer.getRequestCount(), coalescer.getCoalescedCount()));
+        builder.append(String.format(Locale.US, "retries %d, circuit %s, rejected %d%n",
+                resilience.getRetryCount(), resilience.getState(),
+                resilience.getRejectedCount()));
+        return builder.toString();
+    }
+
+    /**
+     * Returns every metric as a JSON object, durations in milliseconds, e.g.
+     * {"enabled":true,"window":512,"metrics":{"connect":{"unit":"ms","count":3,"p50":...}}}
+     */
+    public static String dumpJson() {
+        try {
+            JSONObject metrics = new JSONObject();
+            for (Metric metric : Metric.values()) {
+                Summary summary = getSummary(metric);
+                JSONObject json = new JSONObject();
+                json.put("unit", metric.getUnit() == Unit.NANOS
+                        ? "ms" : metric.getUnit().name().toLowerCase(Locale.US));
+                json.put("count", summary.getCount());
+                if (summary.getCount() > 0) {
+                    json.put("p50", toJsonValue(metric, summary.getPercentile(50)));
+                    json.put("p95", toJsonValue(metric, summary.getPercentile(95)));
+                    json.put("p99", toJsonValue(metric, summary.getPercentile(99)));
+                    json.put("max", toJsonValue(metric, summary.getMax()));
+                }
+                metrics.put(metric.getKey(), json);
+            }
+            RequestCoalescer coalescer = QueryUtils.getRequestCoalescer();
+            FetchResilience resilience = QueryUtils.getFetchResilience();
+            JSONObject counters = new JSONObject()
+                    .put("requests", coalescer.getRequestCount())
+                    .put("coalesced_requests", coalescer.getCoalescedCount())
+                    .put("retries", resilience.getRetryCount())
+                    .put("circuit", resilience.getState().name())
+                    .put("rejected_requests", resilience.getRejectedCount());
+            return new JSONObject()
+                    .put("enabled", mEnabled)
+                    .put("window", WINDOW_SIZE)
+                    .put("metrics", metrics)
+                    .put("counters", counters)
+                    .toString();
+        } catch (JSONException e) {
+            // Only thrown for non-finite doubles, which are never put
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object toJsonValue(Metric metric, long value) {
+        if (metric.getUnit() == Unit.NANOS) {
+            return value / 1000 / 1000.0;
+        }
+        return value;
+    }
+
+    private static String format(Metric metric, long value) {
+        if (value < 0) {
+            return "-";
+        }
+        switch (metric.getUnit()) {
+            case NANOS:
+                return String.format(Locale.US, "%.2fms", value / 1000000.0);
+            case BYTES:
+                return value >= 10 * 1024 ? (value / 1024) + "KB" : value + "B";
+            default:
+                return String.valueOf(value);
+        }
+    }
+
+    /**
+     * The samples of a {@link Metric} at some point in time.
+     */
+    public static final class Summary {
+
+        private final Metric mMetric;
+
+        /** Samples in ascending order */
+        private final long[] mSortedSamples;
+
+        private Summary(Metric metric, long[] samples) {
+            mMetric = metric;
+            mSortedSamples = samples;
+            Arrays.sort(mSortedSamples);
+        }
+
+        public Metric getMetric() {
+            return mMetric;
+        }
+
+        public int getCount() {
+            return mSortedSamples.length;
+        }
+
+        /**
+         * Returns the sample at the given percentile (nearest rank), or -1 without samples.
+         *
+         * @param percentile between 0 and 100
+         */
+        public long getPercentile(double percentile) {
+            if (mSortedSamples.length == 0) {
+                return -1;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * mSortedSamples.length);
+            return mSortedSamples[Math.max(0, Math.min(rank, mSortedSamples.length) - 1)];
+        }
+
+        /**
+         * Returns the largest sample, or -1 without samples.
+         */
+        public long getMax() {
+            return mSortedSamples.length == 0 ? -1 : mSortedSamples[mSortedSamples.length - 1];
+        }
+    }
+
+    /**
+     * Keeps the last samples added in a ring buffer.
+     */
+    private static final class RollingHistogram {
+
+        private final long[] mSamples;
+
+        /** Total number of samples added since the last clear */
+        private long mAdded;
+
+        RollingHistogram(int windowSize) {
+            mSamples = new long[windowSize];
+        }
+
+        synchronized void add(long sample) {
+            mSamples[(int) (mAdded % mSamples.length)] = sample;
+            mAdded++;
+        }
+
+        synchronized void clear() {
+            mAdded = 0;
+        }
+
+        synchronized long[] snapshot() {
+            int count = (int) Math.min(mAdded, mSamples.length);
+            return Arrays.copyOf(mSamples, count);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.android.ukfootballnews;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Collects the articles parsed so far by the fetches of a load and publishes them, e.g. to
+ * the main thread, while the responses are still downloading, so the first rows show up
+ * before the last byte arrives.
+ *
+ * Batches are not published one by one: at most one publication is waiting on the
+ * {@link Executor} at a time, and publications are at least the given interval apart. Each
+ * publication holds every article collected so far, without duplicates and newest first like
+ * the merged result of the {@link MultiSectionFetcher}, so the list can simply be replaced
+ * with it. Once {@link #finish()} is called nothing more is published, so a publication can't
+ * arrive after the final result of the load.
+ *
+ * Articles collected within the interval after a publication wait for the next batch; the
+ * final result of the load holds them anyway.
+ */
+public final class ProgressiveArticlePublisher implements QueryUtils.OnArticlesParsedListener {
+
+    /**
+     * Interface to receive the articles published.
+     */
+    public interface OnPublishListener {
+        /**
+         * Called on the {@link Executor} with every article collected so far, newest first.
+         */
+        void onPublish(List<NewsArticle> articles);
+    }
+
+    private final Executor mExecutor;
+
+    private final long mMinIntervalNanos;
+
+    private final OnPublishListener mListener;
+
+    /** Articles collected so far */
+    private final List<NewsArticle> mArticles = new ArrayList<>();
+
+    /** Web URLs of {@link #mArticles}, to drop the articles found in several feeds */
+    private final Set<String> mUrls = new HashSet<>();
+
+    /** Whether a publication is waiting on the executor */
+    private boolean mIsPublishPending;
+
+    /** When the last publication was scheduled, in {@link System#nanoTime()} time */
+    private long mLastPublishNanos;
+
+    /** Number of publications scheduled */
+    private int mPublishCount;
+
+    private boolean mIsFinished;
+
+    /**
+     * Publishes the articles collected so far; runs on the executor.
+     */
+    private final Runnable mPublishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            List<NewsArticle> articles;
+            synchronized (ProgressiveArticlePublisher.this) {
+                mIsPublishPending = false;
+                if (mIsFinished) {
+                    return;
+                }
+                articles = new ArrayList<>(mArticles);
+            }
+            // Stable sort, so articles published at the same time keep their response order
+            Collections.sort(articles, MultiSectionFetcher.NEWEST_FIRST);
+            mListener.onPublish(articles);
+        }
+    };
+
+    /**
+     * Constructs a new {@link ProgressiveArticlePublisher}.
+     *
+     * @param executor the articles are published on, e.g. posting to the main thread
+     * @param minIntervalMillis minimum time between two publications
+     * @param listener to receive the articles published
+     */
+    public ProgressiveArticlePublisher(Executor executor, long minIntervalMillis,
+                                       OnPublishListener listener) {
+        mExecutor = executor;
+        mMinIntervalNanos = minIntervalMillis * 1000000;
+        mListener = listener;
+    }
+
+    /**
+     * Collect the given articles, and publish everything collected so far unless a
+     * publication is already waiting or the last one was too recent.
+     */
+    @Override
+    public void onArticlesParsed(List<NewsArticle> articles) {
+        synchronized (this) {
+            if (mIsFinished) {
+                return;
+            }
+            for (NewsArticle article : articles) {
+                if (mUrls.add(article.getInfoUrl())) {
+                    mArticles.add(article);
+                }
+            }
+
+            long now = System.nanoTime();
+            if (mIsPublishPending
+                    || (mPublishCount > 0 && now - mLastPublishNanos < mMinIntervalNanos)) {
+                return;
+            }
+            mIsPublishPending = true;
+            mLastPublishNanos = now;
+            mPublishCount++;
+        }
+        mExecutor.execute(mPublishRunnable);
+    }
+
+    /**
+     * Stop publishing, dropping any publication still waiting on the executor. Call it
+     * before the final result of the load is delivered.
+     */
+    public synchronized void finish() {
+        mIsFinished = true;
+    }
+
+    /**
+     * Returns the number of publications scheduled on the executor.
+     */
+    public synchronized int getPublishCount() {
+        return mPublishCount;
+    }
+}
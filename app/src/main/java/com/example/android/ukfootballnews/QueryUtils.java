@@ -8,14 +8,29 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.TimeZone;
 
 /**
  * Helper methods related to requesting and receiving news data from The Guardian API.
@@ -27,8 +42,69 @@ public final class QueryUtils {
      */
     private static final String LOG_TAG = QueryUtils.class.getSimpleName();
 
-    /** HTTP request response code for the current request. */
-    private static int mResponseCode;
+    /**
+     * Whether responses are parsed straight off the connection's {@link InputStream} with a
+     * {@link JsonStreamReader} (true), or first read into a String and parsed into a
+     * {@link JSONObject} tree (false). The DOM path is kept so both can be compared.
+     */
+    private static volatile boolean mUseStreamingParser = true;
+
+    /** Creates the streaming readers of the responses */
+    private static volatile JsonStreamReader.Factory mJsonReaderFactory =
+            PlatformJsonStreamReader.FACTORY;
+
+    /**
+     * Format of the "webPublicationDate" values, one instance per thread because
+     * {@link SimpleDateFormat} is not thread-safe.
+     */
+    private static final ThreadLocal<SimpleDateFormat> PUBLICATION_DATE_FORMAT =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    SimpleDateFormat format =
+                            new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+                    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+                    return format;
+                }
+            };
+
+    /** Shares a request between concurrent callers asking for the same query */
+    private static final RequestCoalescer COALESCER = new RequestCoalescer();
+
+    /** Timeouts, retries and circuit breaker of the requests */
+    private static volatile FetchResilience mResilience = new FetchResilience();
+
+    /**
+     * Number of articles parsed off the stream before they are handed to an
+     * {@link OnArticlesParsedListener}, small enough to fill the first screen early.
+     */
+    static final int PARSE_BATCH_SIZE = 10;
+
+    /**
+     * Reported when a response was read in full but is not a search response, e.g. its
+     * "results" value is not an array.
+     */
+    public static final class UnexpectedResponseException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnexpectedResponseException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Interface to receive the articles of a response while it is still being downloaded.
+     */
+    public interface OnArticlesParsedListener {
+        /**
+         * Called on the fetching thread with the articles parsed since the last call, in the
+         * order of the response. Several fetches may call it concurrently. An article is
+         * only handed over once, even if the request is retried after its response was cut
+         * off.
+         */
+        void onArticlesParsed(List<NewsArticle> articles);
+    }
 
     /**
      * Create a private constructor because no one should ever create a {@link QueryUtils} object.
@@ -39,36 +115,106 @@ public final class QueryUtils {
     }
 
     /**
-     * Query the USGS data set and return a list of {@link NewsArticle} objects.
+     * Query The Guardian data set and return a {@link FetchResult} holding the list of
+     * {@link NewsArticle} objects together with the status of the request. Nothing is shared
+     * between calls except the {@link NewsResponseCache} and the {@link FetchResilience}, both
+     * thread-safe, so this can be called from several threads at once.
+     */
+    public static FetchResult fetchNewsData(String url) {
+        return fetchNewsData(url, null);
+    }
+
+    /**
+     * Same as {@link #fetchNewsData(String)}, also handing the articles to the given listener
+     * in batches of {@link #PARSE_BATCH_SIZE} as they are parsed off the connection, so they
+     * can be shown before the rest of the response arrives. The returned result still holds
+     * every article and is what should be kept.
+     *
+     * Only the streaming parser delivers batches, and only from a response read from the
+     * network; a response served from the cache, or a request shared with another caller
+     * by the {@link RequestCoalescer}, only returns the result.
+     *
+     * @param listener to receive the batches, or null
      */
-    public static List<NewsArticle> fetchNewsData(String url) {
+    public static FetchResult fetchNewsData(final String url,
+                                            final OnArticlesParsedListener listener) {
 
         Log.i(LOG_TAG, "fetchNewsData(): starting to fetch data");
 
-        // Create URL object
-        URL queryURL = createURL(url);
+        // Perform HTTP request to the URL and extract relevant fields from the JSON response
+        // to create a list of {@link NewsArticle}s. If the same query is already in flight,
+        // share its request instead.
+        FetchResult result = COALESCER.execute(url, new Callable<FetchResult>() {
+            @Override
+            public FetchResult call() {
+                // Create URL object
+                URL queryURL = createURL(url);
 
-        // Perform HTTP request to the URL and receive a JSON response back
-        String jsonResponseString = "";
+                return makeHttpRequest(queryURL, listener);
+            }
+        });
 
-        try {
-            jsonResponseString = makeHttpRequest(queryURL);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Problem closing input stream. ", e);
-        }
+        Log.i(LOG_TAG, "fetchNewsData(): " + result);
 
-        // Extract relevant fields from the JSON response and create a list of {@link NewsArticle}s
-        List<NewsArticle> articles = extractArticles(jsonResponseString);
+        // Return the result of the request
+        return result;
+    }
 
-        // Return the list of {@link NewsArticle}s
-        return articles;
+    /**
+     * Returns the layer sharing requests between concurrent callers, e.g. to read how many
+     * requests it saved.
+     */
+    public static RequestCoalescer getRequestCoalescer() {
+        return COALESCER;
+    }
+
+    /**
+     * Returns the layer picking the timeouts and retries of the requests, e.g. to read the
+     * state of its circuit breaker.
+     */
+    public static FetchResilience getFetchResilience() {
+        return mResilience;
+    }
+
+    /**
+     * Replaces the layer picking the timeouts and retries of the requests, e.g. with shorter
+     * waits in tests.
+     */
+    static void setFetchResilience(FetchResilience resilience) {
+        mResilience = resilience;
+    }
+
+    /**
+     * Replaces the streaming reader of the responses, e.g. with one running on a plain JVM in
+     * tests and benchmarks, or restores the reader of the platform if null.
+     */
+    static void setJsonReaderFactory(JsonStreamReader.Factory factory) {
+        mJsonReaderFactory = factory != null ? factory : PlatformJsonStreamReader.FACTORY;
+    }
+
+    /**
+     * Selects how responses are parsed.
+     *
+     * @param useStreamingParser true to parse the response while it is read from the connection,
+     *                           false to read the whole response into a String and parse it
+     *                           into a {@link JSONObject} tree
+     */
+    public static void setUseStreamingParser(boolean useStreamingParser) {
+        mUseStreamingParser = useStreamingParser;
+    }
+
+    /**
+     * Returns true if responses are parsed while they are read from the connection.
+     */
+    public static boolean isUsingStreamingParser() {
+        return mUseStreamingParser;
     }
 
     /**
      * Return a list of {@link NewsArticle} objects that has been built up from
      * parsing a JSON response.
      */
-    private static List<NewsArticle> extractArticles(String jsonResponseString) {
+    static List<NewsArticle> extractArticles(String jsonResponseString) {
 
         // If the JSON string is empty or null, then return early.
         if (TextUtils.isEmpty(jsonResponseString)) {
@@ -82,53 +228,312 @@ public final class QueryUtils {
         // is formatted, a JSONException exception object will be thrown.
         // Catch the exception so the app doesn't crash, and print the error message to the logs.
         try {
+            readArticles(jsonResponseString, articles);
+        } catch (JSONException e) {
+            // If an error is thrown when parsing the response, catch the exception here, so
+            // the app doesn't crash. Print a log message with the message from the exception.
+            Log.e(LOG_TAG, "Problem parsing the news article JSON results", e);
+        }
+        // Return the list of articles
+        return articles;
+    }
+
+    /**
+     * Add to the given list a {@link NewsArticle} for each entry of a JSON response.
+     *
+     * @throws JSONException if the response is malformed, e.g. cut off, in which case the
+     *                       list holds the articles read before the problem
+     */
+    private static void readArticles(String jsonResponseString, List<NewsArticle> articles)
+            throws JSONException {
 
-            // Create a JSONObject from the JSON response string
-            JSONObject rootJsonObject = new JSONObject(jsonResponseString);
+        // The buffer holding the text of the articles
+        ArticleBuffer buffer = new ArticleBuffer();
 
-            // Extract JSONObject with the key "response".
-            JSONObject responseJsonObject = rootJsonObject.getJSONObject("response");
+        // Create a JSONObject from the JSON response string
+        JSONObject rootJsonObject = new JSONObject(jsonResponseString);
 
-            // Extract the JSONArray associated with the key called "results",
-            // which represents a list of articles.
-            JSONArray listOfArticles = responseJsonObject.getJSONArray("results");
+        // Extract JSONObject with the key "response".
+        JSONObject responseJsonObject = rootJsonObject.getJSONObject("response");
 
-            // For each article in the list of articles, create a {@link NewsArticle} object
-            for (int i = 0; i < listOfArticles.length(); i++) {
+        // Extract the JSONArray associated with the key called "results",
+        // which represents a list of articles.
+        JSONArray listOfArticles = responseJsonObject.getJSONArray("results");
 
-                // Get a single article at position i within the list of articles
-                JSONObject articleJsonObject = listOfArticles.getJSONObject(i);
+        // For each article in the list of articles, create a {@link NewsArticle} object
+        for (int i = 0; i < listOfArticles.length(); i++) {
 
-                // Extract the value for the key called "webTitle"
-                String webTitle = articleJsonObject.getString("webTitle");
+            // Get a single article at position i within the list of articles
+            JSONObject articleJsonObject = listOfArticles.getJSONObject(i);
 
-                // Extract the value for the key called "webUrl"
-                String webUrl = articleJsonObject.getString("webUrl");
+            // Extract the value for the key called "webTitle"
+            String webTitle = articleJsonObject.getString("webTitle");
 
-                // Extract the JSONObject for the key called "fields"
-                JSONObject otherFields = articleJsonObject.getJSONObject("fields");
+            // Extract the value for the key called "webUrl"
+            String webUrl = articleJsonObject.getString("webUrl");
 
-                // Extract the value for the key called "thumbnail"
-                String thumbnailUrl = otherFields.getString("thumbnail");
+            // Extract the values for the keys called "sectionName" and "webPublicationDate"
+            String sectionName = articleJsonObject.optString("sectionName", "");
+            long publicationDate =
+                    parsePublicationDate(articleJsonObject.optString("webPublicationDate"));
 
-                // Create a new {@link NewsArticle} object with the webTitle, webUrl and
-                // thumbnailUrl from the JSON response.
-                NewsArticle article = new NewsArticle(webTitle, webUrl, thumbnailUrl);
+            // Extract the JSONObject for the key called "fields"
+            JSONObject otherFields = articleJsonObject.getJSONObject("fields");
 
-                // Add the new {@link NewsArticle} to the list of articles.
-                articles.add(article);
-            }
+            // Extract the value for the key called "thumbnail"
+            String thumbnailUrl = otherFields.getString("thumbnail");
 
-        } catch (JSONException e) {
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e(LOG_TAG, "Problem parsing the news article JSON results", e);
+            // Create a new {@link NewsArticle} object with the values from the JSON response.
+            NewsArticle article = buffer.add(webTitle, sectionName, webUrl, thumbnailUrl,
+                    publicationDate);
+
+            // Add the new {@link NewsArticle} to the list of articles.
+            articles.add(article);
         }
+    }
+
+    /**
+     * Return a list of {@link NewsArticle} objects built up while reading the JSON response
+     * from the given {@link InputStream}. Only "response.results[]" is walked, every other
+     * value is skipped without being materialized.
+     *
+     * @throws IOException if the response could not be read to its end, e.g. it is malformed
+     *                     or the connection dropped before the end of the body; an
+     *                     {@link UnexpectedResponseException} if it is valid JSON but not a
+     *                     search response
+     */
+    static List<NewsArticle> extractArticles(InputStream inputStream) throws IOException {
+        return extractArticles(inputStream, null);
+    }
+
+    /**
+     * Same as {@link #extractArticles(InputStream)}, handing the articles to the given
+     * listener in batches of {@link #PARSE_BATCH_SIZE} as they are read. If the response
+     * turns out to be cut off or malformed, the listener may have received some articles
+     * before the exception is thrown.
+     *
+     * @param listener to receive the batches, or null
+     */
+    static List<NewsArticle> extractArticles(InputStream inputStream,
+                                             OnArticlesParsedListener listener)
+            throws IOException {
+
+        // Create an empty ArrayList that we can start adding articles to, and the buffer
+        // holding their text
+        List<NewsArticle> articles = new ArrayList<>();
+        ArticleBuffer buffer = new ArticleBuffer();
+
+        JsonStreamReader reader =
+                mJsonReaderFactory.create(new InputStreamReader(inputStream, "UTF-8"));
+
+        // A malformed or cut off document makes the reader throw an IOException, which is
+        // passed on so the response isn't mistaken for a complete one. An unexpected token
+        // (e.g. "results" not being an array) makes it throw an IllegalStateException.
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("response".equals(reader.nextName())) {
+                    readResponse(reader, buffer, articles, listener);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new UnexpectedResponseException(
+                    "Problem parsing the news article JSON results", e);
+        }
+
         // Return the list of articles
         return articles;
     }
 
+    /**
+     * Read the "response" object, adding an article for each entry of its "results" array.
+     *
+     * @param buffer holding the text of the articles
+     * @param listener receiving every {@link #PARSE_BATCH_SIZE} articles read, or null
+     */
+    private static void readResponse(JsonStreamReader reader, ArticleBuffer buffer,
+                                     List<NewsArticle> articles,
+                                     OnArticlesParsedListener listener) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("results".equals(reader.nextName())) {
+                int delivered = articles.size();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    NewsArticle article = readArticle(reader, buffer);
+                    if (article != null) {
+                        articles.add(article);
+                    }
+                    if (listener != null && articles.size() - delivered >= PARSE_BATCH_SIZE) {
+                        listener.onArticlesParsed(
+                                new ArrayList<>(articles.subList(delivered, articles.size())));
+                        delivered = articles.size();
+                    }
+                }
+                reader.endArray();
+                // The last batch may be smaller
+                if (listener != null && articles.size() > delivered) {
+                    listener.onArticlesParsed(
+                            new ArrayList<>(articles.subList(delivered, articles.size())));
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read a single entry of the "results" array.
+     *
+     * @param buffer holding the text of the article
+     * @return the {@link NewsArticle}, or null if the entry is missing one of the fields we use
+     */
+    private static NewsArticle readArticle(JsonStreamReader reader, ArticleBuffer buffer)
+            throws IOException {
+        String webTitle = null;
+        String webUrl = null;
+        String thumbnailUrl = null;
+        String sectionName = null;
+        String publicationDate = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("webTitle".equals(name)) {
+                webTitle = nextStringOrNull(reader);
+            } else if ("webUrl".equals(name)) {
+                webUrl = nextStringOrNull(reader);
+            } else if ("sectionName".equals(name)) {
+                sectionName = nextStringOrNull(reader);
+            } else if ("webPublicationDate".equals(name)) {
+                publicationDate = nextStringOrNull(reader);
+            } else if ("fields".equals(name) && reader.isNextObject()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("thumbnail".equals(reader.nextName())) {
+                        thumbnailUrl = nextStringOrNull(reader);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (webTitle == null || webUrl == null || thumbnailUrl == null) {
+            Log.e(LOG_TAG, "Skipping article with missing fields: " + webUrl);
+            return null;
+        }
+        return buffer.add(webTitle, sectionName != null ? sectionName : "", webUrl,
+                thumbnailUrl, parsePublicationDate(publicationDate));
+    }
+
+    /**
+     * Return the bodies of the articles read from the JSON response of a request made with
+     * "show-fields=body", by web URL, in the order of the response. As with
+     * {@link #extractArticles(InputStream)}, a response cut short or malformed keeps the
+     * bodies read before the problem.
+     */
+    static Map<String, String> extractArticleBodies(InputStream inputStream) throws IOException {
+        Map<String, String> bodies = new LinkedHashMap<>();
+
+        JsonStreamReader reader =
+                mJsonReaderFactory.create(new InputStreamReader(inputStream, "UTF-8"));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("response".equals(reader.nextName())) {
+                    readBodiesResponse(reader, bodies);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | IOException e) {
+            Log.e(LOG_TAG, "Problem parsing the article bodies JSON results", e);
+        }
+        return bodies;
+    }
+
+    /**
+     * Read the "response" object of a "show-fields=body" request, adding the body of each
+     * entry of its "results" array that has one.
+     */
+    private static void readBodiesResponse(JsonStreamReader reader, Map<String, String> bodies)
+            throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"results".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String webUrl = null;
+                String body = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("webUrl".equals(name)) {
+                        webUrl = nextStringOrNull(reader);
+                    } else if ("fields".equals(name) && reader.isNextObject()) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if ("body".equals(reader.nextName())) {
+                                body = nextStringOrNull(reader);
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (webUrl != null && body != null && !body.isEmpty()) {
+                    bodies.put(webUrl, body);
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Returns the time, in milliseconds since the epoch, of a "webPublicationDate" value such
+     * as "2017-12-27T20:50:38Z", or 0 if it is missing or not in that format.
+     */
+    static long parsePublicationDate(String publicationDate) {
+        if (TextUtils.isEmpty(publicationDate)) {
+            return 0;
+        }
+        try {
+            return PUBLICATION_DATE_FORMAT.get().parse(publicationDate).getTime();
+        } catch (ParseException e) {
+            Log.e(LOG_TAG, "Problem parsing publication date " + publicationDate, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the next string value, or null (consuming it) if the next value is not a string.
+     */
+    private static String nextStringOrNull(JsonStreamReader reader) throws IOException {
+        if (reader.isNextString()) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
     /**
      * This method creates  URL object from a given string
      *
@@ -147,60 +552,296 @@ public final class QueryUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String as the response.
+     * Make an HTTP request to the given URL and return a {@link FetchResult} holding the
+     * list of {@link NewsArticle}s parsed from the response.
+     *
+     * If a {@link NewsResponseCache} is installed, a fresh cached response is used without
+     * touching the network, and a stale one is revalidated with a conditional request so a
+     * 304 response reuses the stored body and the articles already parsed from it.
+     *
+     * The {@link FetchResilience} picks the timeouts and retries requests that failed in a way
+     * that may be temporary. If the request still fails, or the API is considered unhealthy
+     * and no request is made at all, an expired cached response is used if there is one.
      */
-    private static String makeHttpRequest(URL url) throws IOException {
+    private static FetchResult makeHttpRequest(URL url, OnArticlesParsedListener listener) {
 
-        String jsonResponseString = "";
+        long startNanos = System.nanoTime();
 
         // If the URL is null, then return early.
         if (url == null) {
-            return jsonResponseString;
+            return new FetchResult(null, FetchResult.NO_RESPONSE, FetchResult.Source.NETWORK,
+                    0, 0, 0, 0, new MalformedURLException("No request URL"));
         }
 
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream = null;
+        String urlString = url.toString();
+        NewsResponseCache cache = NewsResponseCache.getInstalled();
+        NewsResponseCache.Entry cachedEntry = cache != null ? cache.get(urlString) : null;
+
+        // If the cached response is still fresh, there is no need to contact the server.
+        if (cachedEntry != null && cachedEntry.isFresh(System.currentTimeMillis())) {
+            List<NewsArticle> articles = readCachedArticles(cachedEntry);
+            if (articles != null) {
+                cache.recordHit();
+                return new FetchResult(articles, HttpURLConnection.HTTP_OK,
+                        FetchResult.Source.CACHE, elapsedMillis(startNanos), 0, 0, 0, null);
+            }
+        }
 
-        try {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds */);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+        // While the API is unhealthy, don't keep the user waiting for a request that is
+        // likely to fail.
+        FetchResilience resilience = mResilience;
+        if (!resilience.allowRequest()) {
+            Log.i(LOG_TAG, "makeHttpRequest(): circuit open, not requesting " + urlString);
+            return useStaleCache(cachedEntry, new FetchResult(null, FetchResult.NO_RESPONSE,
+                    FetchResult.Source.NETWORK, elapsedMillis(startNanos), 0, 0, 0,
+                    new FetchResilience.CircuitOpenException()));
+        }
+
+        // An attempt cut off mid-body may have handed over articles already; its retry
+        // starts the response over, so they are only handed over once
+        if (listener != null) {
+            listener = new DistinctArticlesListener(listener);
+        }
 
-            int responseCode = urlConnection.getResponseCode();
+        FetchResult result;
+        long wireByteCount = 0;
+        long connectMillis = 0;
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            result = attemptHttpRequest(url, cache, cachedEntry, resilience, attempt, listener);
+            wireByteCount += result.getWireByteCount();
+            connectMillis += result.getConnectMillis();
+            if (!resilience.shouldRetry(result, attempt, elapsedMillis(startNanos))) {
+                break;
+            }
+
+            long backoffMillis = resilience.getBackoffMillis(attempt);
+            Log.i(LOG_TAG, "makeHttpRequest(): attempt " + attempt + " failed with "
+                    + result.getResponseCode() + ", retrying in " + backoffMillis + "ms");
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        resilience.recordResult(result);
 
-            mResponseCode = responseCode;
+        result = new FetchResult(result.getArticles(), result.getResponseCode(),
+                result.getSource(), elapsedMillis(startNanos), result.getByteCount(),
+                wireByteCount, connectMillis, result.getError());
+        if (FetchResilience.isTransientFailure(result)) {
+            return useStaleCache(cachedEntry, result);
+        }
+        return result;
+    }
+
+    /**
+     * Make a single attempt of the HTTP request to the given URL.
+     *
+     * @param cache installed, or null
+     * @param cachedEntry stale cached response to revalidate, or null
+     * @param resilience picks the timeouts and learns the latency of the request
+     * @param attempt number of the attempt, 1 for the first one
+     * @param listener receiving the articles as they are parsed, or null
+     */
+    private static FetchResult attemptHttpRequest(URL url, NewsResponseCache cache,
+                                                  NewsResponseCache.Entry cachedEntry,
+                                                  FetchResilience resilience, int attempt,
+                                                  OnArticlesParsedListener listener) {
+
+        long startNanos = System.nanoTime();
+        long requestTime = System.currentTimeMillis();
+
+        List<NewsArticle> articles = null;
+        int responseCode = FetchResult.NO_RESPONSE;
+        FetchResult.Source source = FetchResult.Source.NETWORK;
+        GuardianHttpClient.CountingInputStream inputStream = null;
+        Exception error = null;
+        GuardianHttpClient.Response response = null;
+
+        Map<String, String> headers = new HashMap<>();
+        if (cachedEntry != null) {
+            if (cachedEntry.getEtag() != null) {
+                headers.put("If-None-Match", cachedEntry.getEtag());
+            }
+            if (cachedEntry.getLastModified() != null) {
+                headers.put("If-Modified-Since", cachedEntry.getLastModified());
+            }
+        }
+
+        try {
+            response = GuardianHttpClient.get().get(url, headers,
+                    resilience.getConnectTimeoutMillis(attempt),
+                    resilience.getReadTimeoutMillis(attempt));
+
+            responseCode = response.getResponseCode();
+            resilience.recordLatency(response.getConnectMillis(),
+                    response.getTimeToFirstByteMillis());
+
+            // If the server confirmed the cached response is still valid (response code 304),
+            // reuse it instead of downloading and parsing it again.
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedEntry != null) {
+                cache.recordRevalidation(cachedEntry,
+                        NewsResponseCache.computeExpiresAt(response, requestTime));
+                articles = readCachedArticles(cachedEntry);
+                if (articles != null) {
+                    responseCode = HttpURLConnection.HTTP_OK;
+                    source = FetchResult.Source.REVALIDATED_CACHE;
+                }
 
             // If the request was successful (response code 200),
             // then read the input stream and parse the response.
-            if (responseCode == 200) {
-                inputStream = urlConnection.getInputStream();
-                jsonResponseString = readFromStream(inputStream);
+            } else if (responseCode == 200) {
+                inputStream = new GuardianHttpClient.CountingInputStream(response.getBody());
+                long expiresAt = cache != null
+                        ? NewsResponseCache.computeExpiresAt(response, requestTime) : -1;
+                if (expiresAt >= 0) {
+                    // Store the body in the cache while it is being parsed
+                    File tempBody = cache.newTempFile();
+                    TeeInputStream teeStream =
+                            new TeeInputStream(inputStream, new FileOutputStream(tempBody));
+                    boolean parsed = false;
+                    try {
+                        articles = parseResponse(teeStream, listener);
+                        parsed = true;
+                    } finally {
+                        // Only a body parsed to its end is stored, or a page cut short would
+                        // be served as fresh without asking the server again
+                        if (parsed && teeStream.finish()) {
+                            cache.put(url.toString(), tempBody, response.getHeaderField("ETag"),
+                                    response.getHeaderField("Last-Modified"), expiresAt,
+                                    articles);
+                        } else {
+                            teeStream.abort();
+                            if (!tempBody.delete()) {
+                                Log.e(LOG_TAG, "Could not delete incomplete cache file "
+                                        + tempBody);
+                            }
+                        }
+                    }
+                } else {
+                    articles = parseResponse(inputStream, listener);
+                }
             } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
+                Log.e(LOG_TAG, "Error response code: " + responseCode);
             }
         } catch (IOException e) {
             Log.e(LOG_TAG, "Problem retrieving the news article JSON results. ", e);
+            error = e;
+            // A body that couldn't be read to its end, e.g. the connection dropped or timed
+            // out mid-stream, is no response at all, so the request is retried. A complete
+            // document of another shape would come back the same.
+            if (responseCode == HttpURLConnection.HTTP_OK
+                    && !(e instanceof UnexpectedResponseException)) {
+                responseCode = FetchResult.NO_RESPONSE;
+            }
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            // Closing the response hands the connection back to the pool, so the next
+            // request to the API can reuse it.
+            if (response != null) {
+                response.close();
+            }
+        }
+
+        long byteCount = inputStream != null ? inputStream.getCount() : 0;
+        long wireByteCount = response != null ? response.getWireByteCount() : 0;
+        long connectMillis = response != null ? response.getConnectMillis() : 0;
+        return new FetchResult(articles, responseCode, source, elapsedMillis(startNanos),
+                byteCount, wireByteCount, connectMillis, error);
+    }
+
+    /**
+     * Returns the articles of the given expired cached response in place of a failed
+     * request, or the failed result if there is no usable cached response.
+     */
+    private static FetchResult useStaleCache(NewsResponseCache.Entry cachedEntry,
+                                             FetchResult failure) {
+        List<NewsArticle> articles =
+                cachedEntry != null ? readCachedArticles(cachedEntry) : null;
+        if (articles == null) {
+            return failure;
+        }
+        Log.i(LOG_TAG, "useStaleCache(): request failed, using the expired cached response");
+        return new FetchResult(articles, HttpURLConnection.HTTP_OK,
+                FetchResult.Source.STALE_CACHE, failure.getDurationMillis(), 0,
+                failure.getWireByteCount(), failure.getConnectMillis(), failure.getError());
+    }
+
+    /**
+     * Returns the number of milliseconds elapsed since the given {@link System#nanoTime()}.
+     */
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * Parse the JSON response read from the given {@link InputStream}, using the parser
+     * selected with {@link #setUseStreamingParser(boolean)}.
+     *
+     * @param listener receiving the articles as they are parsed, or null; only the streaming
+     *                 parser calls it
+     * @throws IOException if the response could not be read and parsed to its end
+     */
+    private static List<NewsArticle> parseResponse(InputStream inputStream,
+                                                   OnArticlesParsedListener listener)
+            throws IOException {
+        long startNanos = PipelineMetrics.start();
+        List<NewsArticle> articles;
+        if (mUseStreamingParser) {
+            articles = extractArticles(inputStream, listener);
+        } else {
+            String jsonResponse = readFromStream(inputStream);
+            PipelineMetrics.record(PipelineMetrics.Metric.READ_FROM_STREAM, startNanos);
+            startNanos = PipelineMetrics.start();
+            articles = new ArrayList<>();
+            try {
+                readArticles(jsonResponse, articles);
+            } catch (JSONException e) {
+                // The tree doesn't tell a cut off document from one of another shape
+                throw new IOException("Problem parsing the news article JSON results", e);
             }
+        }
+        PipelineMetrics.record(PipelineMetrics.Metric.EXTRACT_ARTICLES, startNanos);
+        return articles;
+    }
+
+    /**
+     * Returns the articles of a cached response, parsing the stored body if that has not
+     * happened yet, or null if the body can no longer be read.
+     */
+    private static List<NewsArticle> readCachedArticles(NewsResponseCache.Entry entry) {
+        List<NewsArticle> articles = entry.getArticles();
+        if (articles != null) {
+            return articles;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(entry.getBodyFile());
+            articles = parseResponse(inputStream, null);
+            entry.setArticles(articles);
+            return articles;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading cached news article JSON results. ", e);
+            return null;
+        } finally {
             if (inputStream != null) {
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies than an IOException
-                // could be thrown.
-                inputStream.close();
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem closing cached response. ", e);
+                }
             }
         }
-        return jsonResponseString;
     }
 
     /**
      * Convert the {@link InputStream} into a String which contains the
      * whole JSON response from the server.
      */
-    private static String readFromStream(InputStream inputStream) throws IOException {
+    static String readFromStream(InputStream inputStream) throws IOException {
         StringBuilder output = new StringBuilder();
 
         if (inputStream != null) {
@@ -218,10 +859,113 @@ public final class QueryUtils {
     }
 
     /**
-     * Returns the HTTP request response code for a this request.
-     * @return the HTTP response code for this request
+     * Hands the articles of the attempts of one request to a listener, dropping those it
+     * already received from an earlier attempt.
      */
-    public static int getHttpRequestResponseCode() {
-        return mResponseCode;
+    private static final class DistinctArticlesListener implements OnArticlesParsedListener {
+
+        private final OnArticlesParsedListener mListener;
+
+        /** Web URLs of the articles handed over so far */
+        private final Set<String> mUrls = new HashSet<>();
+
+        DistinctArticlesListener(OnArticlesParsedListener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public void onArticlesParsed(List<NewsArticle> articles) {
+            List<NewsArticle> distinct = new ArrayList<>(articles.size());
+            for (NewsArticle article : articles) {
+                if (mUrls.add(article.getInfoUrl())) {
+                    distinct.add(article);
+                }
+            }
+            if (!distinct.isEmpty()) {
+                mListener.onArticlesParsed(distinct);
+            }
+        }
+    }
+
+    /**
+     * {@link InputStream} that copies every byte read from it into an {@link OutputStream},
+     * so a response can be stored while it is being parsed.
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream mCopy;
+
+        /** Whether every byte read so far was copied. */
+        private boolean mCopyComplete = true;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            mCopy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                copy(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                copy(buffer, offset, read);
+            }
+            return read;
+        }
+
+        private void copy(byte[] buffer, int offset, int count) {
+            if (!mCopyComplete) {
+                return;
+            }
+            try {
+                mCopy.write(buffer, offset, count);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem copying response to the cache. ", e);
+                mCopyComplete = false;
+            }
+        }
+
+        /**
+         * Closes the copy without reading the rest of the stream, when it won't be kept.
+         */
+        void abort() {
+            mCopyComplete = false;
+            try {
+                mCopy.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing the copy of the response. ", e);
+            }
+        }
+
+        /**
+         * Reads whatever the parser left unread and closes the copy.
+         *
+         * @return true if the whole stream was read and copied
+         */
+        boolean finish() {
+            byte[] buffer = new byte[4096];
+            try {
+                while (read(buffer, 0, buffer.length) != -1) {
+                    // Keep copying until the end of the stream
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem reading the end of the response. ", e);
+                mCopyComplete = false;
+            }
+            try {
+                mCopy.close();
+            } catch (IOException e) {
+                mCopyComplete = false;
+            }
+            return mCopyComplete;
+        }
     }
 }
@@ -0,0 +1,143 @@
+package com.example.android.ukfootballnews;
+
+import android.app.LoaderManager;
+import android.content.Context;
+import android.content.Intent;
+import android.content.Loader;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.method.LinkMovementMethod;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+/**
+ * Shows an article whose body was downloaded ahead of time by the
+ * {@link ArticleBodyPrefetcher}, straight from the device. If the body is no longer stored,
+ * the article is opened in a web browser instead.
+ */
+public class ReaderActivity extends AppCompatActivity implements
+        LoaderManager.LoaderCallbacks<CharSequence> {
+
+    /** Extras of the intent, describing the article to show */
+    private static final String EXTRA_TITLE = "title";
+    private static final String EXTRA_SECTION = "section";
+    private static final String EXTRA_WEB_URL = "web_url";
+
+    /** Extra holding when the article was tapped, for {@link PipelineMetrics} */
+    private static final String EXTRA_OPENED_NANOS = "opened_nanos";
+
+    /** Constant value for the ID of the loader reading the body. */
+    private static final int BODY_LOADER_ID = 1;
+
+    /** Web URL of the article shown */
+    private String mWebUrl;
+
+    /** Shows the body of the article */
+    private TextView mBodyTextView;
+
+    /** Loading progress indicator */
+    private ProgressBar mProgressIndicator;
+
+    /**
+     * Returns the intent showing the given article, whose body must be stored.
+     *
+     * @param context of the activity starting the reader
+     * @param article to show
+     */
+    public static Intent newIntent(Context context, NewsArticle article) {
+        return new Intent(context, ReaderActivity.class)
+                .putExtra(EXTRA_TITLE, article.getTitle())
+                .putExtra(EXTRA_SECTION, article.getSection())
+                .putExtra(EXTRA_WEB_URL, article.getInfoUrl())
+                .putExtra(EXTRA_OPENED_NANOS, PipelineMetrics.start());
+    }
+
+    /**
+     * Send an intent to a web browser to open the website with the complete article.
+     *
+     * @return true if a browser was found
+     */
+    public static boolean openInBrowser(Context context, String webUrl) {
+        // Convert the String URL into a URI object (to pass into the Intent constructor)
+        Uri articleUri = Uri.parse(webUrl);
+
+        // Create a new intent to view the article URI
+        Intent websiteIntent = new Intent(Intent.ACTION_VIEW, articleUri);
+
+        //Check if activity can be started, if so start it
+        if (websiteIntent.resolveActivity(context.getPackageManager()) != null) {
+            context.startActivity(websiteIntent);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_reader);
+
+        Intent intent = getIntent();
+        mWebUrl = intent.getStringExtra(EXTRA_WEB_URL);
+
+        TextView titleTextView = (TextView) findViewById(R.id.reader_title_text_view);
+        titleTextView.setText(intent.getStringExtra(EXTRA_TITLE));
+
+        TextView sectionTextView = (TextView) findViewById(R.id.reader_section_text_view);
+        sectionTextView.setText(getString(R.string.section_label,
+                intent.getStringExtra(EXTRA_SECTION)));
+
+        mBodyTextView = (TextView) findViewById(R.id.reader_body_text_view);
+        // Let the links of the body be followed
+        mBodyTextView.setMovementMethod(LinkMovementMethod.getInstance());
+
+        mProgressIndicator = (ProgressBar) findViewById(R.id.reader_progress_indicator);
+
+        getLoaderManager().initLoader(BODY_LOADER_ID, null, this);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_reader, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_open_in_browser) {
+            openInBrowser(this, mWebUrl);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    public Loader<CharSequence> onCreateLoader(int id, Bundle args) {
+        return new ArticleBodyLoader(this, mWebUrl);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<CharSequence> loader, CharSequence body) {
+        mProgressIndicator.setVisibility(View.GONE);
+
+        // The body was removed since the article was tapped, so show the web page instead
+        if (body == null) {
+            openInBrowser(this, mWebUrl);
+            finish();
+            return;
+        }
+
+        mBodyTextView.setText(body);
+        PipelineMetrics.record(PipelineMetrics.Metric.READER_OPEN,
+                getIntent().getLongExtra(EXTRA_OPENED_NANOS, 0));
+    }
+
+    @Override
+    public void onLoaderReset(Loader<CharSequence> loader) {
+        mBodyTextView.setText(null);
+    }
+}
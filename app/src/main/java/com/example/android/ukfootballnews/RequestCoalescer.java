@@ -0,0 +1,169 @@
+package com.example.android.ukfootballnews;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent requests for the same query share a single request (single flight). The
+ * first caller for a normalized URL makes the request; callers asking for the same URL while
+ * it is in flight wait for it and get their own copy of its result instead of making another
+ * request and parsing the same response again.
+ */
+public final class RequestCoalescer {
+
+    /** Requests in flight, by normalized URL */
+    private final ConcurrentMap<String, Flight> mFlights = new ConcurrentHashMap<>();
+
+    /** Number of requests asked for */
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    /** Number of requests that joined one already in flight */
+    private final AtomicLong mCoalescedCount = new AtomicLong();
+
+    /**
+     * Returns the result of the request for the given URL. If the same request is already in
+     * flight, waits for it instead of making another one.
+     *
+     * @param url of the request
+     * @param request makes the request; only called if none is in flight for the URL
+     */
+    public FetchResult execute(String url, Callable<FetchResult> request) {
+        mRequestCount.incrementAndGet();
+        String key = normalizeUrl(url);
+
+        Flight flight = new Flight();
+        Flight inFlight = mFlights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            mCoalescedCount.incrementAndGet();
+            return inFlight.await();
+        }
+
+        FetchResult result = null;
+        try {
+            result = request.call();
+            return result;
+        } catch (Exception e) {
+            result = new FetchResult(null, FetchResult.NO_RESPONSE, FetchResult.Source.NETWORK,
+                    0, 0, e);
+            return result;
+        } finally {
+            // Later callers make a new request, so they can't get a result older than theirs
+            mFlights.remove(key, flight);
+            flight.complete(result);
+        }
+    }
+
+    /**
+     * Returns the number of requests asked for.
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Returns the number of requests that were not made because the same request was already
+     * in flight.
+     */
+    public long getCoalescedCount() {
+        return mCoalescedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCoalescer{requests=" + getRequestCount()
+                + ", coalesced=" + getCoalescedCount() + "}";
+    }
+
+    /**
+     * Returns the given URL in a form where equivalent URLs are equal: lower-case scheme and
+     * host, no default port or fragment, and the query parameters sorted. The order of the
+     * parameters doesn't matter to the API.
+     */
+    static String normalizeUrl(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return url;
+        }
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return url;
+        }
+
+        String scheme = uri.getScheme().toLowerCase(Locale.US);
+        StringBuilder normalized = new StringBuilder(url.length())
+                .append(scheme).append("://").append(uri.getHost().toLowerCase(Locale.US));
+        int port = uri.getPort();
+        if (port != -1 && !(port == 80 && "http".equals(scheme))
+                && !(port == 443 && "https".equals(scheme))) {
+            normalized.append(':').append(port);
+        }
+        normalized.append(uri.getRawPath() == null || uri.getRawPath().isEmpty()
+                ? "/" : uri.getRawPath());
+
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            String[] parameters = query.split("&");
+            Arrays.sort(parameters);
+            normalized.append('?');
+            for (int i = 0; i < parameters.length; i++) {
+                if (i > 0) {
+                    normalized.append('&');
+                }
+                normalized.append(parameters[i]);
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * A request in flight, whose result is handed to every caller waiting for it.
+     */
+    private static final class Flight {
+
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        private volatile FetchResult mResult;
+
+        void complete(FetchResult result) {
+            mResult = result;
+            mDone.countDown();
+        }
+
+        /**
+         * Waits for the request and returns a copy of its result, with its own list of
+         * articles, so callers can't affect each other. Nothing was downloaded for this
+         * caller, so the copy counts no bytes.
+         */
+        FetchResult await() {
+            long startNanos = System.nanoTime();
+            try {
+                mDone.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new FetchResult(null, FetchResult.NO_RESPONSE,
+                        FetchResult.Source.NETWORK, 0, 0, e);
+            }
+            long waitMillis = (System.nanoTime() - startNanos) / 1000000;
+
+            FetchResult result = mResult;
+            if (result == null) {
+                return new FetchResult(null, FetchResult.NO_RESPONSE,
+                        FetchResult.Source.NETWORK, waitMillis, 0, null);
+            }
+            return new FetchResult(
+                    result.getArticles() != null
+                            ? new ArrayList<>(result.getArticles()) : null,
+                    result.getResponseCode(), result.getSource(), waitMillis, 0, 0, 0,
+                    result.getError());
+        }
+    }
+}
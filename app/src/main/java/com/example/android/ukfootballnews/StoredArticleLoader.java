@@ -0,0 +1,53 @@
+package com.example.android.ukfootballnews;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.ukfootballnews.data.ArticleStore;
+
+import java.util.List;
+
+/**
+ * Custom AsyncTaskLoader that reads the articles kept in the {@link ArticleStore} in the
+ * background, so they can be shown without waiting for the network.
+ */
+
+public class StoredArticleLoader extends AsyncTaskLoader<List<NewsArticle>> {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = StoredArticleLoader.class.getSimpleName();
+
+    /** Articles read on the last load, delivered again instead of reading the store twice */
+    private List<NewsArticle> mArticles;
+
+    /**
+     * Constructs a new {@link StoredArticleLoader}.
+     *
+     * @param context of the activity
+     */
+    public StoredArticleLoader(Context context) {
+        super(context);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mArticles != null) {
+            deliverResult(mArticles);
+        } else {
+            forceLoad();
+        }
+    }
+
+    @Override
+    public List<NewsArticle> loadInBackground() {
+        Log.i(LOG_TAG, "loadInBackground(): reading stored articles");
+        return ArticleStore.get(getContext()).loadArticles();
+    }
+
+    @Override
+    public void deliverResult(List<NewsArticle> articles) {
+        mArticles = articles;
+        super.deliverResult(articles);
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.android.ukfootballnews;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.StatsSnapshot;
+import com.squareup.picasso.UrlConnectionDownloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loads article thumbnails at the size they are shown at.
+ *
+ * Guardian images are requested in the smallest rendition that still covers the thumbnail
+ * width, or the smallest one of all on a constrained network (see {@link FetchPolicy}), and
+ * are decoded straight to the thumbnail size. Decoded thumbnails are kept in a
+ * bounded memory cache, and the downloaded images in a disk cache. Thumbnails of the rows
+ * about to be scrolled into view can be prefetched, and the prefetches for rows that moved
+ * away are cancelled.
+ */
+public final class ThumbnailLoader {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ThumbnailLoader.class.getSimpleName();
+
+    /**
+     * Widths, in pixels, of the renditions the Guardian image host keeps of every image,
+     * smallest first.
+     */
+    private static final int[] RENDITION_WIDTHS = {140, 500, 1000, 2000};
+
+    /** Matches Guardian image URLs ending in the width of the rendition, e.g. ".../500.jpg". */
+    private static final Pattern RENDITION_PATTERN =
+            Pattern.compile("^(https?://(?:i|media)\\.guim\\.co\\.uk/.*/)(\\d+)(\\.\\w+)$");
+
+    /** Header the platform's HTTP cache adds to tell where a response came from */
+    private static final String RESPONSE_SOURCE_HEADER = "X-Android-Response-Source";
+
+    /** Largest share of the heap used by the memory cache of decoded thumbnails. */
+    private static final int MEMORY_CACHE_HEAP_FRACTION = 16;
+
+    /** The single thumbnail loader of the app. */
+    private static ThumbnailLoader mInstance;
+
+    private final Picasso mPicasso;
+
+    /** Picks the rendition depending on the network */
+    private final FetchPolicy mFetchPolicy;
+
+    /** Size, in pixels, thumbnails are shown at */
+    private final int mTargetWidth;
+    private final int mTargetHeight;
+
+    /** URLs (after picking the rendition) of the thumbnails being prefetched */
+    private final Set<String> mPrefetchingUrls = new HashSet<>();
+
+    private ThumbnailLoader(Context context) {
+        int memoryCacheSize = (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_FRACTION);
+
+        // The downloader keeps the downloaded images in an HTTP disk cache
+        mPicasso = new Picasso.Builder(context)
+                .memoryCache(new LruCache(memoryCacheSize))
+                .downloader(new MeteredDownloader(context))
+                .build();
+        mFetchPolicy = FetchPolicy.get(context);
+
+        mTargetWidth = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_width);
+        mTargetHeight = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_height);
+    }
+
+    /**
+     * Returns the thumbnail loader of the app. Must be called on the main thread.
+     *
+     * @param context of the app
+     */
+    public static ThumbnailLoader get(Context context) {
+        if (mInstance == null) {
+            mInstance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * Load the thumbnail at the given URL into the given image view, replacing any request
+     * still running for that view.
+     */
+    public void load(String thumbnailUrl, ImageView imageView) {
+        if (TextUtils.isEmpty(thumbnailUrl)) {
+            mPicasso.cancelRequest(imageView);
+            imageView.setImageResource(R.mipmap.ic_launcher);
+            return;
+        }
+
+        mPicasso.load(getRenditionUrl(thumbnailUrl))
+                .resize(mTargetWidth, mTargetHeight)
+                .centerCrop()
+                .config(Bitmap.Config.RGB_565)
+                .placeholder(R.mipmap.ic_launcher)
+                .into(imageView);
+    }
+
+    /**
+     * Cancel the request loading a thumbnail into the given image view, e.g. because its row
+     * scrolled out of view.
+     */
+    public void cancel(ImageView imageView) {
+        mPicasso.cancelRequest(imageView);
+    }
+
+    /**
+     * Prefetch the thumbnails at the given URLs into the caches, at low priority, cancelling
+     * the prefetches started earlier for thumbnails no longer in the list.
+     *
+     * @param thumbnailUrls of the rows expected to be scrolled into view next
+     */
+    public void prefetch(List<String> thumbnailUrls) {
+        Set<String> urls = new HashSet<>();
+        for (String thumbnailUrl : thumbnailUrls) {
+            if (!TextUtils.isEmpty(thumbnailUrl)) {
+                urls.add(getRenditionUrl(thumbnailUrl));
+            }
+        }
+
+        // Stop prefetching for rows that moved away
+        for (String url : mPrefetchingUrls) {
+            if (!urls.contains(url)) {
+                mPicasso.cancelTag(new PrefetchTag(url));
+            }
+        }
+
+        for (final String url : urls) {
+            if (mPrefetchingUrls.contains(url)) {
+                continue;
+            }
+            mPicasso.load(url)
+                    .resize(mTargetWidth, mTargetHeight)
+                    .centerCrop()
+                    .config(Bitmap.Config.RGB_565)
+                    .priority(Picasso.Priority.LOW)
+                    .tag(new PrefetchTag(url))
+                    .fetch();
+        }
+
+        mPrefetchingUrls.clear();
+        mPrefetchingUrls.addAll(urls);
+    }
+
+    /**
+     * Log how many bytes were downloaded and decoded, and how full the memory cache is.
+     */
+    public void logStats() {
+        StatsSnapshot stats = mPicasso.getSnapshot();
+        Log.i(LOG_TAG, "Thumbnails: " + stats.downloadCount + " downloads, "
+                + stats.totalDownloadSize + " bytes downloaded, "
+                + stats.totalOriginalBitmapSize + " bytes decoded, "
+                + stats.totalTransformedBitmapSize + " bytes after resizing, memory cache "
+                + stats.size + "/" + stats.maxSize + " bytes, "
+                + stats.cacheHits + " hits, " + stats.cacheMisses + " misses");
+    }
+
+    /**
+     * Returns the URL of the smallest rendition of a Guardian image that is at least as wide
+     * as the thumbnail, or of the smallest rendition of all on a constrained network, or the
+     * given URL if it is not a Guardian rendition URL.
+     */
+    String getRenditionUrl(String thumbnailUrl) {
+        return getRenditionUrl(thumbnailUrl, mTargetWidth,
+                mFetchPolicy.shouldUseLowResolutionThumbnails());
+    }
+
+    /**
+     * Returns the URL of the rendition of a Guardian image to show at the given width.
+     *
+     * @param lowResolution true for the smallest rendition, whatever the width
+     */
+    static String getRenditionUrl(String thumbnailUrl, int targetWidth, boolean lowResolution) {
+        Matcher matcher = RENDITION_PATTERN.matcher(thumbnailUrl);
+        if (!matcher.matches()) {
+            return thumbnailUrl;
+        }
+
+        int width;
+        try {
+            width = Integer.parseInt(matcher.group(2));
+        } catch (NumberFormatException e) {
+            return thumbnailUrl;
+        }
+
+        for (int renditionWidth : RENDITION_WIDTHS) {
+            if ((lowResolution || renditionWidth >= targetWidth) && renditionWidth < width) {
+                return matcher.group(1) + renditionWidth + matcher.group(3);
+            }
+        }
+        return thumbnailUrl;
+    }
+
+    /**
+     * Downloads images like {@link UrlConnectionDownloader}, feeding the images downloaded
+     * from the network to the {@link BandwidthMeter}.
+     */
+    private static final class MeteredDownloader extends UrlConnectionDownloader {
+
+        /** Connection opened by the current download on each thread */
+        private final ThreadLocal<HttpURLConnection> mConnection = new ThreadLocal<>();
+
+        MeteredDownloader(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected HttpURLConnection openConnection(Uri uri) throws IOException {
+            HttpURLConnection connection = super.openConnection(uri);
+            mConnection.set(connection);
+            return connection;
+        }
+
+        @Override
+        public Response load(Uri uri, int networkPolicy) throws IOException {
+            Response response = super.load(uri, networkPolicy);
+            HttpURLConnection connection = mConnection.get();
+            mConnection.remove();
+
+            // Images read from the HTTP disk cache say nothing about the network
+            InputStream stream = response.getInputStream();
+            String responseSource = connection != null
+                    ? connection.getHeaderField(RESPONSE_SOURCE_HEADER) : null;
+            if (stream == null || (responseSource != null
+                    && responseSource.startsWith("CACHE"))) {
+                return response;
+            }
+            return new Response(new BandwidthMeter.MeteredInputStream(stream,
+                    response.getContentLength()), false, response.getContentLength());
+        }
+    }
+
+    /**
+     * Tag of a prefetch request, so prefetches can be cancelled one by one without touching
+     * the requests loading thumbnails into image views.
+     */
+    private static final class PrefetchTag {
+        private final String mUrl;
+
+        PrefetchTag(String url) {
+            mUrl = url;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof PrefetchTag && ((PrefetchTag) other).mUrl.equals(mUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return mUrl.hashCode();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.android.ukfootballnews;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Typeface;
+import android.os.Process;
+import android.support.v4.content.ContextCompat;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Computes the text layout of the article titles on a background thread, before their rows
+ * are bound, so an {@link ArticleTitleView} only has to draw a ready layout instead of
+ * measuring and breaking the title into lines on the main thread while the list is flung.
+ *
+ * Layouts are kept by article and width: the width is the one the title views report when
+ * they are measured, so nothing is computed before the first row was laid out, and a new
+ * width (e.g. after a rotation) simply misses the layouts computed for the old one. Every
+ * layout is dropped when the configuration changes, since the font scale, density or locale
+ * may have changed with it.
+ */
+public final class TitleLayoutCache {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = TitleLayoutCache.class.getSimpleName();
+
+    /** Maximum number of lines of a title, the last one ellipsized */
+    static final int MAX_LINES = 3;
+
+    /** Number of layouts kept, several screens of rows */
+    private static final int MAX_LAYOUTS = 300;
+
+    /** Thread the layouts are computed on */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, LOG_TAG);
+                }
+            });
+
+    /** The single title layout cache of the app. */
+    private static TitleLayoutCache mInstance;
+
+    private final Context mContext;
+
+    /** Layouts by {@link #getKey(String, int)} */
+    private final LruCache<String, Entry> mLayouts = new LruCache<>(MAX_LAYOUTS);
+
+    /** Keys of the layouts waiting to be computed */
+    private final Set<String> mPendingKeys = Collections.synchronizedSet(new HashSet<String>());
+
+    /** Paint of the titles, used on the main thread */
+    private TextPaint mPaint;
+
+    /** Copy of {@link #mPaint} used on the background thread, since paints are not thread-safe */
+    private volatile TextPaint mBackgroundPaint;
+
+    /** Width the title views were last measured at, in pixels, or 0 before the first one */
+    private int mWidth;
+
+    /** Incremented when the configuration changes, so layouts computed before are dropped */
+    private volatile int mGeneration;
+
+    /** Titles bound with a ready layout, and titles that had to be laid out when measured */
+    private int mHitCount;
+    private int mMissCount;
+
+    private TitleLayoutCache(Context context) {
+        mContext = context;
+        createPaints();
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                mGeneration++;
+                mLayouts.evictAll();
+                mPendingKeys.clear();
+                createPaints();
+                mWidth = 0;
+            }
+
+            @Override
+            public void onLowMemory() {
+                mLayouts.evictAll();
+            }
+
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_MODERATE) {
+                    mLayouts.evictAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the title layout cache of the app. Must be called on the main thread.
+     *
+     * @param context of the app
+     */
+    public static TitleLayoutCache get(Context context) {
+        if (mInstance == null) {
+            mInstance = new TitleLayoutCache(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * Create the paints of the titles for the current configuration, matching the other text
+     * of the rows: sans-serif-medium at {@code R.dimen.title_text_size}.
+     */
+    private void createPaints() {
+        TextPaint paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        paint.density = mContext.getResources().getDisplayMetrics().density;
+        paint.setTextSize(mContext.getResources().getDimension(R.dimen.title_text_size));
+        paint.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
+        paint.setColor(ContextCompat.getColor(mContext, R.color.primaryTextColor));
+        mPaint = paint;
+        mBackgroundPaint = new TextPaint(paint);
+    }
+
+    /**
+     * Returns the width the title views were last measured at, or 0 before the first one.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Record the width a title view was measured at. Layouts are computed for that width
+     * from then on.
+     */
+    void setWidth(int width) {
+        if (width != mWidth) {
+            Log.i(LOG_TAG, "setWidth(): titles are " + width + "px wide");
+            mWidth = width;
+        }
+    }
+
+    /**
+     * Returns the layout of the title of the given article at the current width, or null if
+     * it was not computed (yet).
+     */
+    public Layout get(NewsArticle article) {
+        Entry entry = mWidth > 0 ? mLayouts.get(getKey(article.getInfoUrl(), mWidth)) : null;
+        // The title of an article may have been edited since
+        if (entry == null || !entry.title.equals(article.getTitle())) {
+            return null;
+        }
+        mHitCount++;
+        return entry.layout;
+    }
+
+    /**
+     * Compute on the background thread the layouts of the titles of the given articles that
+     * are not known yet, once the width is known. Must be called on the main thread.
+     */
+    public void precompute(List<NewsArticle> articles) {
+        final int width = mWidth;
+        if (width <= 0) {
+            return;
+        }
+
+        final List<NewsArticle> missing = new ArrayList<>(articles.size());
+        for (NewsArticle article : articles) {
+            String key = getKey(article.getInfoUrl(), width);
+            Entry entry = mLayouts.get(key);
+            if ((entry == null || !entry.title.equals(article.getTitle()))
+                    && mPendingKeys.add(key)) {
+                missing.add(article);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        final int generation = mGeneration;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                TextPaint paint = mBackgroundPaint;
+                for (NewsArticle article : missing) {
+                    String key = getKey(article.getInfoUrl(), width);
+                    // The configuration changed, so the paint or the width are outdated
+                    if (generation != mGeneration) {
+                        return;
+                    }
+                    Layout layout = build(article.getTitle(), paint, width);
+                    mLayouts.put(key, new Entry(article.getTitle(), layout));
+                    mPendingKeys.remove(key);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the layout of the given title at the given width, computed on the calling
+     * thread, for a title whose layout is not ready. Must be called on the main thread.
+     */
+    Layout buildNow(CharSequence title, int width) {
+        mMissCount++;
+        return build(title, mPaint, width);
+    }
+
+    /**
+     * Log how many titles were bound with a ready layout.
+     */
+    public void logStats() {
+        Log.i(LOG_TAG, "Title layouts: " + mHitCount + " ready, " + mMissCount
+                + " computed on the main thread, " + mLayouts.size() + " cached");
+    }
+
+    /**
+     * Returns the layout of the given text, broken into at most {@link #MAX_LINES} lines
+     * with the last one ellipsized, like a TextView with maxLines and ellipsize="end".
+     * StaticLayout only limits the number of lines from API 23, so longer titles are cut
+     * at the start of their last line and that line is ellipsized to the width.
+     */
+    private static Layout build(CharSequence text, TextPaint paint, int width) {
+        StaticLayout layout = new StaticLayout(text, paint, width,
+                Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+        if (layout.getLineCount() <= MAX_LINES) {
+            return layout;
+        }
+
+        int lastLineStart = layout.getLineStart(MAX_LINES - 1);
+        CharSequence lastLine = TextUtils.ellipsize(
+                text.subSequence(lastLineStart, text.length()), paint, width,
+                TextUtils.TruncateAt.END);
+        return new StaticLayout(TextUtils.concat(text.subSequence(0, lastLineStart), lastLine),
+                paint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+    }
+
+    private static String getKey(String webUrl, int width) {
+        return width + " " + webUrl;
+    }
+
+    /**
+     * Layout of a title, with the title it was computed for.
+     */
+    private static final class Entry {
+
+        final String title;
+        final Layout layout;
+
+        Entry(String title, Layout layout) {
+            this.title = title;
+            this.layout = layout;
+        }
+    }
+}
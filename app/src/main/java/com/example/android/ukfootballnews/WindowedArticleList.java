@@ -0,0 +1,419 @@
+package com.example.android.ukfootballnews;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * List of articles that only keeps a window of them in memory, however many it holds, so a
+ * feed scrolled through thousands of articles doesn't grow the heap.
+ *
+ * Articles are appended to a spill file as they are added, in chunks of
+ * {@link #CHUNK_SIZE} consecutive positions. The file holds the records their text is already
+ * encoded in (see {@link ArticleBuffer}), so no text is decoded to write an article or to read
+ * it back; the articles read back share the bytes of their chunk. Only the chunks accessed
+ * most recently, the ones around the rows on screen, are kept in memory; any other chunk is
+ * read back from the file when one of its articles is needed again. Apart from the window,
+ * the list only keeps the file offset of each chunk.
+ *
+ * {@link #get(int)} reads an evicted chunk on the calling thread; code running on the main
+ * thread should use {@link #peek(int)} and load the chunk in the background with
+ * {@link #load(int)}. The list can only be appended to, cleared, or prepended to, which
+ * rewrites the spill file. All methods are thread-safe. The spill file is deleted by
+ * {@link #close()}.
+ */
+public final class WindowedArticleList extends AbstractList<NewsArticle> {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = WindowedArticleList.class.getSimpleName();
+
+    /** Name of the directory, inside the app's cache dir, that holds the spill files. */
+    public static final String DIRECTORY_NAME = "article-window";
+
+    /** Number of consecutive articles read or evicted together */
+    public static final int CHUNK_SIZE = 50;
+
+    /** Number of chunks kept in memory by default, a few screens around the rows on screen */
+    public static final int DEFAULT_WINDOW_CHUNKS = 6;
+
+    /** Whether the spill files left behind by a previous process were deleted */
+    private static boolean mStaleFilesDeleted;
+
+    /** Number of chunks kept in memory */
+    private final int mWindowChunks;
+
+    /** Directory of the spill file */
+    private final File mDirectory;
+
+    /** Spill file holding every article added, or null until the first one is */
+    private File mFile;
+
+    private RandomAccessFile mData;
+
+    /** Number of articles in the list */
+    private int mSize;
+
+    /** Offset in the spill file of the first article of each chunk */
+    private long[] mChunkOffsets = new long[16];
+
+    /** Chunks in memory by index, least recently used first */
+    private final LinkedHashMap<Integer, NewsArticle[]> mWindow;
+
+    /** Reused to encode the articles appended */
+    private final ByteArrayOutputStream mEncodeBuffer = new ByteArrayOutputStream();
+
+    /** Number of chunks read back from the spill file */
+    private int mChunkReadCount;
+
+    /**
+     * Constructs a new {@link WindowedArticleList} keeping
+     * {@link #DEFAULT_WINDOW_CHUNKS} chunks in memory.
+     *
+     * @param directory in which the spill file is created, e.g. a subdirectory of the cache
+     *                  directory of the app used for nothing else
+     */
+    public WindowedArticleList(File directory) {
+        this(directory, DEFAULT_WINDOW_CHUNKS);
+    }
+
+    /**
+     * Constructs a new {@link WindowedArticleList}.
+     *
+     * @param directory in which the spill file is created
+     * @param windowChunks number of chunks kept in memory, at least 1
+     */
+    public WindowedArticleList(File directory, int windowChunks) {
+        mDirectory = directory;
+        mWindowChunks = Math.max(1, windowChunks);
+        mWindow = new LinkedHashMap<Integer, NewsArticle[]>(mWindowChunks + 1, 1f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, NewsArticle[]> eldest) {
+                return size() > mWindowChunks;
+            }
+        };
+        deleteStaleFiles(directory);
+    }
+
+    /**
+     * Delete the spill files left behind by a previous process that was killed before it
+     * could close its lists, the first time a list is created in this process.
+     * They couldn't be read anyway: their records refer to the prefixes that process interned.
+     */
+    private static synchronized void deleteStaleFiles(File directory) {
+        if (mStaleFilesDeleted) {
+            return;
+        }
+        mStaleFilesDeleted = true;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".window") && !file.delete()) {
+                    Log.e(LOG_TAG, "Could not delete " + file);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the article at the given position, reading its chunk from the spill file if it
+     * is not in memory.
+     *
+     * @throws IllegalStateException if the spill file can't be read
+     */
+    @Override
+    public synchronized NewsArticle get(int position) {
+        checkPosition(position);
+        return load(position)[position % CHUNK_SIZE];
+    }
+
+    /**
+     * Returns the article at the given position if it is in memory, or null if its chunk has
+     * to be read with {@link #load(int)} first.
+     */
+    public synchronized NewsArticle peek(int position) {
+        checkPosition(position);
+        NewsArticle[] chunk = mWindow.get(position / CHUNK_SIZE);
+        return chunk != null ? chunk[position % CHUNK_SIZE] : null;
+    }
+
+    /**
+     * Make sure the chunk holding the given position is in memory, reading it from the spill
+     * file if needed.
+     *
+     * @return the articles of the chunk; the positions past the end of the list are null
+     * @throws IllegalStateException if the spill file can't be read
+     */
+    public synchronized NewsArticle[] load(int position) {
+        checkPosition(position);
+        int chunkIndex = position / CHUNK_SIZE;
+        NewsArticle[] chunk = mWindow.get(chunkIndex);
+        if (chunk == null) {
+            chunk = readChunk(chunkIndex);
+            mWindow.put(chunkIndex, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns the first position of the chunk holding the given position; the chunk spans
+     * {@link #CHUNK_SIZE} positions from there.
+     */
+    public static int getChunkStart(int position) {
+        return position / CHUNK_SIZE * CHUNK_SIZE;
+    }
+
+    /**
+     * Returns the number of chunks read back from the spill file since the list was created.
+     */
+    public synchronized int getChunkReadCount() {
+        return mChunkReadCount;
+    }
+
+    /**
+     * Returns the number of chunks in memory, at most the number the list was created with.
+     */
+    public synchronized int getResidentChunkCount() {
+        return mWindow.size();
+    }
+
+    /**
+     * Append an article to the end of the list.
+     *
+     * @throws IllegalStateException if the spill file can't be written
+     */
+    @Override
+    public synchronized boolean add(NewsArticle article) {
+        append(Arrays.asList(article));
+        return true;
+    }
+
+    /**
+     * Append the given articles to the end of the list, in one write to the spill file.
+     *
+     * @throws IllegalStateException if the spill file can't be written
+     */
+    @Override
+    public synchronized boolean addAll(Collection<? extends NewsArticle> articles) {
+        if (articles.isEmpty()) {
+            return false;
+        }
+        append(articles);
+        return true;
+    }
+
+    /**
+     * Insert the given articles at the start of the list, before those it holds. The spill
+     * file is rewritten, a chunk at a time, since the chunks all shift: this takes as long as
+     * writing the whole list again.
+     *
+     * @throws IllegalStateException if the spill file can't be read or written
+     */
+    public synchronized void prependAll(Collection<? extends NewsArticle> articles) {
+        if (articles.isEmpty()) {
+            return;
+        }
+        if (mSize == 0) {
+            append(articles);
+            return;
+        }
+
+        // The articles held are read back from the previous file, which is deleted once they
+        // are all written after the new ones
+        File previousFile = mFile;
+        RandomAccessFile previousData = mData;
+        long[] previousOffsets = mChunkOffsets;
+        int previousSize = mSize;
+        mFile = null;
+        mData = null;
+        mChunkOffsets = new long[previousOffsets.length];
+        mSize = 0;
+        mWindow.clear();
+        try {
+            append(articles);
+            for (int start = 0; start < previousSize; start += CHUNK_SIZE) {
+                NewsArticle[] chunk = readChunk(previousData, previousOffsets,
+                        start / CHUNK_SIZE, previousSize, previousFile);
+                append(Arrays.asList(chunk).subList(0, Math.min(CHUNK_SIZE,
+                        previousSize - start)));
+            }
+        } finally {
+            try {
+                previousData.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing " + previousFile, e);
+            }
+            if (!previousFile.delete()) {
+                Log.e(LOG_TAG, "Could not delete " + previousFile);
+            }
+        }
+    }
+
+    /**
+     * Remove every article, keeping the spill file for the articles added next.
+     */
+    @Override
+    public synchronized void clear() {
+        mSize = 0;
+        mWindow.clear();
+        modCount++;
+        if (mData != null) {
+            try {
+                mData.setLength(0);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem truncating " + mFile, e);
+            }
+        }
+    }
+
+    /**
+     * Remove every article and delete the spill file. The list stays usable and creates a new
+     * spill file if articles are added again.
+     */
+    public synchronized void close() {
+        mSize = 0;
+        mWindow.clear();
+        modCount++;
+        if (mData != null) {
+            try {
+                mData.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem closing " + mFile, e);
+            }
+            mData = null;
+        }
+        if (mFile != null && !mFile.delete()) {
+            Log.e(LOG_TAG, "Could not delete " + mFile);
+        }
+        mFile = null;
+    }
+
+    /**
+     * Write the given articles at the end of the spill file and add them to the chunks in
+     * memory that they belong to.
+     */
+    private void append(Collection<? extends NewsArticle> articles) {
+        try {
+            if (mData == null) {
+                if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                    throw new IOException("Could not create " + mDirectory);
+                }
+                mFile = File.createTempFile("articles", ".window", mDirectory);
+                mData = new RandomAccessFile(mFile, "rw");
+            }
+
+            long offset = mData.length();
+            mEncodeBuffer.reset();
+            DataOutputStream out = new DataOutputStream(mEncodeBuffer);
+            int position = mSize;
+            for (NewsArticle article : articles) {
+                if (position % CHUNK_SIZE == 0) {
+                    setChunkOffset(position / CHUNK_SIZE, offset + out.size());
+                }
+                writeArticle(out, article);
+                position++;
+            }
+            out.flush();
+            mData.seek(offset);
+            mData.write(mEncodeBuffer.toByteArray(), 0, mEncodeBuffer.size());
+        } catch (IOException e) {
+            throw new IllegalStateException("Problem writing to " + mFile, e);
+        }
+
+        // A new chunk starts in memory, since the rows just appended are usually about to be
+        // shown; a chunk at the end of the list that was evicted is only completed on disk
+        for (NewsArticle article : articles) {
+            int chunkIndex = mSize / CHUNK_SIZE;
+            NewsArticle[] chunk = mWindow.get(chunkIndex);
+            if (chunk == null && mSize % CHUNK_SIZE == 0) {
+                chunk = new NewsArticle[CHUNK_SIZE];
+                mWindow.put(chunkIndex, chunk);
+            }
+            if (chunk != null) {
+                chunk[mSize % CHUNK_SIZE] = article;
+            }
+            mSize++;
+        }
+        modCount++;
+    }
+
+    /**
+     * Read the articles of the given chunk from the spill file.
+     */
+    private NewsArticle[] readChunk(int chunkIndex) {
+        NewsArticle[] chunk = readChunk(mData, mChunkOffsets, chunkIndex, mSize, mFile);
+        mChunkReadCount++;
+        return chunk;
+    }
+
+    /**
+     * Read the articles of the given chunk from a spill file.
+     *
+     * @param data the spill file, opened
+     * @param chunkOffsets offset in the file of the first article of each chunk
+     * @param size number of articles in the file
+     * @param file the spill file, for the messages
+     */
+    private static NewsArticle[] readChunk(RandomAccessFile data, long[] chunkOffsets,
+                                           int chunkIndex, int size, File file) {
+        int start = chunkIndex * CHUNK_SIZE;
+        int count = Math.min(CHUNK_SIZE, size - start);
+        try {
+            long offset = chunkOffsets[chunkIndex];
+            long end = start + CHUNK_SIZE < size ? chunkOffsets[chunkIndex + 1] : data.length();
+            byte[] bytes = new byte[(int) (end - offset)];
+            data.seek(offset);
+            data.readFully(bytes);
+
+            NewsArticle[] chunk = new NewsArticle[CHUNK_SIZE];
+            // The articles of a chunk share the bytes holding their records
+            ByteBuffer records = ByteBuffer.wrap(bytes);
+            int articleOffset = 0;
+            for (int i = 0; i < count; i++) {
+                int recordEnd = ArticleBuffer.skipRecord(bytes, articleOffset);
+                chunk[i] = new NewsArticle(bytes, articleOffset, records.getLong(recordEnd));
+                articleOffset = recordEnd + 8;
+            }
+            return chunk;
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                    "Problem reading chunk " + chunkIndex + " of " + file, e);
+        }
+    }
+
+    private void setChunkOffset(int chunkIndex, long offset) {
+        if (chunkIndex == mChunkOffsets.length) {
+            mChunkOffsets = Arrays.copyOf(mChunkOffsets, mChunkOffsets.length * 2);
+        }
+        mChunkOffsets[chunkIndex] = offset;
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + mSize);
+        }
+    }
+
+    /**
+     * Write the record of an article, followed by its publication date.
+     */
+    private static void writeArticle(DataOutputStream out, NewsArticle article)
+            throws IOException {
+        article.writeRecord(out);
+        out.writeLong(article.getPublicationDate());
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.android.ukfootballnews.data;
+
+import android.provider.BaseColumns;
+
+/**
+ * API Contract for the news articles stored on the device.
+ */
+public final class ArticleContract {
+
+    /**
+     * Create a private constructor because no one should ever create a {@link ArticleContract}
+     * object. This class only holds the constants of the database schema.
+     */
+    private ArticleContract() {
+    }
+
+    /**
+     * Inner class that defines constant values for the articles database table.
+     * Each entry in the table represents a single news article.
+     */
+    public static final class ArticleEntry implements BaseColumns {
+
+        /** Name of database table for articles */
+        public static final String TABLE_NAME = "articles";
+
+        /**
+         * Unique ID number for the article (only for use in the database table).
+         *
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /**
+         * Title of the article.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_TITLE = "title";
+
+        /**
+         * URL that leads to the complete article. Identifies the article.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_WEB_URL = "web_url";
+
+        /**
+         * URL that leads to a thumbnail for the article.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_THUMBNAIL_URL = "thumbnail_url";
+
+        /**
+         * Time, in milliseconds, the article was last received from the API.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+
+        /**
+         * Name of the section of The Guardian the article belongs to.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_SECTION = "section";
+
+        /**
+         * Publication time of the article, in milliseconds since the epoch.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PUBLISHED_AT = "published_at";
+    }
+
+    /**
+     * Inner class that defines constant values for the article bodies table. Each entry
+     * holds the body of a stored article, downloaded ahead of time so the article can be
+     * read without the network.
+     */
+    public static final class ArticleBodyEntry {
+
+        /** Name of database table for article bodies */
+        public static final String TABLE_NAME = "article_bodies";
+
+        /**
+         * URL of the article the body belongs to, the {@link ArticleEntry#COLUMN_WEB_URL} of
+         * a stored article.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_WEB_URL = "web_url";
+
+        /**
+         * Body of the article, as HTML without its images and embedded media.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_BODY = "body";
+
+        /**
+         * Time, in milliseconds, the body was downloaded.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+    }
+
+    /**
+     * Inner class that defines constant values for the searchable articles table. It holds
+     * the same columns as {@link ArticleEntry}, for many more articles than are kept to be
+     * shown, so searching reaches further back than the list shown on startup.
+     */
+    public static final class SearchableArticleEntry implements BaseColumns {
+
+        /** Name of database table for searchable articles */
+        public static final String TABLE_NAME = "searchable_articles";
+
+        /** Name of the index of the table on the publication time of the articles */
+        public static final String INDEX_NAME = "searchable_articles_published_at";
+    }
+
+    /**
+     * Inner class that defines constant values for the full-text index of the articles. It is
+     * an FTS4 virtual table; each row indexes the searchable article whose
+     * {@link SearchableArticleEntry#_ID} is its {@link #COLUMN_DOCID}.
+     */
+    public static final class ArticleSearchEntry {
+
+        /** Name of the full-text index table */
+        public static final String TABLE_NAME = "articles_fts";
+
+        /**
+         * ID of the indexed article.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DOCID = "docid";
+
+        /**
+         * Title of the indexed article.
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_TITLE = "title";
+    }
+}
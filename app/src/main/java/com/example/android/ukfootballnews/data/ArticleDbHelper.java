@@ -0,0 +1,101 @@
+package com.example.android.ukfootballnews.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.ukfootballnews.data.ArticleContract.ArticleBodyEntry;
+import com.example.android.ukfootballnews.data.ArticleContract.ArticleEntry;
+import com.example.android.ukfootballnews.data.ArticleContract.ArticleSearchEntry;
+import com.example.android.ukfootballnews.data.ArticleContract.SearchableArticleEntry;
+
+/**
+ * Database helper for the articles stored on the device. Manages database creation and
+ * version management.
+ */
+public class ArticleDbHelper extends SQLiteOpenHelper {
+
+    /** Name of the database file */
+    private static final String DATABASE_NAME = "articles.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database
+     * version.
+     */
+    static final int DATABASE_VERSION = 5;
+
+    /**
+     * Constructs a new instance of {@link ArticleDbHelper}.
+     *
+     * @param context of the app
+     */
+    public ArticleDbHelper(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a new instance of {@link ArticleDbHelper} opening the given database file,
+     * e.g. a database of its own for a test.
+     */
+    ArticleDbHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
+    }
+
+    /**
+     * This is called when the database is created for the first time.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // Create a String that contains the SQL statement to create the articles table
+        String SQL_CREATE_ARTICLES_TABLE = "CREATE TABLE " + ArticleEntry.TABLE_NAME + " ("
+                + ArticleEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ArticleEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + ArticleEntry.COLUMN_WEB_URL + " TEXT NOT NULL UNIQUE, "
+                + ArticleEntry.COLUMN_THUMBNAIL_URL + " TEXT NOT NULL, "
+                + ArticleEntry.COLUMN_SECTION + " TEXT NOT NULL, "
+                + ArticleEntry.COLUMN_PUBLISHED_AT + " INTEGER NOT NULL, "
+                + ArticleEntry.COLUMN_FETCHED_AT + " INTEGER NOT NULL);";
+
+        // Execute the SQL statement
+        db.execSQL(SQL_CREATE_ARTICLES_TABLE);
+
+        // Create the table of the articles that can be searched, with the same columns, and
+        // its index on the order they are searched in
+        db.execSQL("CREATE TABLE " + SearchableArticleEntry.TABLE_NAME + " ("
+                + SearchableArticleEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ArticleEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + ArticleEntry.COLUMN_WEB_URL + " TEXT NOT NULL UNIQUE, "
+                + ArticleEntry.COLUMN_THUMBNAIL_URL + " TEXT NOT NULL, "
+                + ArticleEntry.COLUMN_SECTION + " TEXT NOT NULL, "
+                + ArticleEntry.COLUMN_PUBLISHED_AT + " INTEGER NOT NULL, "
+                + ArticleEntry.COLUMN_FETCHED_AT + " INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX " + SearchableArticleEntry.INDEX_NAME + " ON "
+                + SearchableArticleEntry.TABLE_NAME + " (" + ArticleEntry.COLUMN_PUBLISHED_AT
+                + " DESC, " + ArticleEntry.COLUMN_FETCHED_AT + " DESC);");
+
+        // Create the full-text index of the titles of the searchable articles
+        db.execSQL("CREATE VIRTUAL TABLE " + ArticleSearchEntry.TABLE_NAME + " USING fts4("
+                + ArticleSearchEntry.COLUMN_TITLE + ");");
+
+        // Create the table of the article bodies downloaded ahead of time
+        db.execSQL("CREATE TABLE " + ArticleBodyEntry.TABLE_NAME + " ("
+                + ArticleBodyEntry.COLUMN_WEB_URL + " TEXT PRIMARY KEY, "
+                + ArticleBodyEntry.COLUMN_BODY + " TEXT NOT NULL, "
+                + ArticleBodyEntry.COLUMN_FETCHED_AT + " INTEGER NOT NULL);");
+    }
+
+    /**
+     * This is called when the database needs to be upgraded. The stored articles and their
+     * bodies are only a copy of what the API returns, so they are dropped and fetched again.
+     * The {@link ArticleSnapshot} of the dropped articles holds the previous version, so it
+     * isn't shown any more either.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + ArticleEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + ArticleSearchEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + SearchableArticleEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + ArticleBodyEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.android.ukfootballnews.data;
+
+import com.example.android.ukfootballnews.ArticleBuffer;
+import com.example.android.ukfootballnews.NewsArticle;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary file holding a list of articles, so the list shown on startup can be read
+ * back without going through the database.
+ *
+ * The URLs of the articles share long prefixes, e.g. "https://www.theguardian.com/football/"
+ * or the host of the images, and only a handful of section names. These are written once in
+ * a dictionary, and each article refers to them by index. The format (version 2, all numbers
+ * big-endian, "varint" meaning an unsigned LEB128 integer):
+ *
+ * <pre>
+ * int     magic "NWSS"
+ * byte    version
+ * varint  version of the database the articles were stored in
+ * varint  number of articles
+ * varint  number of dictionary strings, then each as a string
+ * per article:
+ *   long    publication time in milliseconds
+ *   varint  dictionary index of the section
+ *   varint  dictionary index of the web URL prefix, then the rest of the URL as a string
+ *   varint  dictionary index of the thumbnail URL prefix, then the rest of the URL as a string
+ *   string  title
+ * string: varint length in bytes, then that many bytes of UTF-8
+ * </pre>
+ *
+ * Files are read through a memory-mapped buffer and each string is decoded straight from it,
+ * prefix included, without building intermediate strings. Reading can stop after the first
+ * articles, e.g. those fitting on the first screen.
+ *
+ * A snapshot written for another version of the {@link ArticleDbHelper database} is rejected:
+ * the database drops its articles when it is upgraded, so the snapshot would show articles
+ * that are no longer stored.
+ */
+public final class ArticleSnapshot {
+
+    /** First bytes of every snapshot: "NWSS" */
+    private static final int MAGIC = 0x4e575353;
+
+    /** Version of the format written */
+    private static final int VERSION = 2;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Create a private constructor because no one should ever create a
+     * {@link ArticleSnapshot} object. This class only holds static methods.
+     */
+    private ArticleSnapshot() {
+    }
+
+    /**
+     * Write the given articles to the file, replacing it. The file is written under a
+     * temporary name first, so a reader never sees a partial snapshot.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public static void write(List<NewsArticle> articles, File file) throws IOException {
+        // Collect the dictionary: the section names and the URL prefixes
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> prefixCounts = countUrlPrefixes(articles);
+        String[] webUrlPrefixes = new String[articles.size()];
+        String[] thumbnailPrefixes = new String[articles.size()];
+        for (int i = 0; i < articles.size(); i++) {
+            NewsArticle article = articles.get(i);
+            addToDictionary(nonNull(article.getSection()), dictionary, strings);
+            webUrlPrefixes[i] = choosePrefix(nonNull(article.getInfoUrl()), prefixCounts);
+            addToDictionary(webUrlPrefixes[i], dictionary, strings);
+            thumbnailPrefixes[i] = choosePrefix(nonNull(article.getThumbnailUrl()), prefixCounts);
+            addToDictionary(thumbnailPrefixes[i], dictionary, strings);
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeVarint(out, ArticleDbHelper.DATABASE_VERSION);
+            writeVarint(out, articles.size());
+
+            writeVarint(out, strings.size());
+            for (String string : strings) {
+                writeString(out, string);
+            }
+
+            for (int i = 0; i < articles.size(); i++) {
+                NewsArticle article = articles.get(i);
+                out.writeLong(article.getPublicationDate());
+                writeVarint(out, dictionary.get(nonNull(article.getSection())));
+                writeVarint(out, dictionary.get(webUrlPrefixes[i]));
+                writeString(out, nonNull(article.getInfoUrl()).substring(webUrlPrefixes[i].length()));
+                writeVarint(out, dictionary.get(thumbnailPrefixes[i]));
+                writeString(out,
+                        nonNull(article.getThumbnailUrl()).substring(thumbnailPrefixes[i].length()));
+                writeString(out, nonNull(article.getTitle()));
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Returns every article of the snapshot.
+     *
+     * @throws IOException if the file can't be read or is not a snapshot
+     */
+    public static List<NewsArticle> read(File file) throws IOException {
+        return read(file, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the first articles of the snapshot, without reading the others.
+     *
+     * @param maxArticles maximum number of articles read
+     * @throws IOException if the file can't be read or is not a snapshot
+     */
+    public static List<NewsArticle> read(File file, int maxArticles) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, maxArticles);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Returns the first articles of the snapshot held by the given buffer.
+     */
+    static List<NewsArticle> read(ByteBuffer buffer, int maxArticles) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an article snapshot");
+            }
+            int version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int databaseVersion = readVarint(buffer);
+            if (databaseVersion != ArticleDbHelper.DATABASE_VERSION) {
+                throw new IOException("Snapshot of database version " + databaseVersion);
+            }
+            int count = Math.min(readVarint(buffer), maxArticles);
+
+            Decoder decoder = new Decoder();
+            String[] strings = new String[readVarint(buffer)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = decoder.readString(buffer, null);
+            }
+
+            List<NewsArticle> articles = new ArrayList<>(count);
+            ArticleBuffer articleBuffer = new ArticleBuffer();
+            for (int i = 0; i < count; i++) {
+                long publicationDate = buffer.getLong();
+                String section = strings[readVarint(buffer)];
+                String webUrl = decoder.readString(buffer, strings[readVarint(buffer)]);
+                String thumbnailUrl = decoder.readString(buffer, strings[readVarint(buffer)]);
+                String title = decoder.readString(buffer, null);
+                articles.add(articleBuffer.add(title, section, webUrl, thumbnailUrl,
+                        publicationDate));
+            }
+            return articles;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupt article snapshot", e);
+        }
+    }
+
+    /**
+     * Count, for every URL, each of its prefixes ending with a '/' after the host, e.g.
+     * "https://www.theguardian.com/" and "https://www.theguardian.com/football/".
+     */
+    private static Map<String, Integer> countUrlPrefixes(List<NewsArticle> articles) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (NewsArticle article : articles) {
+            countPrefixes(nonNull(article.getInfoUrl()), counts);
+            countPrefixes(nonNull(article.getThumbnailUrl()), counts);
+        }
+        return counts;
+    }
+
+    private static void countPrefixes(String url, Map<String, Integer> counts) {
+        int schemeEnd = url.indexOf("://");
+        int slash = url.indexOf('/', schemeEnd >= 0 ? schemeEnd + 3 : 0);
+        while (slash >= 0) {
+            String prefix = url.substring(0, slash + 1);
+            Integer count = counts.get(prefix);
+            counts.put(prefix, count == null ? 1 : count + 1);
+            slash = url.indexOf('/', slash + 1);
+        }
+    }
+
+    /**
+     * Returns the longest prefix of the URL shared with another URL, or the empty string.
+     */
+    private static String choosePrefix(String url, Map<String, Integer> prefixCounts) {
+        String best = "";
+        int schemeEnd = url.indexOf("://");
+        int slash = url.indexOf('/', schemeEnd >= 0 ? schemeEnd + 3 : 0);
+        while (slash >= 0) {
+            String prefix = url.substring(0, slash + 1);
+            Integer count = prefixCounts.get(prefix);
+            if (count == null || count < 2) {
+                break;
+            }
+            best = prefix;
+            slash = url.indexOf('/', slash + 1);
+        }
+        return best;
+    }
+
+    private static void addToDictionary(String string, Map<String, Integer> dictionary,
+                                        List<String> strings) {
+        if (!dictionary.containsKey(string)) {
+            dictionary.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static String nonNull(String string) {
+        return string != null ? string : "";
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in article snapshot");
+    }
+
+    /**
+     * Decodes UTF-8 strings straight from the buffer into a reused char array, so the only
+     * object created per string is the string itself.
+     */
+    private static final class Decoder {
+
+        private char[] mChars = new char[256];
+
+        /**
+         * Read a string, returning it after the given prefix.
+         *
+         * @param prefix to start the string with, or null
+         */
+        String readString(ByteBuffer buffer, String prefix) throws IOException {
+            int byteCount = readVarint(buffer);
+            int prefixLength = prefix != null ? prefix.length() : 0;
+            // A UTF-8 byte never decodes to more than one char
+            ensureCapacity(prefixLength + byteCount);
+            if (prefix != null) {
+                prefix.getChars(0, prefixLength, mChars, 0);
+            }
+
+            char[] chars = mChars;
+            int length = prefixLength;
+            int end = buffer.position() + byteCount;
+            while (buffer.position() < end) {
+                int b = buffer.get() & 0xff;
+                if (b < 0x80) {
+                    chars[length++] = (char) b;
+                } else if (b < 0xe0) {
+                    chars[length++] = (char) (((b & 0x1f) << 6) | (buffer.get() & 0x3f));
+                } else if (b < 0xf0) {
+                    chars[length++] = (char) (((b & 0x0f) << 12)
+                            | ((buffer.get() & 0x3f) << 6) | (buffer.get() & 0x3f));
+                } else {
+                    int codePoint = ((b & 0x07) << 18) | ((buffer.get() & 0x3f) << 12)
+                            | ((buffer.get() & 0x3f) << 6) | (buffer.get() & 0x3f);
+                    length += Character.toChars(codePoint, chars, length);
+                }
+            }
+            if (buffer.position() != end) {
+                throw new IOException("Malformed UTF-8 in article snapshot");
+            }
+            return new String(chars, 0, length);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (mChars.length < capacity) {
+                mChars = new char[Math.max(capacity, mChars.length * 2)];
+            }
+        }
+    }
+}
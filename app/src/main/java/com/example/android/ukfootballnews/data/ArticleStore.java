@@ -0,0 +1,454 @@
+package com.example.android.ukfootballnews.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import com.example.android.ukfootballnews.ArticleBuffer;
+import com.example.android.ukfootballnews.NewsArticle;
+import com.example.android.ukfootballnews.data.ArticleContract.ArticleBodyEntry;
+import com.example.android.ukfootballnews.data.ArticleContract.ArticleEntry;
+import com.example.android.ukfootballnews.data.ArticleContract.ArticleSearchEntry;
+import com.example.android.ukfootballnews.data.ArticleContract.SearchableArticleEntry;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local copy of the news articles received from The Guardian API, so the last snapshot can be
+ * shown right away on startup and without a network connection.
+ *
+ * The articles received are also kept for searching with {@link #searchArticles}, many more
+ * of them than are shown on startup, so a search reaches weeks back. The titles of these
+ * searchable articles are kept in a full-text index, updated in the same transaction.
+ *
+ * The stored articles are also written to an {@link ArticleSnapshot} after every change, which
+ * is much faster to read back on startup than querying the database.
+ *
+ * The bodies of some articles, downloaded ahead of time, are kept too, so those articles can
+ * be read without the network. A body is removed together with its article.
+ */
+public final class ArticleStore {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ArticleStore.class.getSimpleName();
+
+    /** Maximum number of articles kept to be shown; the oldest ones are removed first. */
+    private static final int MAX_STORED_ARTICLES = 500;
+
+    /** Maximum number of articles kept to be searched; the oldest ones are removed first. */
+    private static final int MAX_SEARCHABLE_ARTICLES = 20000;
+
+    /** Maximum number of article bodies kept; the least recently downloaded are removed first. */
+    private static final int MAX_STORED_BODIES = 100;
+
+    /** Order in which articles are read: newest first. */
+    private static final String SORT_ORDER = ArticleEntry.COLUMN_PUBLISHED_AT + " DESC, "
+            + ArticleEntry.COLUMN_FETCHED_AT + " DESC";
+
+    /** Columns read to build a {@link NewsArticle} */
+    private static final String[] ARTICLE_PROJECTION = {
+            ArticleEntry.COLUMN_TITLE,
+            ArticleEntry.COLUMN_SECTION,
+            ArticleEntry.COLUMN_WEB_URL,
+            ArticleEntry.COLUMN_THUMBNAIL_URL,
+            ArticleEntry.COLUMN_PUBLISHED_AT};
+
+    /**
+     * Query returning the searchable articles whose title matches a full-text query, newest
+     * first
+     */
+    private static final String SEARCH_QUERY = "SELECT a." + ArticleEntry.COLUMN_TITLE
+            + ", a." + ArticleEntry.COLUMN_SECTION
+            + ", a." + ArticleEntry.COLUMN_WEB_URL
+            + ", a." + ArticleEntry.COLUMN_THUMBNAIL_URL
+            + ", a." + ArticleEntry.COLUMN_PUBLISHED_AT
+            + " FROM " + SearchableArticleEntry.TABLE_NAME + " a JOIN "
+            + ArticleSearchEntry.TABLE_NAME + " f ON a." + SearchableArticleEntry._ID + " = f."
+            + ArticleSearchEntry.COLUMN_DOCID
+            + " WHERE " + ArticleSearchEntry.TABLE_NAME + " MATCH ?"
+            + " ORDER BY a." + ArticleEntry.COLUMN_PUBLISHED_AT + " DESC, a."
+            + ArticleEntry.COLUMN_FETCHED_AT + " DESC LIMIT ?";
+
+    /** Name of the snapshot file, in the files directory of the app */
+    private static final String SNAPSHOT_FILE_NAME = "articles.snapshot";
+
+    /** The single store of the app, so every thread shares one database connection. */
+    private static ArticleStore mInstance;
+
+    private final ArticleDbHelper mDbHelper;
+
+    /** Snapshot of the stored articles, written after every change */
+    private final File mSnapshotFile;
+
+    /** Held while the snapshot is written, so two threads can't write it at once */
+    private final Object mSnapshotLock = new Object();
+
+    private ArticleStore(Context context) {
+        this(new ArticleDbHelper(context), new File(context.getFilesDir(), SNAPSHOT_FILE_NAME));
+    }
+
+    /**
+     * Constructs a store of the given database and snapshot, e.g. of their own for a test.
+     */
+    ArticleStore(ArticleDbHelper dbHelper, File snapshotFile) {
+        mDbHelper = dbHelper;
+        mSnapshotFile = snapshotFile;
+    }
+
+    /**
+     * Returns the article store of the app.
+     *
+     * @param context of the app
+     */
+    public static synchronized ArticleStore get(Context context) {
+        if (mInstance == null) {
+            mInstance = new ArticleStore(context.getApplicationContext());
+        }
+        return mInstance;
+    }
+
+    /**
+     * Merge the given articles into the store. Articles already stored (same web URL) are
+     * updated, the others are added. Must not be called on the main thread.
+     *
+     * @param articles received from the API
+     */
+    public void saveArticles(List<NewsArticle> articles) {
+        if (articles == null || articles.isEmpty()) {
+            return;
+        }
+
+        try {
+            SQLiteDatabase db = mDbHelper.getWritableDatabase();
+            db.beginTransaction();
+            SQLiteStatement unindexStatement = db.compileStatement("DELETE FROM "
+                    + ArticleSearchEntry.TABLE_NAME + " WHERE " + ArticleSearchEntry.COLUMN_DOCID
+                    + " IN (SELECT " + SearchableArticleEntry._ID + " FROM "
+                    + SearchableArticleEntry.TABLE_NAME + " WHERE " + ArticleEntry.COLUMN_WEB_URL
+                    + " = ?)");
+            SQLiteStatement indexStatement = db.compileStatement("INSERT INTO "
+                    + ArticleSearchEntry.TABLE_NAME + " (" + ArticleSearchEntry.COLUMN_DOCID + ", "
+                    + ArticleSearchEntry.COLUMN_TITLE + ") VALUES (?, ?)");
+            try {
+                long fetchedAt = System.currentTimeMillis();
+
+                ContentValues values = new ContentValues();
+                for (NewsArticle article : articles) {
+                    values.put(ArticleEntry.COLUMN_TITLE, article.getTitle());
+                    values.put(ArticleEntry.COLUMN_WEB_URL, article.getInfoUrl());
+                    values.put(ArticleEntry.COLUMN_THUMBNAIL_URL, article.getThumbnailUrl());
+                    values.put(ArticleEntry.COLUMN_SECTION, article.getSection());
+                    values.put(ArticleEntry.COLUMN_PUBLISHED_AT, article.getPublicationDate());
+                    values.put(ArticleEntry.COLUMN_FETCHED_AT, fetchedAt);
+                    db.insertWithOnConflict(ArticleEntry.TABLE_NAME, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+
+                    // Replacing a searchable article gives it a new ID, so the index entry of
+                    // the old ID is removed and the article is indexed again under the new one
+                    unindexStatement.bindString(1, article.getInfoUrl());
+                    unindexStatement.executeUpdateDelete();
+                    long id = db.insertWithOnConflict(SearchableArticleEntry.TABLE_NAME, null,
+                            values, SQLiteDatabase.CONFLICT_REPLACE);
+                    if (id != -1) {
+                        indexStatement.bindLong(1, id);
+                        indexStatement.bindString(2, article.getTitle());
+                        indexStatement.executeInsert();
+                    }
+                }
+
+                // Only keep the most recently received articles to show
+                db.execSQL("DELETE FROM " + ArticleEntry.TABLE_NAME + " WHERE " + ArticleEntry._ID
+                        + " NOT IN (SELECT " + ArticleEntry._ID + " FROM " + ArticleEntry.TABLE_NAME
+                        + " ORDER BY " + SORT_ORDER + " LIMIT " + MAX_STORED_ARTICLES + ")");
+
+                // And many more to search, removing the index entries of those removed first.
+                // Only the IDs past the limit are read, through the index on their order.
+                String oldestSearchable = "SELECT " + SearchableArticleEntry._ID + " FROM "
+                        + SearchableArticleEntry.TABLE_NAME + " ORDER BY " + SORT_ORDER
+                        + " LIMIT -1 OFFSET " + MAX_SEARCHABLE_ARTICLES;
+                db.execSQL("DELETE FROM " + ArticleSearchEntry.TABLE_NAME + " WHERE "
+                        + ArticleSearchEntry.COLUMN_DOCID + " IN (" + oldestSearchable + ")");
+                db.execSQL("DELETE FROM " + SearchableArticleEntry.TABLE_NAME + " WHERE "
+                        + SearchableArticleEntry._ID + " IN (" + oldestSearchable + ")");
+
+                // Remove the bodies of articles that were removed
+                deleteOrphanBodies(db);
+
+                db.setTransactionSuccessful();
+            } finally {
+                unindexStatement.close();
+                indexStatement.close();
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem saving articles", e);
+            // The snapshot may no longer match the database; it is rebuilt on the next load
+            mSnapshotFile.delete();
+            return;
+        }
+
+        writeSnapshot(queryArticles());
+    }
+
+    /**
+     * Returns the stored articles, newest first. They are read from the snapshot, or from the
+     * database if there is no usable snapshot. Must not be called on the main thread.
+     */
+    public List<NewsArticle> loadArticles() {
+        return loadArticles(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the newest stored articles, e.g. only those shown on the first screen. Must not
+     * be called on the main thread.
+     *
+     * @param maxArticles maximum number of articles returned
+     */
+    public List<NewsArticle> loadArticles(int maxArticles) {
+        try {
+            return ArticleSnapshot.read(mSnapshotFile, maxArticles);
+        } catch (FileNotFoundException e) {
+            Log.i(LOG_TAG, "loadArticles(): no snapshot, reading the database");
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Problem reading the article snapshot", e);
+        }
+
+        List<NewsArticle> articles = queryArticles();
+        if (!articles.isEmpty()) {
+            writeSnapshot(articles);
+        }
+        return articles.size() > maxArticles
+                ? new ArrayList<>(articles.subList(0, maxArticles)) : articles;
+    }
+
+    /**
+     * Store the given article bodies, replacing those already stored for the same articles.
+     * Bodies of articles that are not stored are dropped. Must not be called on the main
+     * thread.
+     *
+     * @param bodies HTML bodies, by web URL of their article
+     * @return the web URLs of the articles whose body is stored now
+     */
+    public Set<String> saveArticleBodies(Map<String, String> bodies) {
+        Set<String> savedUrls = new HashSet<>();
+        if (bodies == null || bodies.isEmpty()) {
+            return savedUrls;
+        }
+
+        try {
+            SQLiteDatabase db = mDbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                long fetchedAt = System.currentTimeMillis();
+
+                ContentValues values = new ContentValues();
+                for (Map.Entry<String, String> body : bodies.entrySet()) {
+                    values.put(ArticleBodyEntry.COLUMN_WEB_URL, body.getKey());
+                    values.put(ArticleBodyEntry.COLUMN_BODY, body.getValue());
+                    values.put(ArticleBodyEntry.COLUMN_FETCHED_AT, fetchedAt);
+                    db.insertWithOnConflict(ArticleBodyEntry.TABLE_NAME, null, values,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+
+                // Only keep the bodies of stored articles, and only the most recent ones
+                deleteOrphanBodies(db);
+                db.execSQL("DELETE FROM " + ArticleBodyEntry.TABLE_NAME + " WHERE "
+                        + ArticleBodyEntry.COLUMN_WEB_URL + " NOT IN (SELECT "
+                        + ArticleBodyEntry.COLUMN_WEB_URL + " FROM " + ArticleBodyEntry.TABLE_NAME
+                        + " ORDER BY " + ArticleBodyEntry.COLUMN_FETCHED_AT + " DESC LIMIT "
+                        + MAX_STORED_BODIES + ")");
+
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem saving article bodies", e);
+            return savedUrls;
+        }
+
+        Set<String> storedUrls = loadArticleBodyUrls();
+        for (String webUrl : bodies.keySet()) {
+            if (storedUrls.contains(webUrl)) {
+                savedUrls.add(webUrl);
+            }
+        }
+        return savedUrls;
+    }
+
+    /**
+     * Returns the stored body of the article with the given web URL, or null if it has none.
+     * Must not be called on the main thread.
+     */
+    public String loadArticleBody(String webUrl) {
+        Cursor cursor = null;
+        try {
+            cursor = mDbHelper.getReadableDatabase().query(ArticleBodyEntry.TABLE_NAME,
+                    new String[] {ArticleBodyEntry.COLUMN_BODY},
+                    ArticleBodyEntry.COLUMN_WEB_URL + " = ?", new String[] {webUrl},
+                    null, null, null);
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem loading article body", e);
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the web URLs of the articles whose body is stored. Must not be called on the
+     * main thread.
+     */
+    public Set<String> loadArticleBodyUrls() {
+        Set<String> webUrls = new HashSet<>();
+
+        Cursor cursor = null;
+        try {
+            cursor = mDbHelper.getReadableDatabase().query(ArticleBodyEntry.TABLE_NAME,
+                    new String[] {ArticleBodyEntry.COLUMN_WEB_URL}, null, null, null, null, null);
+            while (cursor.moveToNext()) {
+                webUrls.add(cursor.getString(0));
+            }
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem loading article body URLs", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return webUrls;
+    }
+
+    /**
+     * Delete the bodies whose article is no longer stored.
+     */
+    private static void deleteOrphanBodies(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + ArticleBodyEntry.TABLE_NAME + " WHERE "
+                + ArticleBodyEntry.COLUMN_WEB_URL + " NOT IN (SELECT "
+                + ArticleEntry.COLUMN_WEB_URL + " FROM " + ArticleEntry.TABLE_NAME + ")");
+    }
+
+    /**
+     * Replace the snapshot with the given articles, or delete it if it can't be written.
+     */
+    private void writeSnapshot(List<NewsArticle> articles) {
+        synchronized (mSnapshotLock) {
+            try {
+                ArticleSnapshot.write(articles, mSnapshotFile);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem writing the article snapshot", e);
+                mSnapshotFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the articles of the database, newest first.
+     */
+    private List<NewsArticle> queryArticles() {
+        List<NewsArticle> articles = new ArrayList<>();
+
+        Cursor cursor = null;
+        try {
+            cursor = mDbHelper.getReadableDatabase().query(ArticleEntry.TABLE_NAME,
+                    ARTICLE_PROJECTION, null, null, null, null, SORT_ORDER);
+            readArticles(cursor, articles);
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem loading stored articles", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return articles;
+    }
+
+    /**
+     * Returns the searchable articles whose title contains every word of the given query,
+     * newest first, including those too old to be kept to show. The last word may be
+     * incomplete, as while the user is typing: every word matches the words starting with it.
+     * Must not be called on the main thread.
+     *
+     * @param query typed by the user
+     * @param limit maximum number of articles returned
+     * @param cancellationSignal cancels the query when a newer one replaces it
+     * @throws OperationCanceledException if the query was cancelled
+     */
+    public List<NewsArticle> searchArticles(String query, int limit,
+                                            CancellationSignal cancellationSignal) {
+        List<NewsArticle> articles = new ArrayList<>();
+        String matchQuery = buildMatchQuery(query);
+        if (matchQuery == null) {
+            return articles;
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = mDbHelper.getReadableDatabase().rawQuery(SEARCH_QUERY,
+                    new String[] {matchQuery, String.valueOf(limit)}, cancellationSignal);
+            readArticles(cursor, articles);
+        } catch (SQLiteException e) {
+            Log.e(LOG_TAG, "Problem searching stored articles", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return articles;
+    }
+
+    /**
+     * Returns the full-text query matching the titles that contain a word starting with each
+     * word of the given text, e.g. "man utd" becomes "man* utd*", or null if the text has no
+     * words. Punctuation is dropped, so the text can't form FTS operators.
+     */
+    static String buildMatchQuery(String text) {
+        StringBuilder matchQuery = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (matchQuery.length() > 0) {
+                    matchQuery.append(' ');
+                }
+                matchQuery.append(word).append('*');
+            }
+        }
+        return matchQuery.length() > 0 ? matchQuery.toString() : null;
+    }
+
+    /**
+     * Add an article to the given list for every row of the cursor, which holds the columns of
+     * {@link #ARTICLE_PROJECTION}.
+     */
+    private static void readArticles(Cursor cursor, List<NewsArticle> articles) {
+        int titleColumnIndex = cursor.getColumnIndex(ArticleEntry.COLUMN_TITLE);
+        int sectionColumnIndex = cursor.getColumnIndex(ArticleEntry.COLUMN_SECTION);
+        int webUrlColumnIndex = cursor.getColumnIndex(ArticleEntry.COLUMN_WEB_URL);
+        int thumbnailColumnIndex = cursor.getColumnIndex(ArticleEntry.COLUMN_THUMBNAIL_URL);
+        int publishedColumnIndex = cursor.getColumnIndex(ArticleEntry.COLUMN_PUBLISHED_AT);
+
+        ArticleBuffer buffer = new ArticleBuffer();
+        while (cursor.moveToNext()) {
+            articles.add(buffer.add(cursor.getString(titleColumnIndex),
+                    cursor.getString(sectionColumnIndex),
+                    cursor.getString(webUrlColumnIndex),
+                    cursor.getString(thumbnailColumnIndex),
+                    cursor.getLong(publishedColumnIndex)));
+        }
+    }
+}
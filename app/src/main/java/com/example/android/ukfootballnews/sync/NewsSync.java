@@ -0,0 +1,243 @@
+package com.example.android.ukfootballnews.sync;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.android.ukfootballnews.FetchResult;
+import com.example.android.ukfootballnews.NewsArticle;
+import com.example.android.ukfootballnews.NewsFeed;
+import com.example.android.ukfootballnews.QueryUtils;
+import com.example.android.ukfootballnews.data.ArticleStore;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the {@link ArticleStore} up to date in the background by only requesting the articles
+ * published since the newest one already stored.
+ *
+ * The publication time of the newest article seen is kept in the app's shared preferences.
+ * Each sync asks every followed feed for the articles published from that day on, newest
+ * first, and stops paging as soon as it reaches articles that are already stored.
+ */
+public final class NewsSync {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsSync.class.getSimpleName();
+
+    /** ID of the periodic sync job */
+    private static final int SYNC_JOB_ID = 1;
+
+    /** How often the store is synced in the background */
+    private static final long SYNC_INTERVAL_MILLIS = 30 * 60 * 1000;
+
+    /**
+     * Articles published up to this long before the newest one seen are requested again, in
+     * case they only became visible in the API after the last sync.
+     */
+    private static final long SYNC_OVERLAP_MILLIS = 10 * 60 * 1000;
+
+    /** Number of articles requested per page of each feed */
+    private static final int SYNC_PAGE_SIZE = 50;
+
+    /** Maximum number of pages requested per feed, after a long time without syncing */
+    private static final int MAX_SYNC_PAGES = 4;
+
+    /** Name of the shared preferences file holding the sync state */
+    private static final String PREFS_NAME = "news_sync";
+
+    /** Publication time, in milliseconds, of the newest article seen */
+    private static final String PREF_NEWEST_PUBLISHED_AT = "newest_published_at";
+
+    /**
+     * Create a private constructor because no one should ever create a {@link NewsSync}
+     * object. This class only holds static methods.
+     */
+    private NewsSync() {
+    }
+
+    /**
+     * Schedule the periodic background sync, unless it is already scheduled. It only runs
+     * while there is a network connection, and the job itself skips syncing while the battery
+     * is low. The job scheduler is only available from Android 5.0; on older versions the
+     * articles are still fetched when the app is opened.
+     *
+     * @param context of the app
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            Log.i(LOG_TAG, "schedule(): no job scheduler on this version, not syncing");
+            return;
+        }
+        scheduleJob(context.getApplicationContext());
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == SYNC_JOB_ID) {
+                // Rescheduling would restart the interval, so leave the existing job alone
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(SYNC_JOB_ID,
+                new ComponentName(context, NewsSyncJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPeriodic(SYNC_INTERVAL_MILLIS)
+                .setPersisted(true)
+                .build();
+        if (scheduler.schedule(job) == JobScheduler.RESULT_SUCCESS) {
+            Log.i(LOG_TAG, "schedule(): sync scheduled every "
+                    + SYNC_INTERVAL_MILLIS / 60000 + " minutes");
+        } else {
+            Log.e(LOG_TAG, "schedule(): the sync job could not be scheduled");
+        }
+    }
+
+    /**
+     * Record that the given articles, the newest of the followed feeds, were received and
+     * stored by some other fetch. The newest publication time seen only moves forward when
+     * the articles reach back to it, so a sync never skips the articles in between.
+     *
+     * @param context of the app
+     * @param articles the first page of every followed feed
+     */
+    public static void onNewestArticlesStored(Context context, List<NewsArticle> articles) {
+        if (articles == null || articles.isEmpty()) {
+            return;
+        }
+
+        long newest = Long.MIN_VALUE;
+        long oldest = Long.MAX_VALUE;
+        for (NewsArticle article : articles) {
+            newest = Math.max(newest, article.getPublicationDate());
+            oldest = Math.min(oldest, article.getPublicationDate());
+        }
+
+        SharedPreferences prefs = getPreferences(context);
+        long watermark = prefs.getLong(PREF_NEWEST_PUBLISHED_AT, 0);
+        if (watermark == 0 || oldest <= watermark) {
+            prefs.edit()
+                    .putLong(PREF_NEWEST_PUBLISHED_AT, Math.max(watermark, newest))
+                    .apply();
+        }
+    }
+
+    /**
+     * Fetch the articles published since the last sync and merge them into the store. Must
+     * not be called on the main thread.
+     *
+     * @param context of the app
+     * @param cancelled set when the sync should stop early
+     * @return true if every feed was synced
+     */
+    static boolean syncNow(Context context, AtomicBoolean cancelled) {
+        long startNanos = System.nanoTime();
+        SharedPreferences prefs = getPreferences(context);
+        long watermark = prefs.getLong(PREF_NEWEST_PUBLISHED_AT, 0);
+
+        // Nothing seen yet: store the newest page of each feed, like opening the app would
+        long since = watermark > 0 ? watermark - SYNC_OVERLAP_MILLIS : 0;
+        int maxPages = watermark > 0 ? MAX_SYNC_PAGES : 1;
+        String baseUrl = since > 0 ? buildDeltaBaseUrl(since) : NewsFeed.getSearchUrl();
+
+        List<NewsArticle> newArticles = new ArrayList<>();
+        long newest = watermark;
+        long wireByteCount = 0;
+        boolean complete = true;
+
+        feeds:
+        for (NewsFeed feed : NewsFeed.DEFAULT_FEEDS) {
+            for (int page = 1; page <= maxPages; page++) {
+                if (cancelled.get()) {
+                    Log.i(LOG_TAG, "syncNow(): cancelled");
+                    complete = false;
+                    break feeds;
+                }
+
+                FetchResult result = QueryUtils.fetchNewsData(
+                        feed.buildUrl(baseUrl, page, SYNC_PAGE_SIZE));
+                wireByteCount += result.getWireByteCount();
+                // The request failed, and the expired cached response used instead holds
+                // nothing new
+                if (result.getSource() == FetchResult.Source.STALE_CACHE) {
+                    complete = false;
+                    break;
+                }
+                if (!result.isSuccessful()) {
+                    // The Guardian API answers 400 for a page past the last one
+                    if (page == 1) {
+                        complete = false;
+                    }
+                    break;
+                }
+
+                boolean reachedStoredArticles = false;
+                for (NewsArticle article : result.getArticles()) {
+                    long publishedAt = article.getPublicationDate();
+                    if (publishedAt >= since) {
+                        newArticles.add(article);
+                        newest = Math.max(newest, publishedAt);
+                    } else {
+                        reachedStoredArticles = true;
+                    }
+                }
+
+                if (reachedStoredArticles || result.getArticles().size() < SYNC_PAGE_SIZE) {
+                    break;
+                }
+            }
+        }
+
+        // Keep whatever was received, even if the sync did not complete
+        ArticleStore.get(context).saveArticles(newArticles);
+
+        // Only move forward once every feed is synced, so a feed that failed is requested
+        // again from the same point next time.
+        if (complete) {
+            prefs.edit()
+                    .putLong(PREF_NEWEST_PUBLISHED_AT, newest)
+                    .apply();
+        }
+
+        Log.i(LOG_TAG, "syncNow(): " + newArticles.size() + " articles since "
+                + (since > 0 ? new Date(since) : "the start") + ", " + wireByteCount
+                + " bytes in " + (System.nanoTime() - startNanos) / 1000000 + " ms"
+                + (complete ? "" : ", incomplete"));
+        return complete;
+    }
+
+    /**
+     * Returns the search URL limited to the articles published on or after the day of the
+     * given time. The API only filters by day, so the caller drops the older articles.
+     */
+    private static String buildDeltaBaseUrl(long since) {
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return Uri.parse(NewsFeed.getSearchUrl()).buildUpon()
+                .appendQueryParameter("from-date", dayFormat.format(new Date(since)))
+                .appendQueryParameter("use-date", "published")
+                .build()
+                .toString();
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
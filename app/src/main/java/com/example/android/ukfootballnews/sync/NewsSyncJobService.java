@@ -0,0 +1,80 @@
+package com.example.android.ukfootballnews.sync;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link JobService} running the periodic background sync scheduled by
+ * {@link NewsSync#schedule(android.content.Context)}.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class NewsSyncJobService extends JobService {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = NewsSyncJobService.class.getSimpleName();
+
+    /** Battery level, in percent, below which the sync is skipped unless charging */
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    /** Thread the sync runs on; jobs run on the main thread */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** Set when the system stops the running job */
+    private AtomicBoolean mCancelled;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        if (isBatteryLow()) {
+            Log.i(LOG_TAG, "onStartJob(): battery low, skipping this sync");
+            return false;
+        }
+
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        mCancelled = cancelled;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean synced = NewsSync.syncNow(getApplicationContext(), cancelled);
+                if (!cancelled.get()) {
+                    // Retry with the scheduler's back-off if a feed could not be synced
+                    jobFinished(params, !synced);
+                }
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mCancelled != null) {
+            mCancelled.set(true);
+        }
+        // Try again once the constraints are met again
+        return true;
+    }
+
+    /**
+     * Returns true if the battery is low and not charging. The job scheduler of this API
+     * level has no battery constraint other than requiring the device to charge.
+     */
+    private boolean isBatteryLow() {
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return false;
+        }
+        boolean charging = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return !charging && level >= 0 && scale > 0 && level * 100 / scale < LOW_BATTERY_PERCENT;
+    }
+}
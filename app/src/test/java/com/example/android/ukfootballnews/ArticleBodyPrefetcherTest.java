@@ -0,0 +1,84 @@
+package com.example.android.ukfootballnews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the requests made by {@link ArticleBodyPrefetcher} and the parsing of their
+ * responses by {@link QueryUtils#extractArticleBodies}.
+ */
+public class ArticleBodyPrefetcherTest {
+
+    private static final String URL_1 = "https://www.theguardian.com/football/2017/dec/27/one";
+    private static final String URL_2 = "https://www.theguardian.com/football/2017/dec/27/two";
+
+    private static final String RESPONSE = "{\"response\":{\"status\":\"ok\",\"results\":["
+            + "{\"id\":\"football/2017/dec/27/one\",\"webUrl\":\"" + URL_1 + "\","
+            + "\"fields\":{\"body\":\"<p>First</p>\"}},"
+            + "{\"id\":\"football/2017/dec/27/none\",\"webUrl\":\"https://www.theguardian.com/x\"},"
+            + "{\"id\":\"football/2017/dec/27/two\",\"webUrl\":\"" + URL_2 + "\","
+            + "\"fields\":{\"body\":\"<p>Second</p>\"}}]}}";
+
+    @Before
+    public void setUp() {
+        QueryUtils.setJsonReaderFactory(GsonJsonStreamReader.FACTORY);
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setJsonReaderFactory(null);
+    }
+
+    @Test
+    public void bodiesUrl_listsTheArticleIds() {
+        assertEquals("football/2017/dec/27/one", ArticleBodyPrefetcher.toArticleId(URL_1));
+        assertNull(ArticleBodyPrefetcher.toArticleId("https://example.com/football/1"));
+        assertNull(ArticleBodyPrefetcher.toArticleId("https://www.theguardian.com/"));
+
+        assertEquals("https://content.guardianapis.com/search?show-fields=body&page-size=2"
+                        + "&ids=football%2F2017%2Fdec%2F27%2Fone%2Cfootball%2F2017%2Fdec%2F27%2Ftwo",
+                ArticleBodyPrefetcher.buildBodiesUrl(
+                        "https://content.guardianapis.com/search?show-fields=body",
+                        Arrays.asList(URL_1, URL_2)));
+    }
+
+    @Test
+    public void extractArticleBodies_byWebUrl() throws IOException {
+        Map<String, String> bodies = QueryUtils.extractArticleBodies(
+                new ByteArrayInputStream(RESPONSE.getBytes("UTF-8")));
+
+        assertEquals(Arrays.asList(URL_1, URL_2), Arrays.asList(bodies.keySet().toArray()));
+        assertEquals("<p>First</p>", bodies.get(URL_1));
+        assertEquals("<p>Second</p>", bodies.get(URL_2));
+    }
+
+    @Test
+    public void extractArticleBodies_keepsBodiesReadBeforeTheResponseWasCut() throws IOException {
+        // Cut in the middle of the second body, as when the byte budget runs out
+        String truncated = RESPONSE.substring(0, RESPONSE.indexOf("Second"));
+
+        Map<String, String> bodies = QueryUtils.extractArticleBodies(
+                new ByteArrayInputStream(truncated.getBytes("UTF-8")));
+
+        assertEquals(1, bodies.size());
+        assertEquals("<p>First</p>", bodies.get(URL_1));
+    }
+
+    @Test
+    public void stripMedia_removesImagesAndEmbeds() {
+        String body = "<p>Before</p><figure class=\"element-image\">\n<img src=\"a.jpg\">"
+                + "<figcaption>Caption</figcaption></figure><p>After<IMG SRC=\"b.jpg\"/></p>"
+                + "<iframe src=\"https://www.youtube.com/embed/1\"></iframe>";
+
+        assertEquals("<p>Before</p><p>After</p>",
+                ArticleBodyPrefetcher.stripMedia(body));
+    }
+}
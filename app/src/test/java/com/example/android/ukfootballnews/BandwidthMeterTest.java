@@ -0,0 +1,70 @@
+package com.example.android.ukfootballnews;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link BandwidthMeter}.
+ */
+public class BandwidthMeterTest {
+
+    @Before
+    public void setUp() {
+        BandwidthMeter.reset();
+    }
+
+    @Test
+    public void estimate_isMovingAverageOfLargeDownloads() {
+        assertEquals(-1, BandwidthMeter.getEstimateKbps());
+
+        // 125000 bytes in 1s: 1000 kbps
+        BandwidthMeter.recordTransfer(125000, 1000000000L);
+        assertEquals(1000, BandwidthMeter.getEstimateKbps());
+
+        // A single slow download moves the estimate only part of the way
+        BandwidthMeter.recordTransfer(12500, 1000000000L);
+        long estimate = BandwidthMeter.getEstimateKbps();
+        assertTrue(estimate < 1000 && estimate > 500);
+
+        // Too small to measure throughput
+        BandwidthMeter.recordTransfer(1000, 1000000000L);
+        assertEquals(estimate, BandwidthMeter.getEstimateKbps());
+        assertEquals(2, BandwidthMeter.getSampleCount());
+    }
+
+    @Test
+    public void meteredStream_recordsOnlyCompleteDownloads() throws IOException {
+        byte[] data = new byte[64 * 1024];
+
+        InputStream partial = new BandwidthMeter.MeteredInputStream(
+                new ByteArrayInputStream(data), -1);
+        partial.read(new byte[16 * 1024]);
+        partial.close();
+        assertEquals(0, BandwidthMeter.getSampleCount());
+
+        InputStream complete = new BandwidthMeter.MeteredInputStream(
+                new ByteArrayInputStream(data), -1);
+        byte[] buffer = new byte[8192];
+        while (complete.read(buffer) != -1) {
+            // Read to the end
+        }
+        complete.close();
+        assertEquals(1, BandwidthMeter.getSampleCount());
+
+        // Read up to its known length, like an image decoder stopping at the end of the image
+        InputStream decoded = new BandwidthMeter.MeteredInputStream(
+                new ByteArrayInputStream(data), data.length);
+        int total = 0;
+        while (total < data.length) {
+            total += decoded.read(buffer);
+        }
+        decoded.close();
+        assertEquals(2, BandwidthMeter.getSampleCount());
+    }
+}
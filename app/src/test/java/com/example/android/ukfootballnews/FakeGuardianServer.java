@@ -0,0 +1,303 @@
+package com.example.android.ukfootballnews;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local server standing in for the search endpoint of The Guardian API, answering with
+ * synthetic results shaped like the real ones, so the fetch pipeline can be run repeatably and
+ * measured.
+ *
+ * Every query (its "q", "section" and "tag" parameters) has its own {@link #setResultCount
+ * number of results}, newest first, paged with the "page" and "page-size" parameters; a page
+ * past the last one gets a 400 response, like the real API. The server can also be made to
+ * answer slowly, to send the body at a limited rate, to answer with error codes, or to cut
+ * bodies short.
+ */
+public class FakeGuardianServer {
+
+    /** Scripted instead of a response code to cut the body short */
+    public static final int TRUNCATE = -1;
+
+    /**
+     * Scripted instead of a response code to send a complete body holding a document that
+     * ends early, as if the server had cut it
+     */
+    public static final int MALFORMED = -2;
+
+    /** Publication time of the newest result, 2017-12-27T20:50:38Z */
+    private static final long NEWEST_PUBLISHED_AT = 1514407838000L;
+
+    /** Time between the publication of two consecutive results */
+    private static final long PUBLICATION_INTERVAL_MILLIS = 37 * 60 * 1000;
+
+    private final HttpServer mServer;
+
+    /** Threads serving the requests, stopped with the server */
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    private volatile int mResultCount = 200;
+
+    private volatile long mLatencyMillis;
+
+    private volatile long mBytesPerSecond;
+
+    private volatile int mTruncateAfterBytes = 1024;
+
+    /** Freshness lifetime of the responses, or 0 for responses that mustn't be stored */
+    private volatile int mMaxAgeSeconds;
+
+    /** Response codes of the next requests, or {@link #TRUNCATE} or {@link #MALFORMED} */
+    private final ConcurrentLinkedQueue<Integer> mScript = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    /**
+     * Creates a server listening on a free local port; it must be started with
+     * {@link #start()}.
+     */
+    public FakeGuardianServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/search", new SearchHandler());
+        // Requests are served concurrently, like the real API
+        mServer.setExecutor(mExecutor);
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    public void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the search URL of this server, taking the same parameters as
+     * {@link NewsFeed#SEARCH_URL}.
+     */
+    public String getSearchUrl() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/search?format=json&show-fields=thumbnail&order-by=newest&api-key=test";
+    }
+
+    /** Sets the number of results of every query. */
+    public void setResultCount(int resultCount) {
+        mResultCount = resultCount;
+    }
+
+    /** Sets how long the server waits before answering each request. */
+    public void setLatencyMillis(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /** Limits the rate at which bodies are sent, or 0 for no limit. */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Sets the number of body bytes sent before a {@link #TRUNCATE}d response is cut, and the
+     * length of a {@link #MALFORMED} document.
+     */
+    public void setTruncateAfterBytes(int truncateAfterBytes) {
+        mTruncateAfterBytes = truncateAfterBytes;
+    }
+
+    /** Lets clients cache the responses for the given time, or 0 for "no-store". */
+    public void setMaxAgeSeconds(int maxAgeSeconds) {
+        mMaxAgeSeconds = maxAgeSeconds;
+    }
+
+    /**
+     * Makes the next request get the given response code, have its body cut short with
+     * {@link #TRUNCATE}, or get a {@link #MALFORMED} document. Requests past the script are
+     * answered normally.
+     */
+    public void script(int... responseCodes) {
+        for (int responseCode : responseCodes) {
+            mScript.add(responseCode);
+        }
+    }
+
+    /** Returns the number of requests received. */
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Returns the body of the given page of a query with the given number of results.
+     */
+    static byte[] buildPage(String query, int resultCount, int page, int pageSize) {
+        int pages = (resultCount + pageSize - 1) / pageSize;
+        int start = (page - 1) * pageSize;
+        int end = Math.min(resultCount, start + pageSize);
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        StringBuilder json = new StringBuilder(1024 + pageSize * 700);
+        json.append("{\"response\":{\"status\":\"ok\",\"userTier\":\"developer\",\"total\":")
+                .append(resultCount).append(",\"startIndex\":").append(start + 1)
+                .append(",\"pageSize\":").append(pageSize).append(",\"currentPage\":")
+                .append(page).append(",\"pages\":").append(pages)
+                .append(",\"orderBy\":\"newest\",\"results\":[");
+        for (int i = start; i < end; i++) {
+            String id = "football/2017/dec/27/" + query + "-synthetic-article-" + i;
+            String date = dateFormat.format(
+                    new Date(NEWEST_PUBLISHED_AT - i * PUBLICATION_INTERVAL_MILLIS));
+            json.append(i > start ? "," : "")
+                    .append("{\"id\":\"").append(id)
+                    .append("\",\"type\":\"article\",\"sectionId\":\"football\"")
+                    .append(",\"sectionName\":\"Football\",\"webPublicationDate\":\"")
+                    .append(date).append("\",\"webTitle\":\"Synthetic match report ").append(i)
+                    .append(" for ").append(query)
+                    .append(": late winner settles a tense afternoon\",\"webUrl\":")
+                    .append("\"https://www.theguardian.com/").append(id)
+                    .append("\",\"apiUrl\":\"https://content.guardianapis.com/").append(id)
+                    .append("\",\"fields\":{\"thumbnail\":\"https://media.guim.co.uk/")
+                    .append(Integer.toHexString(0x10000000 + i))
+                    .append("/0_0_3000_1800/500.jpg\"},\"isHosted\":false")
+                    .append(",\"pillarId\":\"pillar/sport\",\"pillarName\":\"Sport\"}");
+        }
+        json.append("]}}");
+        try {
+            return json.toString().getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Answers the search requests.
+     */
+    private class SearchHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            mRequestCount.incrementAndGet();
+            try {
+                Map<String, String> parameters =
+                        parseQuery(exchange.getRequestURI().getRawQuery());
+                sleep(mLatencyMillis);
+
+                Integer scripted = mScript.poll();
+                int responseCode = scripted != null ? scripted : 200;
+                if (responseCode != 200 && responseCode != TRUNCATE
+                        && responseCode != MALFORMED) {
+                    send(exchange, responseCode, "{\"response\":{\"status\":\"error\"}}"
+                            .getBytes("UTF-8"), -1);
+                    return;
+                }
+
+                int page = parseInt(parameters.get("page"), 1);
+                int pageSize = parseInt(parameters.get("page-size"), 10);
+                String query = parameters.get("q") + "-" + parameters.get("section") + "-"
+                        + parameters.get("tag");
+                int resultCount = mResultCount;
+                if (page < 1 || pageSize < 1 || (page - 1) * pageSize >= Math.max(1, resultCount)) {
+                    send(exchange, 400, ("{\"response\":{\"status\":\"error\",\"message\":"
+                            + "\"requested page is beyond the number of available pages\"}}")
+                            .getBytes("UTF-8"), -1);
+                    return;
+                }
+
+                byte[] body = buildPage(query.replaceAll("[^a-z0-9]+", "-"), resultCount, page,
+                        pageSize);
+                if (responseCode == MALFORMED) {
+                    body = Arrays.copyOf(body, Math.min(mTruncateAfterBytes, body.length));
+                }
+                send(exchange, 200, body, responseCode == TRUNCATE ? mTruncateAfterBytes : -1);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Send a response, at the configured rate.
+         *
+         * @param truncateAfter number of body bytes after which the connection is cut, or -1
+         */
+        private void send(HttpExchange exchange, int responseCode, byte[] body,
+                          int truncateAfter) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            int maxAgeSeconds = mMaxAgeSeconds;
+            exchange.getResponseHeaders().set("Cache-Control",
+                    maxAgeSeconds > 0 ? "max-age=" + maxAgeSeconds : "no-store");
+            exchange.sendResponseHeaders(responseCode, body.length);
+
+            int length = truncateAfter >= 0 ? Math.min(truncateAfter, body.length) : body.length;
+            long bytesPerSecond = mBytesPerSecond;
+            // Slices of about 20ms of the throttled rate
+            int sliceSize = bytesPerSecond > 0
+                    ? (int) Math.max(512, bytesPerSecond / 50) : body.length;
+            OutputStream out = exchange.getResponseBody();
+            long startNanos = System.nanoTime();
+            for (int offset = 0; offset < length; offset += sliceSize) {
+                int count = Math.min(sliceSize, length - offset);
+                out.write(body, offset, count);
+                out.flush();
+                if (bytesPerSecond > 0) {
+                    long dueNanos = (offset + count) * 1000000000L / bytesPerSecond;
+                    sleep((dueNanos - (System.nanoTime() - startNanos)) / 1000000);
+                }
+            }
+            if (length == body.length) {
+                out.close();
+            }
+            // Otherwise the exchange is closed without the rest of the body, which cuts the
+            // connection
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
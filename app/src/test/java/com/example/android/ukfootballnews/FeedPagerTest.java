@@ -0,0 +1,178 @@
+package com.example.android.ukfootballnews;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a {@link FeedPager} pages every feed on its own cursor and hands out their
+ * articles newest first, however fast each feed publishes.
+ */
+public class FeedPagerTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void busyAndQuietFeeds_areMergedInDateOrder() {
+        // A busy feed publishing every minute and a quiet one publishing every hour
+        List<NewsArticle> busy = createFeed("busy", 100, MINUTE);
+        List<NewsArticle> quiet = createFeed("quiet", 30, 60 * MINUTE);
+        FeedPager pager = new FeedPager(2, PAGE_SIZE);
+
+        List<NewsArticle> shown = new ArrayList<>(pager.acceptPages(Arrays.asList(
+                page(busy, 1), page(quiet, 1))));
+        // The quiet feed's first page is older than most of the busy feed's pages
+        assertEquals(PAGE_SIZE + 1, shown.size());
+        while (pager.hasMorePages()) {
+            int[] pages = pager.startLoad();
+            List<FetchResult> results = new ArrayList<>();
+            if (pages[0] > 0) {
+                results.add(page(busy, pages[0]));
+            }
+            if (pages[1] > 0) {
+                results.add(page(quiet, pages[1]));
+            }
+            shown.addAll(pager.acceptPages(results));
+        }
+
+        assertEquals(busy.size() + quiet.size(), shown.size());
+        assertNewestFirst(shown);
+    }
+
+    @Test
+    public void feedWithAPageWaiting_isNotFetched() {
+        List<NewsArticle> busy = createFeed("busy", 100, MINUTE);
+        List<NewsArticle> quiet = createFeed("quiet", 30, 60 * MINUTE, 60 * MINUTE);
+        FeedPager pager = new FeedPager(2, PAGE_SIZE);
+
+        // The quiet feed's whole first page waits for the busy feed to catch up
+        assertEquals(page(busy, 1).getArticles(),
+                pager.acceptPages(Arrays.asList(page(busy, 1), page(quiet, 1))));
+        assertArrayEquals(new int[] {2, 0}, pager.startLoad());
+    }
+
+    @Test
+    public void lastPageOfEveryFeed_stopsPaging() {
+        FeedPager pager = new FeedPager(2, PAGE_SIZE);
+
+        List<NewsArticle> shown = pager.acceptPages(Arrays.asList(
+                page(createFeed("a", 5, MINUTE), 1), page(createFeed("b", 3, MINUTE), 1)));
+
+        assertFalse(pager.hasMorePages());
+        assertEquals(8, shown.size());
+        assertNewestFirst(shown);
+    }
+
+    @Test
+    public void articleInSeveralFeeds_isShownOnce() {
+        List<NewsArticle> a = createFeed("a", 5, MINUTE);
+        List<NewsArticle> b = new ArrayList<>(createFeed("b", 4, MINUTE));
+        b.add(a.get(2));
+        FeedPager pager = new FeedPager(2, PAGE_SIZE);
+
+        List<NewsArticle> shown = pager.acceptPages(Arrays.asList(page(a, 1), page(b, 1)));
+
+        assertEquals(9, shown.size());
+        Set<String> urls = new HashSet<>();
+        for (NewsArticle article : shown) {
+            assertTrue(article.getInfoUrl(), urls.add(article.getInfoUrl()));
+        }
+    }
+
+    @Test
+    public void failedFeed_isRetriedWithoutHoldingBackTheOthers() {
+        List<NewsArticle> busy = createFeed("busy", 25, MINUTE);
+        List<NewsArticle> quiet = createFeed("quiet", 5, 60 * MINUTE, 60 * MINUTE);
+        FeedPager pager = new FeedPager(2, PAGE_SIZE);
+        FetchResult failure = new FetchResult(null, 503, FetchResult.Source.NETWORK, 0, 0, null);
+
+        List<NewsArticle> shown = new ArrayList<>(pager.acceptPages(Arrays.asList(
+                page(busy, 1), failure)));
+        assertEquals(page(busy, 1).getArticles(), shown);
+        assertTrue(pager.hasFailedPages());
+
+        // The page that failed is requested again with the next page of the other feed
+        assertArrayEquals(new int[] {2, 1}, pager.startLoad());
+        shown.addAll(pager.acceptPages(Arrays.asList(page(busy, 2), page(quiet, 1))));
+        assertFalse(pager.hasFailedPages());
+        while (pager.hasMorePages()) {
+            int[] pages = pager.startLoad();
+            assertEquals(0, pages[1]);
+            shown.addAll(pager.acceptPages(Arrays.asList(page(busy, pages[0]))));
+        }
+
+        assertEquals(busy.size() + quiet.size(), shown.size());
+        assertNewestFirst(shown.subList(PAGE_SIZE, shown.size()));
+    }
+
+    @Test
+    public void refreshedFirstPage_onlyHandsOutTheArticlesPublishedSince() {
+        List<NewsArticle> feed = createFeed("feed", 30, MINUTE, 3 * MINUTE);
+        FeedPager pager = new FeedPager(1, PAGE_SIZE);
+        List<NewsArticle> shown = new ArrayList<>(pager.acceptPages(
+                Collections.singletonList(page(feed, 1))));
+        pager.startLoad();
+        shown.addAll(pager.acceptPages(Collections.singletonList(page(feed, 2))));
+        assertTrue(pager.hasNextPages());
+
+        // Three articles were published since, pushing the others down the pages
+        List<NewsArticle> refreshed = new ArrayList<>(createFeed("new", 3, MINUTE));
+        refreshed.addAll(feed);
+        List<NewsArticle> published = pager.acceptRefreshedFirstPages(
+                Collections.singletonList(page(refreshed, 1)));
+        assertEquals(refreshed.subList(0, 3), published);
+
+        // The cursor is kept, and the articles pushed onto the next page aren't shown twice
+        shown.addAll(0, published);
+        while (pager.hasMorePages()) {
+            shown.addAll(pager.acceptPages(Collections.singletonList(
+                    page(refreshed, pager.startLoad()[0]))));
+        }
+        assertEquals(refreshed, shown);
+    }
+
+    private static List<NewsArticle> createFeed(String name, int count, long intervalMillis) {
+        return createFeed(name, count, intervalMillis, 0);
+    }
+
+    /**
+     * Returns the articles of a feed, newest first, one published every given interval from
+     * the given age of its newest one.
+     */
+    private static List<NewsArticle> createFeed(String name, int count, long intervalMillis,
+                                                 long ageMillis) {
+        List<NewsArticle> articles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            articles.add(new NewsArticle(name + " " + i, name,
+                    "https://www.theguardian.com/" + name + "/" + i, null,
+                    1000 * 24 * 60 * MINUTE - ageMillis - i * intervalMillis));
+        }
+        return articles;
+    }
+
+    /**
+     * Returns the successful result of the given page of a feed.
+     */
+    private static FetchResult page(List<NewsArticle> feed, int page) {
+        int from = Math.min(feed.size(), (page - 1) * PAGE_SIZE);
+        int to = Math.min(feed.size(), page * PAGE_SIZE);
+        return new FetchResult(new ArrayList<>(feed.subList(from, to)), 200,
+                FetchResult.Source.NETWORK, 0, 0, null);
+    }
+
+    private static void assertNewestFirst(List<NewsArticle> articles) {
+        for (int i = 1; i < articles.size(); i++) {
+            assertTrue("Article " + i, articles.get(i - 1).getPublicationDate()
+                    >= articles.get(i).getPublicationDate());
+        }
+    }
+}
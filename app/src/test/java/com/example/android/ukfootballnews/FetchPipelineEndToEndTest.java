@@ -0,0 +1,341 @@
+package com.example.android.ukfootballnews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the whole path of the feed, from the request of each page through the parsing of the
+ * response to the {@link WindowedArticleList} behind the article list, against a
+ * {@link FakeGuardianServer}.
+ *
+ * The number of results of the large feed can be changed with the "e2e.results" system
+ * property, e.g. -De2e.results=100000; the latencies of its pages are printed. Its throughput
+ * and heap use are measured by FetchPipelineBenchmark in the benchmark module.
+ */
+public class FetchPipelineEndToEndTest {
+
+    /** Largest page size The Guardian API allows */
+    private static final int PAGE_SIZE = 200;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private FakeGuardianServer mServer;
+
+    private WindowedArticleList mArticles;
+
+    /** Duration of every page fetched, in milliseconds */
+    private final List<Long> mLatencies = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        QueryUtils.setJsonReaderFactory(GsonJsonStreamReader.FACTORY);
+        mServer = new FakeGuardianServer();
+        mServer.start();
+        NewsFeed.setSearchUrl(mServer.getSearchUrl());
+        mArticles = new WindowedArticleList(mFolder.newFolder(WindowedArticleList.DIRECTORY_NAME));
+    }
+
+    @After
+    public void tearDown() {
+        mArticles.close();
+        mServer.stop();
+        NewsFeed.setSearchUrl(null);
+        QueryUtils.setFetchResilience(new FetchResilience());
+        NewsResponseCache.uninstall();
+        QueryUtils.setJsonReaderFactory(null);
+    }
+
+    @Test
+    public void largeFeed_isFetchedIntoTheWindowedList() {
+        // Enough to scroll through ten times the chunks kept in memory
+        int resultCount = Integer.getInteger("e2e.results",
+                WindowedArticleList.CHUNK_SIZE * WindowedArticleList.DEFAULT_WINDOW_CHUNKS * 10);
+        List<String> queries = Arrays.asList("arsenal", "chelsea");
+        mServer.setResultCount(resultCount / queries.size());
+
+        int pages = (resultCount / queries.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        for (int page = 1; page <= pages; page++) {
+            // The queries of a page are fetched concurrently, like the feeds of the app
+            List<String> urls = new ArrayList<>(queries.size());
+            for (String query : queries) {
+                urls.add(buildPageUrl(query, page, PAGE_SIZE));
+            }
+            FetchResult result = MultiSectionFetcher.fetch(urls);
+            assertTrue(result.toString(), result.isSuccessful());
+            record(result);
+            mArticles.addAll(result.getArticles());
+        }
+
+        assertEquals(pages * queries.size(), mServer.getRequestCount());
+        assertEquals(resultCount / queries.size() * queries.size(), mArticles.size());
+        assertEquals(pages, mLatencies.size());
+        System.out.println(resultCount + " results, page latency " + percentiles());
+        // Scrolling through the whole feed only keeps the window in memory
+        assertNoDuplicates();
+        // Newest first within every page
+        assertTrue(mArticles.get(0).getPublicationDate()
+                >= mArticles.get(1).getPublicationDate());
+    }
+
+    @Test
+    public void everyFeed_isFetchedAtOnce() {
+        mServer.setResultCount(50);
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < NewsFeed.DEFAULT_FEEDS.size(); i++) {
+            urls.add(buildPageUrl("feed-" + i, 1, 50));
+        }
+        // The first requests of the process also load the classes and open the connections
+        MultiSectionFetcher.fetch(urls);
+        mServer.setLatencyMillis(400);
+        for (int i = 0; i < urls.size(); i++) {
+            urls.set(i, buildPageUrl("feed-" + i, 2, 25));
+        }
+
+        long startNanos = System.nanoTime();
+        FetchResult result = MultiSectionFetcher.fetch(urls);
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+
+        assertTrue(result.isSuccessful());
+        assertEquals(25 * urls.size(), result.getArticles().size());
+        // About as long as the slowest query, not one latency per batch of queries
+        assertTrue("Took " + elapsedMillis + "ms", elapsedMillis < 2 * 400);
+    }
+
+    @Test
+    public void throttledConnection_deliversEveryPage() {
+        mServer.setResultCount(200);
+        mServer.setLatencyMillis(100);
+        mServer.setBytesPerSecond(256 * 1024);
+
+        fetchPages("throttled", 4, 50);
+
+        assertEquals(200, mArticles.size());
+        assertNoDuplicates();
+        assertEquals(4, mLatencies.size());
+        // Every page waits for the latency and is sent at the limited rate
+        for (long latency : mLatencies) {
+            assertTrue("Latency " + latency, latency >= 100);
+        }
+    }
+
+    @Test
+    public void progressiveLoading_showsFirstRowsBeforeThePageIsComplete() {
+        mServer.setResultCount(50);
+        mServer.setLatencyMillis(100);
+        mServer.setBytesPerSecond(32 * 1024);
+        final long startNanos = System.nanoTime();
+        final long[] firstRowsNanos = {0};
+        final List<Integer> publishedSizes = new ArrayList<>();
+        ProgressiveArticlePublisher publisher = new ProgressiveArticlePublisher(
+                new Executor() {
+                    // One publication at a time, like the main thread; both fetch threads
+                    // publish through it
+                    @Override
+                    public synchronized void execute(Runnable runnable) {
+                        runnable.run();
+                    }
+                }, 0, new ProgressiveArticlePublisher.OnPublishListener() {
+                    @Override
+                    public void onPublish(List<NewsArticle> articles) {
+                        synchronized (publishedSizes) {
+                            if (publishedSizes.isEmpty()) {
+                                firstRowsNanos[0] = System.nanoTime() - startNanos;
+                            }
+                            publishedSizes.add(articles.size());
+                        }
+                    }
+                });
+
+        FetchResult result = MultiSectionFetcher.fetch(Arrays.asList(
+                buildPageUrl("progressive-a", 1, 50), buildPageUrl("progressive-b", 1, 50)),
+                publisher);
+        publisher.finish();
+        long completeNanos = System.nanoTime() - startNanos;
+
+        assertTrue(result.isSuccessful());
+        assertEquals(100, result.getArticles().size());
+        assertFalse(publishedSizes.isEmpty());
+        assertTrue(firstRowsNanos[0] * 2 < completeNanos);
+        // Every publication holds at least the articles of the previous one
+        for (int i = 1; i < publishedSizes.size(); i++) {
+            assertTrue(publishedSizes.get(i) >= publishedSizes.get(i - 1));
+        }
+        assertEquals(100, (int) publishedSizes.get(publishedSizes.size() - 1));
+    }
+
+    @Test
+    public void serverErrors_areRetried() {
+        FetchResilience resilience = new FetchResilience(3, 10, 20, 60000, 5, 60000,
+                new Random(1));
+        QueryUtils.setFetchResilience(resilience);
+        mServer.setResultCount(300);
+        mServer.script(503, 200, 503, 503);
+
+        fetchPages("errors", 3, 100);
+
+        assertEquals(300, mArticles.size());
+        assertEquals(3, resilience.getRetryCount());
+        assertEquals(3 + 3, mServer.getRequestCount());
+        assertEquals(FetchResilience.State.CLOSED, resilience.getState());
+    }
+
+    @Test
+    public void malformedResponse_isNotCached() throws IOException {
+        QueryUtils.setFetchResilience(noRetries());
+        File cacheDirectory = mFolder.newFolder("responses");
+        NewsResponseCache.install(cacheDirectory, 1024 * 1024);
+        mServer.setMaxAgeSeconds(60);
+        mServer.setResultCount(100);
+        mServer.setTruncateAfterBytes(4096);
+        mServer.script(FakeGuardianServer.MALFORMED);
+        String url = buildPageUrl("malformed", 1, 100);
+
+        // The body arrives in full, but the document in it ends early
+        assertFalse(QueryUtils.fetchNewsData(url).isSuccessful());
+        assertEquals(0, NewsResponseCache.getInstalled().getSize());
+        for (String name : cacheDirectory.list()) {
+            assertFalse(name, name.endsWith(".tmp"));
+        }
+
+        // So the next fetch asks the server again, and the complete page is cached
+        FetchResult result = QueryUtils.fetchNewsData(url);
+        assertTrue(result.isSuccessful());
+        assertEquals(FetchResult.Source.NETWORK, result.getSource());
+        assertEquals(100, result.getArticles().size());
+        assertEquals(FetchResult.Source.CACHE, QueryUtils.fetchNewsData(url).getSource());
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void truncatedResponse_isReportedAsAnError() {
+        QueryUtils.setFetchResilience(noRetries());
+        mServer.setResultCount(100);
+        mServer.setTruncateAfterBytes(4096);
+        mServer.script(FakeGuardianServer.TRUNCATE);
+
+        FetchResult truncated = QueryUtils.fetchNewsData(buildPageUrl("truncated", 1, 100));
+
+        // A page cut off is not mistaken for a complete one, nor for a response at all
+        assertFalse(truncated.isSuccessful());
+        assertEquals(FetchResult.NO_RESPONSE, truncated.getResponseCode());
+        assertNull(truncated.getArticles());
+        assertTrue(String.valueOf(truncated.getError()),
+                truncated.getError() instanceof IOException);
+
+        // The page is complete when fetched again
+        fetchPages("truncated", 1, 100);
+        assertEquals(100, mArticles.size());
+    }
+
+    @Test
+    public void truncatedResponse_isRetriedWithoutHandingArticlesOverTwice() {
+        FetchResilience resilience = new FetchResilience(3, 10, 20, 60000, 5, 60000,
+                new Random(1));
+        QueryUtils.setFetchResilience(resilience);
+        mServer.setResultCount(100);
+        mServer.setTruncateAfterBytes(4096);
+        mServer.script(FakeGuardianServer.TRUNCATE);
+        final List<String> parsedUrls = new ArrayList<>();
+
+        FetchResult result = QueryUtils.fetchNewsData(buildPageUrl("retried", 1, 100),
+                new QueryUtils.OnArticlesParsedListener() {
+                    @Override
+                    public void onArticlesParsed(List<NewsArticle> articles) {
+                        for (NewsArticle article : articles) {
+                            parsedUrls.add(article.getInfoUrl());
+                        }
+                    }
+                });
+
+        assertTrue(result.toString(), result.isSuccessful());
+        assertEquals(100, result.getArticles().size());
+        assertEquals(1, resilience.getRetryCount());
+        assertEquals(2, mServer.getRequestCount());
+        // The articles of the cut off attempt are not handed over again by the retry
+        assertEquals(100, parsedUrls.size());
+        assertEquals(100, new HashSet<>(parsedUrls).size());
+    }
+
+    @Test
+    public void pagePastTheEnd_isRejected() {
+        mServer.setResultCount(100);
+
+        FetchResult result = QueryUtils.fetchNewsData(buildPageUrl("end", 2, 100));
+
+        assertEquals(400, result.getResponseCode());
+        assertFalse(result.isSuccessful());
+    }
+
+    /**
+     * Fetch the given pages of a query one after the other into the windowed list.
+     */
+    private void fetchPages(String query, int pages, int pageSize) {
+        for (int page = 1; page <= pages; page++) {
+            FetchResult result = QueryUtils.fetchNewsData(buildPageUrl(query, page, pageSize));
+            assertTrue(result.toString(), result.isSuccessful());
+            record(result);
+            mArticles.addAll(result.getArticles());
+        }
+    }
+
+    /**
+     * Returns a {@link FetchResilience} making a single attempt of every request.
+     */
+    private static FetchResilience noRetries() {
+        return new FetchResilience(1, 10, 20, 60000, 5, 60000, new Random(1));
+    }
+
+    /**
+     * Returns the URL of a page of a query, like {@link NewsFeed#buildUrl(String, int, int)}
+     * builds it from {@link NewsFeed#getSearchUrl()}.
+     */
+    private static String buildPageUrl(String query, int page, int pageSize) {
+        return NewsFeed.getSearchUrl() + "&q=" + query + "&page=" + page
+                + "&page-size=" + pageSize;
+    }
+
+    private void record(FetchResult result) {
+        mLatencies.add(result.getDurationMillis());
+    }
+
+    /**
+     * Returns the median, 90th percentile and longest of the page latencies recorded.
+     */
+    private String percentiles() {
+        List<Long> sorted = new ArrayList<>(mLatencies);
+        Collections.sort(sorted);
+        return "p50 " + sorted.get(sorted.size() / 2) + "ms, p90 "
+                + sorted.get(sorted.size() * 9 / 10) + "ms, max "
+                + sorted.get(sorted.size() - 1) + "ms";
+    }
+
+    /**
+     * Reads every article of the windowed list in order, asserting none is there twice and
+     * that no more than the window is kept in memory along the way.
+     */
+    private void assertNoDuplicates() {
+        Set<String> urls = new HashSet<>();
+        for (NewsArticle article : mArticles) {
+            assertTrue(article.getInfoUrl(), urls.add(article.getInfoUrl()));
+            assertTrue(mArticles.getResidentChunkCount()
+                    <= WindowedArticleList.DEFAULT_WINDOW_CHUNKS);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.android.ukfootballnews;
+
+import android.net.ConnectivityManager;
+import android.telephony.TelephonyManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the decisions of {@link FetchPolicy} and the renditions picked by
+ * {@link ThumbnailLoader}.
+ */
+public class FetchPolicyTest {
+
+    private static final String THUMBNAIL_URL =
+            "https://media.guim.co.uk/0123abcd/0_0_3000_1800/1000.jpg";
+
+    @Test
+    public void classifyNetwork_byTypeAndCost() {
+        assertEquals(FetchPolicy.Tier.OFFLINE,
+                FetchPolicy.classifyNetwork(false, -1, -1, false, false, false));
+        assertEquals(FetchPolicy.Tier.UNMETERED, FetchPolicy.classifyNetwork(true,
+                ConnectivityManager.TYPE_WIFI, 0, false, false, false));
+        // e.g. a phone's hotspot
+        assertEquals(FetchPolicy.Tier.METERED, FetchPolicy.classifyNetwork(true,
+                ConnectivityManager.TYPE_WIFI, 0, true, false, false));
+        assertEquals(FetchPolicy.Tier.METERED, FetchPolicy.classifyNetwork(true,
+                ConnectivityManager.TYPE_MOBILE, TelephonyManager.NETWORK_TYPE_LTE, true, false,
+                false));
+        assertEquals(FetchPolicy.Tier.CONSTRAINED, FetchPolicy.classifyNetwork(true,
+                ConnectivityManager.TYPE_MOBILE, TelephonyManager.NETWORK_TYPE_EDGE, true, false,
+                false));
+        assertEquals(FetchPolicy.Tier.CONSTRAINED, FetchPolicy.classifyNetwork(true,
+                ConnectivityManager.TYPE_MOBILE, TelephonyManager.NETWORK_TYPE_LTE, true, true,
+                false));
+        assertEquals(FetchPolicy.Tier.CONSTRAINED, FetchPolicy.classifyNetwork(true,
+                ConnectivityManager.TYPE_WIFI, 0, false, false, true));
+    }
+
+    @Test
+    public void slowNetwork_isConstrainedWhateverItsType() {
+        assertEquals(FetchPolicy.Tier.CONSTRAINED,
+                FetchPolicy.applyThroughput(FetchPolicy.Tier.UNMETERED, 100));
+        assertEquals(FetchPolicy.Tier.UNMETERED,
+                FetchPolicy.applyThroughput(FetchPolicy.Tier.UNMETERED, 20000));
+        // Nothing measured yet
+        assertEquals(FetchPolicy.Tier.METERED,
+                FetchPolicy.applyThroughput(FetchPolicy.Tier.METERED, -1));
+        assertEquals(FetchPolicy.Tier.OFFLINE,
+                FetchPolicy.applyThroughput(FetchPolicy.Tier.OFFLINE, 100));
+    }
+
+    @Test
+    public void renditionUrl_followsTheNetwork() {
+        assertEquals("https://media.guim.co.uk/0123abcd/0_0_3000_1800/500.jpg",
+                ThumbnailLoader.getRenditionUrl(THUMBNAIL_URL, 300, false));
+        assertEquals("https://media.guim.co.uk/0123abcd/0_0_3000_1800/140.jpg",
+                ThumbnailLoader.getRenditionUrl(THUMBNAIL_URL, 300, true));
+        // Never larger than the original
+        assertEquals("https://media.guim.co.uk/0123abcd/0_0_3000_1800/140.jpg",
+                ThumbnailLoader.getRenditionUrl(
+                        "https://media.guim.co.uk/0123abcd/0_0_3000_1800/140.jpg", 300, false));
+        assertEquals("https://example.com/image.jpg",
+                ThumbnailLoader.getRenditionUrl("https://example.com/image.jpg", 300, true));
+    }
+}
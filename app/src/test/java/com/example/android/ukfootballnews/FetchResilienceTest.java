@@ -0,0 +1,255 @@
+package com.example.android.ukfootballnews;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link QueryUtils#fetchNewsData(String)} through {@link FetchResilience} against a
+ * local server standing in for The Guardian API, which fails on demand.
+ */
+public class FetchResilienceTest {
+
+    private static final byte[] BODY = ("{\"response\":{\"results\":[{\"webTitle\":\"Title\","
+            + "\"webUrl\":\"https://www.theguardian.com/football/1\",\"sectionName\":\"Football\","
+            + "\"webPublicationDate\":\"2017-12-27T20:50:38Z\","
+            + "\"fields\":{\"thumbnail\":\"https://media.guim.co.uk/1.jpg\"}}]}}").getBytes();
+
+    /** Scripted instead of a response code to close the connection without a response */
+    private static final int DROP_CONNECTION = -1;
+
+    /** Response codes of the next requests, or {@link #DROP_CONNECTION} */
+    private final ConcurrentLinkedQueue<Integer> mScript = new ConcurrentLinkedQueue<>();
+
+    /** Response code of every request once the script is empty */
+    private volatile int mDefaultResponseCode = 200;
+
+    /** Number of requests the server received */
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+
+    private HttpServer mServer;
+
+    private String mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        QueryUtils.setJsonReaderFactory(GsonJsonStreamReader.FACTORY);
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/search", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequestCount.incrementAndGet();
+                Integer scripted = mScript.poll();
+                int responseCode = scripted != null ? scripted : mDefaultResponseCode;
+                if (responseCode == DROP_CONNECTION) {
+                    exchange.close();
+                    return;
+                }
+                byte[] body = responseCode == 200 ? BODY : "{}".getBytes();
+                exchange.getResponseHeaders().set("Cache-Control", "max-age=0");
+                exchange.sendResponseHeaders(responseCode, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        mServer.start();
+        mUrl = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/search?q=football";
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        QueryUtils.setFetchResilience(new FetchResilience());
+        QueryUtils.setJsonReaderFactory(null);
+    }
+
+    @Test
+    public void transientFailures_areRetried() {
+        FetchResilience resilience = install(3, 2, 60000);
+        mScript.add(503);
+        mScript.add(429);
+
+        FetchResult result = QueryUtils.fetchNewsData(mUrl);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(FetchResult.Source.NETWORK, result.getSource());
+        assertEquals(3, mRequestCount.get());
+        assertEquals(2, resilience.getRetryCount());
+        assertEquals(FetchResilience.State.CLOSED, resilience.getState());
+    }
+
+    @Test
+    public void droppedConnection_isRetried() {
+        FetchResilience resilience = install(3, 2, 60000);
+        // HttpURLConnection itself silently retries a GET once on a dropped connection
+        mScript.add(DROP_CONNECTION);
+        mScript.add(DROP_CONNECTION);
+
+        FetchResult result = QueryUtils.fetchNewsData(mUrl);
+
+        assertTrue(result.isSuccessful());
+        assertTrue(resilience.getRetryCount() >= 1);
+    }
+
+    @Test
+    public void clientErrors_areNotRetried() {
+        FetchResilience resilience = install(3, 2, 60000);
+        mScript.add(400);
+
+        FetchResult result = QueryUtils.fetchNewsData(mUrl);
+
+        assertEquals(400, result.getResponseCode());
+        assertEquals(1, mRequestCount.get());
+        assertEquals(0, resilience.getRetryCount());
+        assertEquals(FetchResilience.State.CLOSED, resilience.getState());
+    }
+
+    @Test
+    public void unhealthyApi_opensCircuit_andServesCachedArticles() throws IOException {
+        installCache();
+        FetchResilience resilience = install(2, 2, 60000);
+
+        // Cached, but expired straight away
+        assertTrue(QueryUtils.fetchNewsData(mUrl).isSuccessful());
+
+        mDefaultResponseCode = 503;
+        for (int i = 0; i < 2; i++) {
+            FetchResult result = QueryUtils.fetchNewsData(mUrl);
+            assertTrue(result.isSuccessful());
+            assertEquals(FetchResult.Source.STALE_CACHE, result.getSource());
+            assertEquals("Title", result.getArticles().get(0).getTitle());
+        }
+        assertEquals(FetchResilience.State.OPEN, resilience.getState());
+        int requestCount = mRequestCount.get();
+        assertEquals(1 + 2 * 2, requestCount);
+
+        // While the circuit is open, the cached articles are used without a request
+        FetchResult result = QueryUtils.fetchNewsData(mUrl);
+        assertEquals(FetchResult.Source.STALE_CACHE, result.getSource());
+        assertTrue(result.getError() instanceof FetchResilience.CircuitOpenException);
+        assertEquals(requestCount, mRequestCount.get());
+        assertEquals(1, resilience.getRejectedCount());
+    }
+
+    @Test
+    public void openCircuit_withoutCache_failsFast() {
+        install(1, 1, 60000);
+        mDefaultResponseCode = 500;
+        assertFalse(QueryUtils.fetchNewsData(mUrl).isSuccessful());
+
+        FetchResult result = QueryUtils.fetchNewsData(mUrl);
+
+        assertFalse(result.isSuccessful());
+        assertTrue(result.getError() instanceof FetchResilience.CircuitOpenException);
+        assertEquals(1, mRequestCount.get());
+    }
+
+    @Test
+    public void openCircuit_closesAfterSuccessfulTrial() throws InterruptedException {
+        FetchResilience resilience = install(1, 1, 50);
+        mDefaultResponseCode = 503;
+        QueryUtils.fetchNewsData(mUrl);
+        assertEquals(FetchResilience.State.OPEN, resilience.getState());
+
+        Thread.sleep(100);
+        mDefaultResponseCode = 200;
+        FetchResult result = QueryUtils.fetchNewsData(mUrl);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(FetchResilience.State.CLOSED, resilience.getState());
+    }
+
+    @Test
+    public void failedTrial_reopensCircuit() throws InterruptedException {
+        FetchResilience resilience = install(3, 1, 50);
+        mDefaultResponseCode = 503;
+        QueryUtils.fetchNewsData(mUrl);
+        int requestCount = mRequestCount.get();
+
+        Thread.sleep(100);
+        QueryUtils.fetchNewsData(mUrl);
+
+        // The trial request is not retried
+        assertEquals(requestCount + 1, mRequestCount.get());
+        assertEquals(FetchResilience.State.OPEN, resilience.getState());
+    }
+
+    @Test
+    public void timeouts_followObservedLatency() {
+        FetchResilience resilience = new FetchResilience();
+        // Not enough samples yet: the upper bounds
+        assertEquals(15000, resilience.getConnectTimeoutMillis(1));
+        assertEquals(10000, resilience.getReadTimeoutMillis(1));
+
+        for (int i = 0; i < 20; i++) {
+            resilience.recordLatency(1500, 1200);
+        }
+        assertEquals(4500, resilience.getConnectTimeoutMillis(1));
+        assertEquals(3600, resilience.getReadTimeoutMillis(1));
+        // Doubled on retries, up to the upper bounds
+        assertEquals(9000, resilience.getConnectTimeoutMillis(2));
+        assertEquals(10000, resilience.getReadTimeoutMillis(3));
+
+        // A fast network is still given the lower bounds
+        for (int i = 0; i < 64; i++) {
+            resilience.recordLatency(10, 50);
+        }
+        assertEquals(3000, resilience.getConnectTimeoutMillis(1));
+        assertEquals(3000, resilience.getReadTimeoutMillis(1));
+    }
+
+    @Test
+    public void backoff_isJitteredBelowAnExponentialLimit() {
+        FetchResilience resilience = new FetchResilience(5, 100, 1000, 60000, 3, 30000,
+                new Random(42));
+        long[] limits = {100, 200, 400, 800, 1000, 1000};
+        for (int retry = 1; retry <= limits.length; retry++) {
+            long min = Long.MAX_VALUE;
+            long max = 0;
+            for (int i = 0; i < 200; i++) {
+                long backoff = resilience.getBackoffMillis(retry);
+                min = Math.min(min, backoff);
+                max = Math.max(max, backoff);
+            }
+            assertTrue(min >= 0);
+            assertTrue(max < limits[retry - 1]);
+            // Spread over the whole range, not a fixed delay
+            assertTrue(max - min > limits[retry - 1] / 2);
+        }
+    }
+
+    /**
+     * Make {@link QueryUtils} use a {@link FetchResilience} with short waits.
+     */
+    private static FetchResilience install(int maxAttempts, int failureThreshold,
+                                           long openMillis) {
+        FetchResilience resilience = new FetchResilience(maxAttempts, 10, 20, 60000,
+                failureThreshold, openMillis, new Random(1));
+        QueryUtils.setFetchResilience(resilience);
+        return resilience;
+    }
+
+    private static void installCache() throws IOException {
+        File directory = File.createTempFile("responses", "");
+        if (!directory.delete() || !directory.mkdir()) {
+            throw new IOException("Could not create " + directory);
+        }
+        directory.deleteOnExit();
+        NewsResponseCache.install(directory, 1024 * 1024);
+    }
+}
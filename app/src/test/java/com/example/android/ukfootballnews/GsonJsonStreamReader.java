@@ -0,0 +1,83 @@
+package com.example.android.ukfootballnews;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * {@link JsonStreamReader} of the tests and benchmarks, reading with the {@link JsonReader} of
+ * Gson, which runs on a plain JVM. It has the same calls as the reader of the platform.
+ */
+final class GsonJsonStreamReader implements JsonStreamReader {
+
+    /** Creates the readers of the tests and benchmarks */
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public JsonStreamReader create(Reader reader) {
+            return new GsonJsonStreamReader(new JsonReader(reader));
+        }
+    };
+
+    private final JsonReader mReader;
+
+    private GsonJsonStreamReader(JsonReader reader) {
+        mReader = reader;
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        mReader.beginObject();
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        mReader.endObject();
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        mReader.beginArray();
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        mReader.endArray();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return mReader.hasNext();
+    }
+
+    @Override
+    public boolean isNextString() throws IOException {
+        return mReader.peek() == JsonToken.STRING;
+    }
+
+    @Override
+    public boolean isNextObject() throws IOException {
+        return mReader.peek() == JsonToken.BEGIN_OBJECT;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        return mReader.nextName();
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        return mReader.nextString();
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        mReader.skipValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
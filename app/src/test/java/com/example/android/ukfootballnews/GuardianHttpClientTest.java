@@ -0,0 +1,208 @@
+package com.example.android.ukfootballnews;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link GuardianHttpClient} against a local server standing in for The Guardian API.
+ */
+public class GuardianHttpClientTest {
+
+    /** A body that compresses well, like the JSON responses of the API */
+    private static final byte[] BODY;
+
+    static {
+        StringBuilder body = new StringBuilder("{\"response\":{\"results\":[");
+        for (int i = 0; i < 200; i++) {
+            body.append(i == 0 ? "" : ",")
+                    .append("{\"webTitle\":\"Title ").append(i)
+                    .append("\",\"webUrl\":\"https://www.theguardian.com/football/").append(i)
+                    .append("\"}");
+        }
+        body.append("]}}\n");
+        BODY = body.toString().getBytes();
+    }
+
+    private HttpServer mServer;
+
+    /** Remote port of every request, i.e. which client connection it arrived on */
+    private final List<Integer> mClientPorts = Collections.synchronizedList(new ArrayList<Integer>());
+
+    private URL mGzipUrl;
+    private URL mPlainUrl;
+    private URL mStalledUrl;
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/gzip", new Handler(true));
+        mServer.createContext("/plain", new Handler(false));
+        mServer.createContext("/stalled", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // Half of the body, then nothing until long after the read timeout
+                exchange.sendResponseHeaders(200, BODY.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(BODY, 0, BODY.length / 2);
+                out.flush();
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+        mServer.start();
+
+        String base = "http://127.0.0.1:" + mServer.getAddress().getPort();
+        mGzipUrl = new URL(base + "/gzip");
+        mPlainUrl = new URL(base + "/plain");
+        mStalledUrl = new URL(base + "/stalled");
+    }
+
+    @After
+    public void stopServer() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void gzipResponse_isDecompressedWhileCountingWireBytes() throws Exception {
+        GuardianHttpClient.Response response =
+                GuardianHttpClient.get().get(mGzipUrl, null, 5000, 5000);
+        byte[] body = readFully(response.getBody());
+        response.close();
+
+        assertEquals(200, response.getResponseCode());
+        assertArrayEquals(BODY, body);
+        assertEquals(gzip(BODY).length, response.getWireByteCount());
+        assertTrue(response.getWireByteCount() < BODY.length / 4);
+    }
+
+    @Test
+    public void plainResponse_isReadAsIs() throws Exception {
+        GuardianHttpClient.Response response =
+                GuardianHttpClient.get().get(mPlainUrl, null, 5000, 5000);
+        byte[] body = readFully(response.getBody());
+        response.close();
+
+        assertArrayEquals(BODY, body);
+        assertEquals(BODY.length, response.getWireByteCount());
+    }
+
+    @Test
+    public void consecutiveRequests_reuseTheConnection() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            GuardianHttpClient.Response response =
+                    GuardianHttpClient.get().get(mGzipUrl, null, 5000, 5000);
+            readFully(response.getBody());
+            response.close();
+        }
+
+        assertEquals(5, mClientPorts.size());
+        assertEquals(1, new HashSet<>(mClientPorts).size());
+    }
+
+    @Test
+    public void partlyReadResponse_stillReusesTheConnection() throws Exception {
+        GuardianHttpClient.Response first =
+                GuardianHttpClient.get().get(mPlainUrl, null, 5000, 5000);
+        // Stop right before the end, like a JSON parser leaving the trailing newline
+        InputStream body = first.getBody();
+        for (int i = 0; i < BODY.length - 1; i++) {
+            body.read();
+        }
+        first.close();
+
+        GuardianHttpClient.Response second =
+                GuardianHttpClient.get().get(mPlainUrl, null, 5000, 5000);
+        readFully(second.getBody());
+        second.close();
+
+        assertEquals(2, mClientPorts.size());
+        assertEquals(mClientPorts.get(0), mClientPorts.get(1));
+    }
+
+    @Test
+    public void stalledBody_isDroppedWithoutWaitingForAnotherTimeout() throws Exception {
+        GuardianHttpClient.Response response =
+                GuardianHttpClient.get().get(mStalledUrl, null, 5000, 300);
+        try {
+            readFully(response.getBody());
+            fail("The body should have timed out");
+        } catch (SocketTimeoutException e) {
+            // Expected
+        }
+
+        long startNanos = System.nanoTime();
+        response.close();
+        long closeMillis = (System.nanoTime() - startNanos) / 1000000;
+
+        // Draining the rest of the body would wait for the read timeout again
+        assertTrue("Closing took " + closeMillis + "ms", closeMillis < 300);
+    }
+
+    private class Handler implements HttpHandler {
+
+        private final boolean mGzip;
+
+        Handler(boolean gzip) {
+            mGzip = gzip;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            mClientPorts.add(exchange.getRemoteAddress().getPort());
+
+            byte[] body = BODY;
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (mGzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                body = gzip(BODY);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
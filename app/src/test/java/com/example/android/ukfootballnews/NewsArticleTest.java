@@ -0,0 +1,129 @@
+package com.example.android.ukfootballnews;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that a {@link NewsArticle} gives back the fields it was created with, whether it holds
+ * them on its own or in an {@link ArticleBuffer} shared with other articles.
+ */
+public class NewsArticleTest {
+
+    @Test
+    public void fields_areReadBack() {
+        NewsArticle article = new NewsArticle("Late winner settles a tense afternoon", "Football",
+                "https://www.theguardian.com/football/2017/dec/27/match-report",
+                "https://media.guim.co.uk/0a1b2c/0_0_3000_1800/500.jpg", 1514407838000L);
+
+        assertEquals("Late winner settles a tense afternoon", article.getTitle());
+        assertEquals("Football", article.getSection());
+        assertEquals("https://www.theguardian.com/football/2017/dec/27/match-report",
+                article.getInfoUrl());
+        assertEquals("https://media.guim.co.uk/0a1b2c/0_0_3000_1800/500.jpg",
+                article.getThumbnailUrl());
+        assertEquals(1514407838000L, article.getPublicationDate());
+    }
+
+    @Test
+    public void nullAndEmptyFields_areReadBack() {
+        NewsArticle article = new NewsArticle(null, "", null, "", 0);
+
+        assertNull(article.getTitle());
+        assertEquals("", article.getSection());
+        assertNull(article.getInfoUrl());
+        assertEquals("", article.getThumbnailUrl());
+        assertEquals(0, article.getPublicationDate());
+    }
+
+    @Test
+    public void nonAsciiAndLongFields_areReadBack() {
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            title.append("Fu\u00dfball \u2013 Ligue 1 \u26bd ");
+        }
+        NewsArticle article = new NewsArticle(title.toString(), "Football",
+                "https://www.theguardian.com/football/ligue-1/\u00e9", "relative/thumbnail.jpg", 1);
+
+        assertEquals(title.toString(), article.getTitle());
+        assertEquals("https://www.theguardian.com/football/ligue-1/\u00e9", article.getInfoUrl());
+        assertEquals("relative/thumbnail.jpg", article.getThumbnailUrl());
+    }
+
+    @Test
+    public void surrogates_areEncodedLikeGetBytes() throws Exception {
+        String title = "Trophy \ud83c\udfc6 and a stray \ud800 half";
+        NewsArticle article = new NewsArticle(title, null, null, null, 0);
+
+        assertEquals(new String(title.getBytes("UTF-8"), "UTF-8"), article.getTitle());
+    }
+
+    @Test
+    public void articlesOfABuffer_areReadBackAcrossBlocks() {
+        ArticleBuffer buffer = new ArticleBuffer();
+        List<NewsArticle> articles = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            articles.add(buffer.add("Match report " + i, i % 2 == 0 ? "Football" : "Sport",
+                    "https://www.theguardian.com/football/2017/dec/27/report-" + i,
+                    "https://media.guim.co.uk/" + Integer.toHexString(i) + "/500.jpg", i));
+        }
+
+        for (int i = 0; i < articles.size(); i++) {
+            NewsArticle article = articles.get(i);
+            assertEquals("Match report " + i, article.getTitle());
+            assertEquals(i % 2 == 0 ? "Football" : "Sport", article.getSection());
+            assertEquals("https://www.theguardian.com/football/2017/dec/27/report-" + i,
+                    article.getInfoUrl());
+            assertEquals("https://media.guim.co.uk/" + Integer.toHexString(i) + "/500.jpg",
+                    article.getThumbnailUrl());
+            assertEquals(i, article.getPublicationDate());
+        }
+        // Interned whole, so every article shares the same instance
+        assertSame(articles.get(0).getSection(), articles.get(2).getSection());
+    }
+
+    @Test
+    public void writtenRecords_areReadBackInPlace() throws IOException {
+        NewsArticle[] articles = {
+                new NewsArticle("Fu\u00dfball \u26bd", "Football",
+                        "https://www.theguardian.com/football/2017/dec/27/match-report",
+                        "https://media.guim.co.uk/0a1b2c/500.jpg", 1514407838000L),
+                new NewsArticle(null, "", null, "", 0)};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (NewsArticle article : articles) {
+            article.writeRecord(out);
+        }
+
+        byte[] data = bytes.toByteArray();
+        int offset = 0;
+        for (NewsArticle article : articles) {
+            NewsArticle readBack = new NewsArticle(data, offset, article.getPublicationDate());
+            assertEquals(article.getTitle(), readBack.getTitle());
+            assertEquals(article.getSection(), readBack.getSection());
+            assertEquals(article.getInfoUrl(), readBack.getInfoUrl());
+            assertEquals(article.getThumbnailUrl(), readBack.getThumbnailUrl());
+            offset = ArticleBuffer.skipRecord(data, offset);
+        }
+        assertEquals(data.length, offset);
+    }
+
+    @Test
+    public void urlPrefix_stopsAtTheFirstSegmentWithDigits() {
+        assertEquals("https://www.theguardian.com/football/",
+                ArticleBuffer.getUrlPrefix(
+                        "https://www.theguardian.com/football/2017/dec/27/match-report"));
+        assertEquals("https://www.theguardian.com/football/live/",
+                ArticleBuffer.getUrlPrefix("https://www.theguardian.com/football/live/2017"));
+        assertEquals("https://media.guim.co.uk/",
+                ArticleBuffer.getUrlPrefix("https://media.guim.co.uk/0a1b2c/500.jpg"));
+        assertNull(ArticleBuffer.getUrlPrefix("https://www.theguardian.com"));
+        assertNull(ArticleBuffer.getUrlPrefix("football/2017"));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.ukfootballnews;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link ProgressiveArticlePublisher} throttles its publications and never
+ * publishes after the load finished.
+ */
+public class ProgressiveArticlePublisherTest {
+
+    /** Publications waiting to run, like posts to the main thread */
+    private final List<Runnable> mPosted = new ArrayList<>();
+
+    /** Articles of every publication that ran */
+    private final List<List<NewsArticle>> mPublished = new ArrayList<>();
+
+    private final Executor mExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            mPosted.add(runnable);
+        }
+    };
+
+    private final ProgressiveArticlePublisher.OnPublishListener mListener =
+            new ProgressiveArticlePublisher.OnPublishListener() {
+                @Override
+                public void onPublish(List<NewsArticle> articles) {
+                    mPublished.add(articles);
+                }
+            };
+
+    private ProgressiveArticlePublisher mPublisher;
+
+    @Before
+    public void setUp() {
+        mPublisher = new ProgressiveArticlePublisher(mExecutor, 0, mListener);
+    }
+
+    @Test
+    public void firstBatch_isPublishedRightAway() {
+        mPublisher.onArticlesParsed(Arrays.asList(article(1, 100)));
+
+        assertEquals(1, mPosted.size());
+        runPosted();
+        assertEquals(1, mPublished.size());
+        assertEquals(1, mPublished.get(0).size());
+    }
+
+    @Test
+    public void batchesArrivingWhilePublicationWaits_areCoalesced() {
+        mPublisher.onArticlesParsed(Arrays.asList(article(1, 100)));
+        mPublisher.onArticlesParsed(Arrays.asList(article(2, 90)));
+        mPublisher.onArticlesParsed(Arrays.asList(article(3, 80)));
+
+        assertEquals(1, mPosted.size());
+        runPosted();
+        assertEquals(1, mPublished.size());
+        assertEquals(3, mPublished.get(0).size());
+    }
+
+    @Test
+    public void publications_areAtLeastTheIntervalApart() throws InterruptedException {
+        mPublisher = new ProgressiveArticlePublisher(mExecutor, 100, mListener);
+        mPublisher.onArticlesParsed(Arrays.asList(article(1, 100)));
+        runPosted();
+
+        mPublisher.onArticlesParsed(Arrays.asList(article(2, 90)));
+        assertTrue(mPosted.isEmpty());
+
+        Thread.sleep(150);
+        mPublisher.onArticlesParsed(Arrays.asList(article(3, 80)));
+        runPosted();
+        assertEquals(2, mPublished.size());
+        // The held batch comes with the next one
+        assertEquals(3, mPublished.get(1).size());
+        assertEquals(2, mPublisher.getPublishCount());
+    }
+
+    @Test
+    public void publications_holdEveryArticleNewestFirstWithoutDuplicates() {
+        // Two feeds, the same article in both
+        mPublisher.onArticlesParsed(Arrays.asList(article(1, 100), article(2, 80)));
+        mPublisher.onArticlesParsed(Arrays.asList(article(3, 90), article(2, 80)));
+        runPosted();
+
+        List<NewsArticle> articles = mPublished.get(0);
+        assertEquals(3, articles.size());
+        assertEquals(100, articles.get(0).getPublicationDate());
+        assertEquals(90, articles.get(1).getPublicationDate());
+        assertEquals(80, articles.get(2).getPublicationDate());
+    }
+
+    @Test
+    public void nothing_isPublishedAfterFinish() {
+        mPublisher.onArticlesParsed(Arrays.asList(article(1, 100)));
+        mPublisher.finish();
+        runPosted();
+
+        mPublisher.onArticlesParsed(Arrays.asList(article(2, 90)));
+        runPosted();
+
+        assertTrue(mPublished.isEmpty());
+    }
+
+    private void runPosted() {
+        List<Runnable> posted = new ArrayList<>(mPosted);
+        mPosted.clear();
+        for (Runnable runnable : posted) {
+            runnable.run();
+        }
+    }
+
+    private static NewsArticle article(int index, long publicationDate) {
+        return new NewsArticle("Title " + index, "Football",
+                "https://www.theguardian.com/football/" + index,
+                "https://media.guim.co.uk/" + index + ".jpg", publicationDate);
+    }
+}
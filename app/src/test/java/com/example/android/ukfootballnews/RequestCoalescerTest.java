@@ -0,0 +1,124 @@
+package com.example.android.ukfootballnews;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link RequestCoalescer}.
+ */
+public class RequestCoalescerTest {
+
+    private static final String URL =
+            "https://content.guardianapis.com/search?q=football&page=1&api-key=test";
+
+    @Test
+    public void concurrentRequests_shareOneCall() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<NewsArticle> articles = Collections.singletonList(
+                new NewsArticle("Title", "Football", "https://www.theguardian.com/a", "t", 0));
+
+        final Callable<FetchResult> request = new Callable<FetchResult>() {
+            @Override
+            public FetchResult call() throws Exception {
+                calls.incrementAndGet();
+                release.await();
+                return new FetchResult(articles, 200, FetchResult.Source.NETWORK, 10, 100, 40, 5,
+                        null);
+            }
+        };
+
+        int callers = 5;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<Future<FetchResult>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(executor.submit(new Callable<FetchResult>() {
+                @Override
+                public FetchResult call() {
+                    return coalescer.execute(URL, request);
+                }
+            }));
+        }
+
+        // Let every other caller join the request before it completes
+        while (coalescer.getCoalescedCount() < callers - 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        long wireBytes = 0;
+        List<List<NewsArticle>> lists = new ArrayList<>();
+        for (Future<FetchResult> future : futures) {
+            FetchResult result = future.get(5, TimeUnit.SECONDS);
+            assertTrue(result.isSuccessful());
+            assertEquals(articles, result.getArticles());
+            wireBytes += result.getWireByteCount();
+            for (List<NewsArticle> list : lists) {
+                assertNotSame(list, result.getArticles());
+            }
+            lists.add(result.getArticles());
+        }
+        executor.shutdown();
+
+        assertEquals(1, calls.get());
+        assertEquals(callers - 1, coalescer.getCoalescedCount());
+        // Only the caller that made the request counts its bytes
+        assertEquals(40, wireBytes);
+    }
+
+    @Test
+    public void sequentialRequests_areNotCoalesced() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<FetchResult> request = new Callable<FetchResult>() {
+            @Override
+            public FetchResult call() {
+                calls.incrementAndGet();
+                return new FetchResult(new ArrayList<NewsArticle>(), 200,
+                        FetchResult.Source.NETWORK, 0, 0, null);
+            }
+        };
+
+        coalescer.execute(URL, request);
+        coalescer.execute(URL, request);
+
+        assertEquals(2, calls.get());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    public void failingRequest_becomesUnsuccessfulResult() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        FetchResult result = coalescer.execute(URL, new Callable<FetchResult>() {
+            @Override
+            public FetchResult call() {
+                throw new IllegalStateException("boom");
+            }
+        });
+
+        assertFalse(result.isSuccessful());
+        assertEquals(FetchResult.NO_RESPONSE, result.getResponseCode());
+        assertTrue(result.getError() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void normalizeUrl_ignoresParameterOrderCaseAndDefaultPort() {
+        assertEquals(RequestCoalescer.normalizeUrl(URL), RequestCoalescer.normalizeUrl(
+                "HTTPS://Content.GuardianAPIs.com:443/search?page=1&api-key=test&q=football#top"));
+        assertNotEquals(RequestCoalescer.normalizeUrl(URL), RequestCoalescer.normalizeUrl(
+                "https://content.guardianapis.com/search?q=football&page=2&api-key=test"));
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.android.ukfootballnews;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link WindowedArticleList} gives back every article added while only keeping a
+ * window of them in memory.
+ */
+public class WindowedArticleListTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+
+    private WindowedArticleList mList;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(mFolder.getRoot(), WindowedArticleList.DIRECTORY_NAME);
+        mList = new WindowedArticleList(mDirectory, 2);
+    }
+
+    @After
+    public void tearDown() {
+        mList.close();
+    }
+
+    @Test
+    public void articles_areReadBackAcrossChunks() {
+        int count = WindowedArticleList.CHUNK_SIZE * 5 + 7;
+        // Appended in batches that don't line up with the chunks
+        List<NewsArticle> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            batch.add(article(i));
+            if (batch.size() == 33) {
+                mList.addAll(batch);
+                batch.clear();
+            }
+        }
+        mList.addAll(batch);
+        mList.add(new NewsArticle("No section", null, "https://www.theguardian.com/x", null, 0));
+
+        assertEquals(count + 1, mList.size());
+        for (int i = 0; i < count; i++) {
+            assertArticle(i, mList.get(i));
+        }
+        NewsArticle last = mList.get(count);
+        assertEquals("No section", last.getTitle());
+        assertNull(last.getSection());
+        assertNull(last.getThumbnailUrl());
+    }
+
+    @Test
+    public void evictedChunks_areReloadedOnDemand() {
+        addArticles(WindowedArticleList.CHUNK_SIZE * 4);
+
+        // Only the last two chunks are kept
+        assertNull(mList.peek(0));
+        assertNotNull(mList.peek(WindowedArticleList.CHUNK_SIZE * 3));
+        assertEquals(0, mList.getChunkReadCount());
+
+        assertArticle(1, mList.get(1));
+        assertEquals(1, mList.getChunkReadCount());
+        assertArticle(2, mList.peek(2));
+
+        // The chunk just read stays in memory, the least recently used one is evicted
+        assertArticle(3, mList.get(3));
+        assertEquals(1, mList.getChunkReadCount());
+        assertNull(mList.peek(WindowedArticleList.CHUNK_SIZE * 2));
+    }
+
+    @Test
+    public void getChunkStart_returnsFirstPositionOfChunk() {
+        assertEquals(0, WindowedArticleList.getChunkStart(0));
+        assertEquals(0, WindowedArticleList.getChunkStart(WindowedArticleList.CHUNK_SIZE - 1));
+        assertEquals(WindowedArticleList.CHUNK_SIZE,
+                WindowedArticleList.getChunkStart(WindowedArticleList.CHUNK_SIZE + 1));
+    }
+
+    @Test
+    public void clear_emptiesTheListAndKeepsItUsable() {
+        addArticles(WindowedArticleList.CHUNK_SIZE * 3);
+
+        mList.clear();
+
+        assertEquals(0, mList.size());
+        addArticles(3);
+        assertEquals(3, mList.size());
+        assertArticle(2, mList.get(2));
+    }
+
+    @Test
+    public void prependAll_shiftsTheArticlesHeld() {
+        int count = WindowedArticleList.CHUNK_SIZE * 4 + 3;
+        List<NewsArticle> articles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            articles.add(article(i));
+        }
+        mList.addAll(articles.subList(7, count));
+
+        mList.prependAll(articles.subList(0, 7));
+
+        assertEquals(count, mList.size());
+        for (int i = 0; i < count; i++) {
+            assertArticle(i, mList.get(i));
+        }
+        // The previous spill file was replaced
+        assertEquals(1, spillFileCount());
+    }
+
+    @Test
+    public void close_deletesTheSpillFile() {
+        addArticles(10);
+        assertEquals(1, spillFileCount());
+
+        mList.close();
+
+        assertEquals(0, mList.size());
+        assertEquals(0, spillFileCount());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_pastTheEnd_throws() {
+        addArticles(3);
+        mList.get(3);
+    }
+
+    @Test
+    public void longList_isReadBackFromTheSpillFile() {
+        int count = WindowedArticleList.CHUNK_SIZE * 40;
+        List<NewsArticle> batch = new ArrayList<>(500);
+        for (int i = 0; i < count; i++) {
+            batch.add(article(i));
+            if (batch.size() == 500) {
+                mList.addAll(batch);
+                batch.clear();
+            }
+        }
+
+        assertEquals(count, mList.size());
+        // Only the last two chunks are in memory
+        assertNull(mList.peek(123));
+        assertArticle(123, mList.get(123));
+        assertArticle(count - 1, mList.get(count - 1));
+        assertEquals(1, spillFileCount());
+    }
+
+    @Test
+    public void scrollingTenWindows_keepsOnlyTheWindowInMemory() {
+        int windowChunks = 2;
+        int chunkCount = windowChunks * 10;
+        List<NewsArticle> batch = new ArrayList<>(WindowedArticleList.CHUNK_SIZE);
+        for (int i = 0; i < chunkCount * WindowedArticleList.CHUNK_SIZE; i++) {
+            batch.add(article(i));
+            if (batch.size() == WindowedArticleList.CHUNK_SIZE) {
+                mList.addAll(batch);
+                batch.clear();
+                assertTrue(mList.getResidentChunkCount() <= windowChunks);
+            }
+        }
+
+        // Down to the end and back up, like a user scrolling through the feed
+        for (int i = 0; i < mList.size(); i++) {
+            assertArticle(i, mList.get(i));
+            assertTrue(mList.getResidentChunkCount() <= windowChunks);
+        }
+        for (int i = mList.size() - 1; i >= 0; i--) {
+            assertArticle(i, mList.get(i));
+            assertTrue(mList.getResidentChunkCount() <= windowChunks);
+        }
+        // Every chunk was read on the way down, and all but the window on the way back up
+        assertEquals(2 * chunkCount - windowChunks, mList.getChunkReadCount());
+    }
+
+    private void addArticles(int count) {
+        List<NewsArticle> articles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            articles.add(article(i));
+        }
+        mList.addAll(articles);
+    }
+
+    private int spillFileCount() {
+        File[] files = mDirectory.listFiles();
+        return files != null ? files.length : 0;
+    }
+
+    private static NewsArticle article(int index) {
+        return new NewsArticle("Match report " + index, "Football",
+                "https://www.theguardian.com/football/" + index,
+                "https://media.guim.co.uk/" + index + ".jpg", 1514407838000L - index);
+    }
+
+    private static void assertArticle(int index, NewsArticle article) {
+        assertEquals("Match report " + index, article.getTitle());
+        assertEquals("Football", article.getSection());
+        assertEquals("https://www.theguardian.com/football/" + index, article.getInfoUrl());
+        assertEquals("https://media.guim.co.uk/" + index + ".jpg", article.getThumbnailUrl());
+        assertEquals(1514407838000L - index, article.getPublicationDate());
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.android.ukfootballnews.data;
+
+import com.example.android.ukfootballnews.NewsArticle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ArticleSnapshot}.
+ */
+public class ArticleSnapshotTest {
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("articles", ".snapshot");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void readsBackWrittenArticles() throws IOException {
+        List<NewsArticle> articles = new ArrayList<>();
+        // Characters encoded in 2, 3 and 4 UTF-8 bytes
+        articles.add(new NewsArticle(
+                "\u201cUnlucky\u201d \u26bd \u2014 M\u00fcller \ud83d\ude00", "Football",
+                "https://www.theguardian.com/football/2017/dec/23/one",
+                "https://media.guim.co.uk/abc/500.jpg", 1514000000000L));
+        articles.add(new NewsArticle("Second", "Sport",
+                "https://www.theguardian.com/football/2017/dec/22/two",
+                "https://media.guim.co.uk/def/500.jpg", 1513900000000L));
+        articles.add(new NewsArticle("", "Football", "https://example.com/other", "", 0));
+
+        ArticleSnapshot.write(articles, mFile);
+        List<NewsArticle> read = ArticleSnapshot.read(mFile);
+
+        assertEquals(articles.size(), read.size());
+        for (int i = 0; i < articles.size(); i++) {
+            assertEquals(articles.get(i).getTitle(), read.get(i).getTitle());
+            assertEquals(articles.get(i).getSection(), read.get(i).getSection());
+            assertEquals(articles.get(i).getInfoUrl(), read.get(i).getInfoUrl());
+            assertEquals(articles.get(i).getThumbnailUrl(), read.get(i).getThumbnailUrl());
+            assertEquals(articles.get(i).getPublicationDate(), read.get(i).getPublicationDate());
+        }
+    }
+
+    @Test
+    public void readsOnlyTheFirstArticles() throws IOException {
+        List<NewsArticle> articles = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            articles.add(new NewsArticle("Title " + i, "Football",
+                    "https://www.theguardian.com/football/" + i, "", i));
+        }
+        ArticleSnapshot.write(articles, mFile);
+
+        List<NewsArticle> read = ArticleSnapshot.read(mFile, 3);
+
+        assertEquals(3, read.size());
+        assertEquals("https://www.theguardian.com/football/2", read.get(2).getInfoUrl());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedSnapshot_throws() throws IOException {
+        List<NewsArticle> articles = new ArrayList<>();
+        articles.add(new NewsArticle("Title", "Football", "https://www.theguardian.com/a", "", 0));
+        ArticleSnapshot.write(articles, mFile);
+
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        } finally {
+            file.close();
+        }
+        ArticleSnapshot.read(mFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void snapshotOfAnotherDatabaseVersion_throws() throws IOException {
+        List<NewsArticle> articles = new ArrayList<>();
+        articles.add(new NewsArticle("Title", "Football", "https://www.theguardian.com/a", "", 0));
+        ArticleSnapshot.write(articles, mFile);
+
+        // The database version follows the magic and the format version
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(5);
+            file.writeByte(ArticleDbHelper.DATABASE_VERSION - 1);
+        } finally {
+            file.close();
+        }
+        ArticleSnapshot.read(mFile);
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.android.ukfootballnews;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holding a large load of articles in the compact {@link NewsArticle}, backed by an
+ * {@link ArticleBuffer}, against the previous model of four Strings per article.
+ *
+ * The heap retained per 10,000 articles by each model is printed on setup, before and after
+ * every field was read; the gc profiler reports the collections (gc.count) and allocation
+ * while the articles are loaded, and while they are then used like the app does.
+ *
+ * The compact model is slower to load and to read, since it encodes every field to UTF-8 and
+ * decodes the ones read; what it buys is the heap held by the articles nobody reads, which in
+ * the app are most of them: only the rows bound decode their fields, and articles are spilled
+ * by {@link WindowedArticleList} without decoding. One run on a desktop JVM (-Xmx512m, 3
+ * iterations, the errors are wide):
+ *
+ * <pre>
+ *                          eager       compact
+ * load, 10,000             2.7 ms      6.0 ms
+ * load, 100,000            45 ms       70 ms
+ * loadAndAccess, 10,000    4.1 ms      11.9 ms
+ * loadAndAccess, 100,000   75 ms       185 ms
+ * retained per 10,000      4.3-5.7 MB  2.1 MB
+ *   once every field read  4.3 MB      5.5 MB
+ * </pre>
+ *
+ * A page of the app, 200 articles, takes about 0.1 ms more to load than with the eager model,
+ * well under the time its download takes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class ArticleModelBenchmark {
+
+    /** Number of articles loaded */
+    @Param({"10000", "100000"})
+    public int articleCount;
+
+    /** "eager" for the previous model, "compact" for {@link NewsArticle} */
+    @Param({"eager", "compact"})
+    public String model;
+
+    /** Fields of the articles, as the parser hands them over */
+    private String[] mTitles;
+    private String[] mSections;
+    private String[] mWebUrls;
+    private String[] mThumbnailUrls;
+    private long[] mDates;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        QueryUtils.setJsonReaderFactory(GsonJsonStreamReader.FACTORY);
+        List<NewsArticle> parsed = QueryUtils.extractArticles(
+                new ByteArrayInputStream(Fixtures.searchResponse(articleCount)));
+        int count = parsed.size();
+        mTitles = new String[count];
+        mSections = new String[count];
+        mWebUrls = new String[count];
+        mThumbnailUrls = new String[count];
+        mDates = new long[count];
+        for (int i = 0; i < count; i++) {
+            NewsArticle article = parsed.get(i);
+            // Unique titles, as in a real feed rather than the repeated recorded results
+            mTitles[i] = article.getTitle() + " " + i;
+            mSections[i] = article.getSection();
+            mWebUrls[i] = article.getInfoUrl();
+            mThumbnailUrls[i] = article.getThumbnailUrl();
+            mDates[i] = article.getPublicationDate();
+        }
+        parsed = null;
+
+        long before = usedHeap();
+        List<?> retained = load();
+        long retainedBytes = usedHeap() - before;
+        access(retained);
+        long accessedBytes = usedHeap() - before;
+        System.out.println();
+        System.out.println(String.format("%s model: %d articles retain %d KB, %d KB per 10,000, "
+                        + "%d KB per 10,000 once every field was read",
+                model, retained.size(), retainedBytes / 1024,
+                retainedBytes * 10000 / retained.size() / 1024,
+                accessedBytes * 10000 / retained.size() / 1024));
+    }
+
+    /** Loading every article, as parsing a feed does, and keeping them */
+    @Benchmark
+    public List<?> load() {
+        return "eager".equals(model) ? loadEager() : loadCompact();
+    }
+
+    /**
+     * Loading every article, then using them like the app does with a new page: deduplicated
+     * by URL, diffed against the list shown, and bound to rows
+     */
+    @Benchmark
+    public int loadAndAccess() {
+        return access(load());
+    }
+
+    /**
+     * Read the fields of the articles as many times as the app does, returning a value
+     * depending on all of them.
+     */
+    @SuppressWarnings("unchecked")
+    private int access(List<?> articles) {
+        if ("eager".equals(model)) {
+            return accessEager((List<EagerNewsArticle>) articles);
+        }
+        return accessCompact((List<NewsArticle>) articles);
+    }
+
+    private static int accessEager(List<EagerNewsArticle> articles) {
+        Set<String> urls = new HashSet<>();
+        int result = 0;
+        for (EagerNewsArticle article : articles) {
+            // Dropping duplicates, then DiffUtil comparing the URLs of the old and new rows
+            urls.add(article.getInfoUrl());
+            result += article.getInfoUrl().equals(article.getInfoUrl()) ? 1 : 0;
+            // Binding the row
+            result += article.getTitle().length() + article.getThumbnailUrl().length();
+        }
+        return result + urls.size();
+    }
+
+    private static int accessCompact(List<NewsArticle> articles) {
+        Set<String> urls = new HashSet<>();
+        int result = 0;
+        for (NewsArticle article : articles) {
+            urls.add(article.getInfoUrl());
+            result += article.getInfoUrl().equals(article.getInfoUrl()) ? 1 : 0;
+            result += article.getTitle().length() + article.getThumbnailUrl().length();
+        }
+        return result + urls.size();
+    }
+
+    private List<EagerNewsArticle> loadEager() {
+        List<EagerNewsArticle> articles = new ArrayList<>(mTitles.length);
+        for (int i = 0; i < mTitles.length; i++) {
+            articles.add(new EagerNewsArticle(copy(mTitles[i]), copy(mSections[i]),
+                    copy(mWebUrls[i]), copy(mThumbnailUrls[i]), mDates[i]));
+        }
+        return articles;
+    }
+
+    private List<NewsArticle> loadCompact() {
+        ArticleBuffer buffer = new ArticleBuffer();
+        List<NewsArticle> articles = new ArrayList<>(mTitles.length);
+        for (int i = 0; i < mTitles.length; i++) {
+            articles.add(buffer.add(copy(mTitles[i]), copy(mSections[i]),
+                    copy(mWebUrls[i]), copy(mThumbnailUrls[i]), mDates[i]));
+        }
+        return articles;
+    }
+
+    /**
+     * Returns a copy of the given String with its own characters, as the parser creates for
+     * every article; {@code new String(String)} would share them with the original.
+     */
+    private static String copy(String value) {
+        return new String(value.toCharArray());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The previous article model, holding every field in its own String, as the baseline.
+     */
+    static final class EagerNewsArticle {
+
+        private final String mTitle;
+        private final String mSection;
+        private final String mUrl;
+        private final String mSmallThumbnailUrl;
+        private final long mPublicationDate;
+
+        EagerNewsArticle(String title, String section, String url, String smallThumbnailUrl,
+                         long publicationDate) {
+            mTitle = title;
+            mSection = section;
+            mUrl = url;
+            mSmallThumbnailUrl = smallThumbnailUrl;
+            mPublicationDate = publicationDate;
+        }
+
+        String getTitle() {
+            return mTitle;
+        }
+
+        String getInfoUrl() {
+            return mUrl;
+        }
+
+        String getThumbnailUrl() {
+            return mSmallThumbnailUrl;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.android.ukfootballnews;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole path of a large feed, from the request of each page through the parsing of the
+ * response to the {@link WindowedArticleList} behind the article list, against a local
+ * {@link FakeGuardianServer}.
+ *
+ * The page latencies and the heap retained by the list after one fetch of the feed are
+ * printed on setup; the gc profiler reports the allocation while the feed is fetched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class FetchPipelineBenchmark {
+
+    /** Number of results of the feed, split between its queries */
+    @Param({"20000"})
+    public int resultCount;
+
+    /** Largest page size The Guardian API allows */
+    private static final int PAGE_SIZE = 200;
+
+    /** Queries of the feed, fetched concurrently like the feeds of the app */
+    private static final List<String> QUERIES = Arrays.asList("arsenal", "chelsea");
+
+    private FakeGuardianServer mServer;
+
+    /** Directory of the spill files */
+    private File mDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        QueryUtils.setJsonReaderFactory(GsonJsonStreamReader.FACTORY);
+        mServer = new FakeGuardianServer();
+        mServer.start();
+        mServer.setResultCount(resultCount / QUERIES.size());
+        mDirectory = File.createTempFile("windowed", "");
+        mDirectory.delete();
+
+        long before = usedHeap();
+        List<Long> latencies = new ArrayList<>();
+        WindowedArticleList articles = fetchFeed(latencies);
+        long retainedBytes = usedHeap() - before;
+        Collections.sort(latencies);
+        System.out.println();
+        System.out.println(String.format("%d articles retain %d KB, page latency p50 %dms "
+                        + "p90 %dms p99 %dms", articles.size(), retainedBytes / 1024,
+                percentile(latencies, 50), percentile(latencies, 90),
+                percentile(latencies, 99)));
+        articles.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mServer.stop();
+        mDirectory.delete();
+    }
+
+    /** Fetching every page of the feed into the list */
+    @Benchmark
+    public int fetch() throws IOException {
+        WindowedArticleList articles = fetchFeed(null);
+        try {
+            return articles.size();
+        } finally {
+            articles.close();
+        }
+    }
+
+    /**
+     * Fetches every page of the feed into a new list, adding the duration of every page to
+     * the given latencies, if any.
+     */
+    private WindowedArticleList fetchFeed(List<Long> latencies) throws IOException {
+        WindowedArticleList articles = new WindowedArticleList(mDirectory);
+        int pages = (resultCount / QUERIES.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        for (int page = 1; page <= pages; page++) {
+            List<String> urls = new ArrayList<>(QUERIES.size());
+            for (String query : QUERIES) {
+                urls.add(mServer.getSearchUrl() + "&q=" + query + "&page=" + page
+                        + "&page-size=" + PAGE_SIZE);
+            }
+            FetchResult result = MultiSectionFetcher.fetch(urls);
+            if (!result.isSuccessful()) {
+                articles.close();
+                throw new IOException("Page " + page + " failed: " + result);
+            }
+            if (latencies != null) {
+                latencies.add(result.getDurationMillis());
+            }
+            articles.addAll(result.getArticles());
+        }
+        return articles;
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    /**
+     * Returns the number of bytes of heap in use, after collecting the garbage.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
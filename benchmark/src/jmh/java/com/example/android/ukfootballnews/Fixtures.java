@@ -0,0 +1,63 @@
+package com.example.android.ukfootballnews;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Guardian search responses used by the benchmarks.
+ */
+final class Fixtures {
+
+    /** Recorded response of a football search, with 10 results */
+    private static final String SEARCH_FIXTURE = "/fixtures/search-football.json";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns a search response with the given number of results, built by repeating the
+     * results of the recorded response with unique ids and URLs.
+     */
+    static byte[] searchResponse(int resultCount) throws IOException, JSONException {
+        JSONObject root = new JSONObject(new String(readResource(SEARCH_FIXTURE), "UTF-8"));
+        JSONObject response = root.getJSONObject("response");
+        JSONArray recorded = response.getJSONArray("results");
+
+        JSONArray results = new JSONArray();
+        for (int i = 0; i < resultCount; i++) {
+            JSONObject result = new JSONObject(recorded.getJSONObject(i % recorded.length()).toString());
+            if (i >= recorded.length()) {
+                result.put("id", result.getString("id") + "-" + i);
+                result.put("webUrl", result.getString("webUrl") + "-" + i);
+                result.put("apiUrl", result.getString("apiUrl") + "-" + i);
+            }
+            results.put(result);
+        }
+        response.put("results", results);
+        response.put("pageSize", resultCount);
+        return root.toString().getBytes("UTF-8");
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.android.ukfootballnews;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the fetch/parse hot path of {@link QueryUtils} over Guardian search responses
+ * of different sizes. Run with the GC profiler (the default of this module) to get the
+ * allocation rate per operation.
+ *
+ * The streaming parser reads with Gson's reader, which has the same calls as the reader of
+ * the platform the app uses, as that one can't run on a plain JVM: the streamingParse numbers
+ * are Gson's, not the app's. ParsePerformanceTest, in the instrumented tests of the app,
+ * times the platform reader on a device against the DOM parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    /** Number of results in the response */
+    @Param({"10", "200", "5000"})
+    public int resultCount;
+
+    /** The response body, as received from the connection */
+    private byte[] mResponseBytes;
+
+    /** The response body, as returned by {@link QueryUtils#readFromStream} */
+    private String mResponseString;
+
+    /** Fields of every result, to build {@link NewsArticle}s from */
+    private List<NewsArticle> mArticles;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        QueryUtils.setJsonReaderFactory(GsonJsonStreamReader.FACTORY);
+        mResponseBytes = Fixtures.searchResponse(resultCount);
+        mResponseString = QueryUtils.readFromStream(new ByteArrayInputStream(mResponseBytes));
+        mArticles = QueryUtils.extractArticles(mResponseString);
+        if (mArticles.size() != resultCount) {
+            throw new IllegalStateException("Fixture parsed into " + mArticles.size()
+                    + " articles instead of " + resultCount);
+        }
+    }
+
+    /** Reading the whole body into a String, the first step of the DOM path */
+    @Benchmark
+    public String streamToString() throws IOException {
+        return QueryUtils.readFromStream(new ByteArrayInputStream(mResponseBytes));
+    }
+
+    /** Parsing the body String into a JSONObject tree and extracting the articles */
+    @Benchmark
+    public List<NewsArticle> domParse() {
+        return QueryUtils.extractArticles(mResponseString);
+    }
+
+    /** The whole DOM path: reading the body into a String, then parsing it */
+    @Benchmark
+    public List<NewsArticle> domPath() throws IOException {
+        return QueryUtils.extractArticles(
+                QueryUtils.readFromStream(new ByteArrayInputStream(mResponseBytes)));
+    }
+
+    /** The streaming path: parsing the articles straight off the body stream */
+    @Benchmark
+    public List<NewsArticle> streamingParse() throws IOException {
+        return QueryUtils.extractArticles(new ByteArrayInputStream(mResponseBytes));
+    }
+
+    /** Building the {@link NewsArticle} objects alone, from already extracted fields */
+    @Benchmark
+    public List<NewsArticle> constructArticles() {
+        List<NewsArticle> articles = new ArrayList<>(mArticles.size());
+        for (NewsArticle article : mArticles) {
+            articles.add(new NewsArticle(article.getTitle(), article.getSection(),
+                    article.getInfoUrl(), article.getThumbnailUrl(),
+                    article.getPublicationDate()));
+        }
+        return articles;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.ukfootballnews;
+
+import com.example.android.ukfootballnews.data.ArticleSnapshot;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading an {@link ArticleSnapshot}, next to parsing the same articles from JSON.
+ *
+ * The size of the snapshot is printed on setup, against two JSON baselines: the API response
+ * the articles came from, and a JSON array holding only the fields of the articles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    /** Number of articles in the snapshot */
+    @Param({"10", "200", "5000"})
+    public int articleCount;
+
+    /** Number of articles read by {@link #readTop} */
+    private static final int TOP_ARTICLES = 10;
+
+    /** The API response the articles are parsed from */
+    private byte[] mResponseBytes;
+
+    private List<NewsArticle> mArticles;
+
+    /** Snapshot read by the read benchmarks */
+    private File mSnapshotFile;
+
+    /** Snapshot overwritten by {@link #write} */
+    private File mWriteFile;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        QueryUtils.setJsonReaderFactory(GsonJsonStreamReader.FACTORY);
+        mResponseBytes = Fixtures.searchResponse(articleCount);
+        mArticles = QueryUtils.extractArticles(new ByteArrayInputStream(mResponseBytes));
+
+        mSnapshotFile = File.createTempFile("articles", ".snapshot");
+        mWriteFile = File.createTempFile("articles-write", ".snapshot");
+        ArticleSnapshot.write(mArticles, mSnapshotFile);
+        if (!fieldsJson(mArticles).equals(fieldsJson(ArticleSnapshot.read(mSnapshotFile)))) {
+            throw new IllegalStateException("Snapshot doesn't read back the articles written");
+        }
+
+        long fieldsJsonSize = fieldsJson(mArticles).getBytes("UTF-8").length;
+        System.out.println();
+        System.out.println(String.format("%d articles: snapshot %d bytes, fields JSON %d bytes"
+                        + " (%.0f%%), API response %d bytes (%.0f%%)",
+                articleCount, mSnapshotFile.length(), fieldsJsonSize,
+                100.0 * mSnapshotFile.length() / fieldsJsonSize, mResponseBytes.length,
+                100.0 * mSnapshotFile.length() / mResponseBytes.length));
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSnapshotFile.delete();
+        mWriteFile.delete();
+    }
+
+    /** Writing every article to a snapshot */
+    @Benchmark
+    public File write() throws IOException {
+        ArticleSnapshot.write(mArticles, mWriteFile);
+        return mWriteFile;
+    }
+
+    /** Reading every article of the snapshot */
+    @Benchmark
+    public List<NewsArticle> read() throws IOException {
+        return ArticleSnapshot.read(mSnapshotFile);
+    }
+
+    /** Reading only the first articles of the snapshot, as for the first screen */
+    @Benchmark
+    public List<NewsArticle> readTop() throws IOException {
+        return ArticleSnapshot.read(mSnapshotFile, TOP_ARTICLES);
+    }
+
+    /** The baseline: parsing the same articles from the API response */
+    @Benchmark
+    public List<NewsArticle> parseJson() throws IOException {
+        return QueryUtils.extractArticles(new ByteArrayInputStream(mResponseBytes));
+    }
+
+    /**
+     * Returns the articles as a JSON array of objects holding only their fields.
+     */
+    private static String fieldsJson(List<NewsArticle> articles) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (NewsArticle article : articles) {
+            array.put(new JSONObject()
+                    .put("webTitle", article.getTitle())
+                    .put("sectionName", article.getSection())
+                    .put("webUrl", article.getInfoUrl())
+                    .put("thumbnail", article.getThumbnailUrl())
+                    .put("webPublicationDate", article.getPublicationDate()));
+        }
+        return array.toString();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.android.ukfootballnews;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending a long feed to a {@link WindowedArticleList}, which spills its articles to disk
+ * and only keeps a window of them in memory, against an {@link ArrayList} holding them all.
+ *
+ * The heap retained by each list once every article was appended is printed on setup; the gc
+ * profiler reports the allocation while they are appended.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xms512m", "-Xmx512m"})
+public class WindowedArticleListBenchmark {
+
+    /** Number of articles appended */
+    @Param({"20000", "200000"})
+    public int articleCount;
+
+    /** "windowed" for {@link WindowedArticleList}, "array" for {@link ArrayList} */
+    @Param({"windowed", "array"})
+    public String list;
+
+    /** Number of articles appended at a time, like pages of several feeds */
+    private static final int BATCH_SIZE = 500;
+
+    /** Directory of the spill files */
+    private File mDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("windowed", "");
+        mDirectory.delete();
+
+        long before = usedHeap();
+        List<NewsArticle> retained = newList();
+        append(retained);
+        long retainedBytes = usedHeap() - before;
+        System.out.println();
+        System.out.println(String.format("%s list: %d articles retain %d KB",
+                list, retained.size(), retainedBytes / 1024));
+        close(retained);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    /** Appending every article, then reading back one far from the end */
+    @Benchmark
+    public NewsArticle appendAndReadBack() {
+        List<NewsArticle> articles = newList();
+        try {
+            append(articles);
+            return articles.get(articleCount / 3);
+        } finally {
+            close(articles);
+        }
+    }
+
+    private List<NewsArticle> newList() {
+        return "windowed".equals(list)
+                ? new WindowedArticleList(mDirectory) : new ArrayList<NewsArticle>();
+    }
+
+    private static void close(List<NewsArticle> articles) {
+        if (articles instanceof WindowedArticleList) {
+            ((WindowedArticleList) articles).close();
+        }
+    }
+
+    private void append(List<NewsArticle> articles) {
+        List<NewsArticle> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < articleCount; i++) {
+            batch.add(new NewsArticle("Match report " + i, "Football",
+                    "https://www.theguardian.com/football/" + i,
+                    "https://media.guim.co.uk/" + i + ".jpg", 1514407838000L - i));
+            if (batch.size() == BATCH_SIZE) {
+                articles.addAll(batch);
+                batch.clear();
+            }
+        }
+        articles.addAll(batch);
+    }
+
+    /**
+     * Returns the number of bytes of heap in use, after collecting the garbage.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
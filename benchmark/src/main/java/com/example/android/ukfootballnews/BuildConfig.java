@@ -0,0 +1,13 @@
+package com.example.android.ukfootballnews;
+
+/**
+ * Replaces the BuildConfig generated by the Android build, which the benchmarks don't run.
+ * Benchmarks measure release behaviour, so metrics collection is off.
+ */
+public final class BuildConfig {
+
+    public static final boolean DEBUG = false;
+
+    private BuildConfig() {
+    }
+}